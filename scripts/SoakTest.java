@@ -0,0 +1,413 @@
+//Imports.
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A soak and chaos harness: drives a running server over the loopback interface for hours with a mix of valid
+ * requests, malformed requests, slow clients, abrupt disconnects and large files, and tracks the server's heap,
+ * threads, open files and latency over time, to catch leaks and regressions of the concurrency model.<br>
+ * The server must run with its admin console enabled (admin.enabled=true), which reports its process state.
+ * Every interval, the harness prints the requests, the failures, the latency of the valid requests and the server's
+ * state, with their drift from the first interval (once the server's worker threads are started). It exits with status 1 if a valid request failed, a request
+ * hung, the server kept connections open once idle, or its threads or open files kept growing.<br>
+ * Run with (Java 11 or later, no build needed):<br>
+ * java scripts/SoakTest.java --port=8080 --admin_port=8081 --duration=3600 --clients=32
+ * @author Hodaifa98
+ */
+public class SoakTest {
+
+    //The chaos scenarios, and their weights in the mix.
+    private enum Scenario {
+        GET(40), HEAD(5), NOT_FOUND(10), MALFORMED(10), GARBAGE(5), OVERSIZED_HEADER(3), SLOW_CLIENT(5),
+        ABRUPT_DISCONNECT(10), UNREAD_RESPONSE(5), LARGE_FILE(4), ABORTED_LARGE_FILE(3);
+
+        private final int weight;
+
+        Scenario(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    //The options, with their default values.
+    private static final Map<String, String> OPTIONS = new HashMap<>();
+    static{
+        OPTIONS.put("host", "127.0.0.1");
+        OPTIONS.put("port", "8080");
+        OPTIONS.put("admin_port", "8081");
+        OPTIONS.put("duration", "3600");
+        OPTIONS.put("interval", "60");
+        OPTIONS.put("clients", "32");
+        OPTIONS.put("resource", "/index.html");
+        OPTIONS.put("large_resource", "/test_files/video_test.mp4");
+        OPTIONS.put("timeout", "30000");
+        OPTIONS.put("max_thread_growth", "20");
+        OPTIONS.put("max_open_files_growth", "50");
+    }
+
+    //The outcomes of the requests, keyed by scenario and outcome, and the latencies of the valid requests (ns).
+    private static final Map<String, LongAdder> OUTCOMES = new java.util.concurrent.ConcurrentHashMap<>();
+    private static final ConcurrentLinkedQueue<Long> LATENCIES = new ConcurrentLinkedQueue<>();
+    private static final LongAdder REQUESTS = new LongAdder();
+    private static final LongAdder FAILURES = new LongAdder();
+    private static final AtomicBoolean IS_RUNNING = new AtomicBoolean(true);
+
+    //The server's address, and the socket timeout in milliseconds.
+    private static InetSocketAddress address;
+    private static int timeout;
+
+    public static void main(String[] args) throws Exception {
+        for(String arg : args){
+            if(!arg.startsWith("--") || !arg.contains("=") || !OPTIONS.containsKey(arg.substring(2, arg.indexOf('='))))
+                throw new IllegalArgumentException("Invalid argument: " + arg + " (expected --key=value, with a key among " + OPTIONS.keySet() + ")");
+            OPTIONS.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        address = new InetSocketAddress(OPTIONS.get("host"), Integer.parseInt(OPTIONS.get("port")));
+        timeout = Integer.parseInt(OPTIONS.get("timeout"));
+        long duration = Long.parseLong(OPTIONS.get("duration")) * 1000;
+        long interval = Long.parseLong(OPTIONS.get("interval")) * 1000;
+        int clients = Integer.parseInt(OPTIONS.get("clients"));
+        String resource = OPTIONS.get("resource");
+        String large_resource = OPTIONS.get("large_resource");
+
+        //The expected lengths of the resources, from a first request.
+        long resource_length = expectLength(resource);
+        long large_resource_length = expectLength(large_resource);
+        ProcessState baseline = ProcessState.read();
+        System.out.println("Soak test of " + address + " for " + duration / 1000 + " s with " + clients + " clients ("
+                + resource + ": " + resource_length + " bytes, " + large_resource + ": " + large_resource_length + " bytes).");
+        System.out.println("Server at start: " + baseline);
+
+        //The clients.
+        List<Thread> threads = new ArrayList<>();
+        for(int i = 0; i < clients; i++){
+            Thread client = new Thread(() -> {
+                while(IS_RUNNING.get())
+                    runScenario(pickScenario(), resource, resource_length, large_resource, large_resource_length);
+            }, "soak-client-" + i);
+            client.setDaemon(true);
+            client.start();
+            threads.add(client);
+        }
+
+        //Report every interval, until the end of the test.
+        long start = System.currentTimeMillis();
+        List<ProcessState> states = new ArrayList<>();
+        double first_p99 = -1;
+        while(System.currentTimeMillis() - start < duration){
+            Thread.sleep(Math.min(interval, duration - (System.currentTimeMillis() - start)));
+            long[] latencies = drainLatencies();
+            ProcessState state = ProcessState.read();
+            states.add(state);
+            double p99 = percentile(latencies, 0.99);
+            if(first_p99 < 0 && latencies.length > 0)
+                first_p99 = p99;
+            System.out.printf("[%s] %d requests, %d failures, valid requests: p50 %.2f ms, p99 %.2f ms (drift %s), max %.2f ms | %s%n",
+                    formatElapsed(System.currentTimeMillis() - start), REQUESTS.sum(), FAILURES.sum(),
+                    percentile(latencies, 0.5), p99, first_p99 > 0 ? String.format("%+.0f%%", 100 * (p99 - first_p99) / first_p99) : "-",
+                    percentile(latencies, 1), state.describeDrift(states.get(0)));
+        }
+        IS_RUNNING.set(false);
+        for(Thread client : threads)
+            client.join(timeout + 5000);
+
+        //Once idle, the server must close every connection, and keep answering.
+        boolean is_idle = false;
+        ProcessState idle = null;
+        for(int i = 0; i < 20 && !is_idle; i++){
+            Thread.sleep(500);
+            idle = ProcessState.read();
+            is_idle = idle.connections == 0;
+        }
+        boolean is_answering = expectLength(resource) == resource_length;
+        System.out.println("\nOutcomes:");
+        new java.util.TreeMap<>(OUTCOMES).forEach((outcome, count) -> System.out.printf("  %-40s %d%n", outcome, count.sum()));
+        System.out.println("Server once idle: " + idle + (is_idle ? "" : " (connections still open)"));
+
+        //Leaks: the threads and open files once idle, compared to the end of the first interval (once the server's
+        //worker threads are started).
+        ProcessState warm = states.isEmpty() ? baseline : states.get(0);
+        List<String> problems = new ArrayList<>();
+        if(FAILURES.sum() > 0)
+            problems.add(FAILURES.sum() + " failed request(s)");
+        if(!is_idle)
+            problems.add("connections still open once idle");
+        if(!is_answering)
+            problems.add("the server stopped answering");
+        if(idle != null && idle.threads - warm.threads > Integer.parseInt(OPTIONS.get("max_thread_growth")))
+            problems.add("threads grew from " + warm.threads + " to " + idle.threads);
+        if(idle != null && warm.open_files >= 0 && idle.open_files - warm.open_files > Integer.parseInt(OPTIONS.get("max_open_files_growth")))
+            problems.add("open files grew from " + warm.open_files + " to " + idle.open_files);
+        if(states.size() >= 4 && isGrowing(states))
+            problems.add("the heap used after collections kept growing");
+        if(problems.isEmpty())
+            System.out.println("PASSED");
+        else{
+            System.out.println("FAILED: " + String.join(", ", problems));
+            System.exit(1);
+        }
+    }
+
+    //Pick a scenario at random, by weight.
+    private static Scenario pickScenario() {
+        int total = Arrays.stream(Scenario.values()).mapToInt((scenario) -> scenario.weight).sum();
+        int pick = ThreadLocalRandom.current().nextInt(total);
+        for(Scenario scenario : Scenario.values()){
+            pick -= scenario.weight;
+            if(pick < 0)
+                return scenario;
+        }
+        return Scenario.GET;
+    }
+
+    //Run a scenario, and record its outcome. A valid request must succeed, the others mustn't hang.
+    private static void runScenario(Scenario scenario, String resource, long resource_length, String large_resource, long large_resource_length) {
+        REQUESTS.increment();
+        String outcome;
+        boolean is_failure = false;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try(Socket s = new Socket()){
+            s.connect(address, timeout);
+            s.setSoTimeout(timeout);
+            OutputStream output = s.getOutputStream();
+            switch(scenario){
+                case GET: {
+                    long start = System.nanoTime();
+                    Response response = request(s, "GET " + resource + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+                    LATENCIES.add(System.nanoTime() - start);
+                    is_failure = response.status != 200 || response.body_length != resource_length;
+                    outcome = response.status + (is_failure ? " (" + response.body_length + " bytes)" : "");
+                    break;
+                }
+                case HEAD:
+                    outcome = Integer.toString(request(s, "HEAD " + resource + " HTTP/1.1\r\nHost: localhost\r\n\r\n").status);
+                    break;
+                case NOT_FOUND: {
+                    Response response = request(s, "GET /soak-missing-" + random.nextInt(1000) + ".html HTTP/1.1\r\nHost: localhost\r\n\r\n");
+                    is_failure = response.status != 404;
+                    outcome = Integer.toString(response.status);
+                    break;
+                }
+                case MALFORMED: {
+                    String[] requests = {"GET\r\n\r\n", "GET / HTTP/9.9\r\n\r\n", "FOO / HTTP/1.1\r\n\r\n", "GET /../../etc/passwd HTTP/1.1\r\n\r\n",
+                        "GET / HTTP/1.1\r\nNoColon\r\n\r\n", "POST / HTTP/1.1\r\nContent-Length: 5\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n\r\n"};
+                    outcome = Integer.toString(request(s, requests[random.nextInt(requests.length)]).status);
+                    break;
+                }
+                case GARBAGE: {
+                    byte[] garbage = new byte[1 + random.nextInt(4096)];
+                    random.nextBytes(garbage);
+                    output.write(garbage);
+                    output.write("\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                    outcome = Integer.toString(readResponse(s.getInputStream()).status);
+                    break;
+                }
+                case OVERSIZED_HEADER: {
+                    char[] value = new char[70 * 1024];
+                    Arrays.fill(value, 'a');
+                    outcome = Integer.toString(request(s, "GET / HTTP/1.1\r\nX-Oversized: " + new String(value) + "\r\n\r\n").status);
+                    break;
+                }
+                case SLOW_CLIENT: {
+                    //The request is sent a few bytes at a time.
+                    byte[] request = ("GET " + resource + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+                    for(int i = 0; i < request.length; i += 4){
+                        output.write(request, i, Math.min(4, request.length - i));
+                        output.flush();
+                        Thread.sleep(random.nextInt(50));
+                    }
+                    Response response = readResponse(s.getInputStream());
+                    outcome = Integer.toString(response.status);
+                    break;
+                }
+                case ABRUPT_DISCONNECT: {
+                    //Half a request, then a reset.
+                    byte[] request = ("GET " + resource + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+                    output.write(request, 0, random.nextInt(request.length));
+                    output.flush();
+                    s.setSoLinger(true, 0);
+                    outcome = "reset";
+                    break;
+                }
+                case UNREAD_RESPONSE:
+                    output.write(("GET " + large_resource + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                    output.flush();
+                    outcome = "closed";
+                    break;
+                case LARGE_FILE: {
+                    Response response = request(s, "GET " + large_resource + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+                    is_failure = response.status != 200 || response.body_length != large_resource_length;
+                    outcome = response.status + (is_failure ? " (" + response.body_length + " bytes)" : "");
+                    break;
+                }
+                default: {
+                    //ABORTED_LARGE_FILE: part of a large file, then a reset.
+                    output.write(("GET " + large_resource + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                    output.flush();
+                    s.getInputStream().readNBytes(1 + random.nextInt(64 * 1024));
+                    s.setSoLinger(true, 0);
+                    outcome = "reset";
+                }
+            }
+        } catch (SocketTimeoutException ex) {
+            is_failure = true;
+            outcome = "hung";
+        } catch (IOException ex) {
+            //The server may close the connection of a hostile request, but not of a valid one.
+            is_failure = scenario == Scenario.GET || scenario == Scenario.NOT_FOUND || scenario == Scenario.LARGE_FILE;
+            outcome = "connection error";
+        } catch (InterruptedException ex) {
+            outcome = "interrupted";
+        }
+        if(is_failure)
+            FAILURES.increment();
+        OUTCOMES.computeIfAbsent(scenario + " -> " + outcome + (is_failure ? " FAILURE" : ""), (key) -> new LongAdder()).increment();
+    }
+
+    //A response's status and content length.
+    private static final class Response {
+        private int status;
+        private long body_length;
+    }
+
+    //Send a request, and read its response until the server closes the connection.
+    private static Response request(Socket s, String request) throws IOException {
+        s.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+        s.getOutputStream().flush();
+        return readResponse(s.getInputStream());
+    }
+
+    //Read a response until the server closes the connection (the server closes every connection after its response).
+    private static Response readResponse(InputStream input) throws IOException {
+        Response response = new Response();
+        ByteArrayOutputStream head = new ByteArrayOutputStream(512);
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        boolean is_head_read = false;
+        while((read = input.read(buffer)) != -1){
+            if(is_head_read){
+                response.body_length += read;
+                continue;
+            }
+            head.write(buffer, 0, read);
+            String text = head.toString(StandardCharsets.ISO_8859_1);
+            int end = text.indexOf("\r\n\r\n");
+            if(end != -1){
+                is_head_read = true;
+                response.body_length = head.size() - end - 4;
+            }
+        }
+        String text = head.toString(StandardCharsets.ISO_8859_1);
+        Matcher status = Pattern.compile("^HTTP/1\\.[01] (\\d{3})").matcher(text);
+        response.status = status.find() ? Integer.parseInt(status.group(1)) : 0;
+        return response;
+    }
+
+    //Get the length of a resource, which must be served with a 200 (OK).
+    private static long expectLength(String resource) throws IOException {
+        try(Socket s = new Socket()){
+            s.connect(address, timeout);
+            s.setSoTimeout(timeout);
+            Response response = request(s, "GET " + resource + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            if(response.status != 200)
+                throw new IOException("GET " + resource + " answered " + response.status + ", expected 200.");
+            return response.body_length;
+        }
+    }
+
+    //Take the latencies recorded since the last interval, sorted.
+    private static long[] drainLatencies() {
+        ArrayList<Long> latencies = new ArrayList<>();
+        Long latency;
+        while((latency = LATENCIES.poll()) != null)
+            latencies.add(latency);
+        return latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    //A percentile of sorted latencies, in milliseconds.
+    private static double percentile(long[] latencies, double percentile) {
+        if(latencies.length == 0)
+            return 0;
+        return latencies[(int) Math.min(latencies.length - 1, Math.ceil(percentile * latencies.length) - 1)] / 1e6;
+    }
+
+    //Check if the heap kept growing: the lowest heap used of the last quarter of the intervals is more than twice the
+    //lowest of the first quarter (the lowest samples are the closest to the live data, after collections).
+    private static boolean isGrowing(List<ProcessState> states) {
+        int quarter = states.size() / 4;
+        long first = states.subList(0, quarter).stream().mapToLong((state) -> state.heap_used).min().orElse(0);
+        long last = states.subList(states.size() - quarter, states.size()).stream().mapToLong((state) -> state.heap_used).min().orElse(0);
+        return last > 2 * first && last - first > 64L * 1024 * 1024;
+    }
+
+    //Format an elapsed time as HH:MM:SS.
+    private static String formatElapsed(long milliseconds) {
+        long seconds = milliseconds / 1000;
+        return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    /**
+     * The state of the server's process, read from its admin console.
+     */
+    private static final class ProcessState {
+        private long heap_used;
+        private int threads;
+        private long open_files = -1;
+        private int connections;
+
+        private static ProcessState read() throws IOException {
+            ProcessState state = new ProcessState();
+            try(Socket s = new Socket()){
+                s.connect(new InetSocketAddress(OPTIONS.get("host"), Integer.parseInt(OPTIONS.get("admin_port"))), timeout);
+                s.setSoTimeout(timeout);
+                s.getOutputStream().write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                String status = new String(s.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+                state.heap_used = Long.parseLong(find(status, "heap: (\\d+) bytes used"));
+                state.threads = Integer.parseInt(find(status, "threads: (\\d+)"));
+                String open_files = find(status, "open files: (\\w+)");
+                state.open_files = open_files.equals("unknown") ? -1 : Long.parseLong(open_files);
+                state.connections = Integer.parseInt(find(status, "Connections \\((\\d+)\\)"));
+            } catch (IOException ex) {
+                throw new IOException("Can't read the admin console (is the server running with admin.enabled=true?): " + ex.getMessage(), ex);
+            }
+            return state;
+        }
+
+        private static String find(String status, String regex) throws IOException {
+            Matcher matcher = Pattern.compile(regex).matcher(status);
+            if(!matcher.find())
+                throw new IOException("Unexpected admin console report, missing: " + regex);
+            return matcher.group(1);
+        }
+
+        //Describe the state, with the drift of the threads and open files from a baseline.
+        private String describeDrift(ProcessState baseline) {
+            return String.format("heap %d MB, threads %d (%+d), open files %s, connections %d", this.heap_used / (1024 * 1024),
+                    this.threads, this.threads - baseline.threads,
+                    this.open_files >= 0 ? this.open_files + String.format(" (%+d)", this.open_files - baseline.open_files) : "unknown",
+                    this.connections);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("heap %d MB, threads %d, open files %s, connections %d", this.heap_used / (1024 * 1024),
+                    this.threads, this.open_files >= 0 ? Long.toString(this.open_files) : "unknown", this.connections);
+        }
+    }
+}
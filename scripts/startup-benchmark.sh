@@ -0,0 +1,62 @@
+#!/bin/bash
+# Startup benchmark: measures the time from launching the server to the first byte of a response, for the plain
+# classes, the executable jar, and the executable jar with its AppCDS archive (on the jlink runtime image if it
+# was built). Build first with: mvn clean package -Pfast-startup (or -Pjlink,fast-startup)
+# Usage: scripts/startup-benchmark.sh [RUNS] [PORT] [RESOURCE]
+
+RUNS=${1:-10}
+PORT=${2:-18080}
+RESOURCE=${3:-/index.html}
+
+cd "$(dirname "$0")/.." || exit 1
+JAR=$(ls target/*.jar 2>/dev/null | head -1)
+ARCHIVE=${JAR%.jar}.jsa
+if [ -z "$JAR" ]; then
+    echo "No jar in target/, build it with: mvn clean package -Pfast-startup"
+    exit 1
+fi
+#The AppCDS archive only works with the runtime that created it.
+CDS_JAVA=java
+if [ -x target/runtime/bin/java ]; then
+    CDS_JAVA=target/runtime/bin/java
+fi
+
+#Print the time in milliseconds from launching a command to the first byte of the server's response.
+measure() {
+    local start=$(date +%s%N)
+    "$@" --port=$PORT > /dev/null 2>&1 &
+    local pid=$!
+    until curl -s -o /dev/null --max-time 1 "http://localhost:$PORT$RESOURCE"; do
+        if ! kill -0 $pid 2>/dev/null; then
+            echo "failed"
+            return
+        fi
+        sleep 0.005
+    done
+    local end=$(date +%s%N)
+    kill $pid
+    wait $pid 2>/dev/null
+    echo $(( (end - start) / 1000000 ))
+}
+
+#Run a mode RUNS times, and print its minimum and median time to first byte.
+benchmark() {
+    local name=$1
+    shift
+    local times=()
+    for i in $(seq $RUNS); do
+        times+=($(measure "$@"))
+    done
+    local sorted=($(printf "%s\n" "${times[@]}" | sort -n))
+    printf "%-44s min %5s ms   median %5s ms\n" "$name" "${sorted[0]}" "${sorted[$((RUNS / 2))]}"
+}
+
+echo "Time to first byte of $RESOURCE, $RUNS runs:"
+benchmark "classes" java -cp target/classes com.multi_threaded_http_web_server.MainServerClass
+benchmark "jar" java -jar "$JAR"
+if [ -f "$ARCHIVE" ]; then
+    benchmark "jar + AppCDS ($CDS_JAVA)" $CDS_JAVA -XX:SharedArchiveFile="$ARCHIVE" -jar "$JAR"
+    benchmark "jar + AppCDS + C1 only" $CDS_JAVA -XX:SharedArchiveFile="$ARCHIVE" -XX:TieredStopAtLevel=1 -jar "$JAR"
+else
+    echo "No AppCDS archive, build it with: mvn clean package -Pfast-startup"
+fi
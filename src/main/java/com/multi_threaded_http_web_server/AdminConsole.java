@@ -0,0 +1,355 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.stream.Stream;
+
+/**
+ * The admin console: a plain text HTTP endpoint on its own port (bound to the loopback address by default), serving
+ * the state of a running server on demand.<br>
+ * GET / lists the process' heap, threads and open files, the active connections (address, state, bytes read and
+ * written, age and request), the utilization of the thread pool and the event loop, and the contents and hit rates
+ * of the caches (per virtual host for the static files). POST /debug?enabled=true|false toggles debug logging, and POST /drain stops the server gracefully (the
+ * readiness path fails, and the requests in progress complete).<br>
+ * Requests are handled one at a time by the console's own thread, so that it answers even when the thread pool is
+ * saturated.<br>
+ * A request must name the console in its Host header (localhost, or the address it was received on), so that a web
+ * page can't reach the console through a DNS name rebound to the loopback address, and a POST must carry the
+ * X-Admin-Request header, which a cross-site form can't send, so that a web page can't drain the server.
+ * @author Hodaifa98
+ */
+public class AdminConsole implements Runnable {
+
+    //The maximum length of the head of a request to the admin console, and the time to read it in milliseconds.
+    private static final int MAX_REQUEST_LENGTH = 8 * 1024;
+    private static final int SOCKET_TIMEOUT = 5000;
+
+    //The header a POST to the console must carry: browsers only send custom headers cross-site after a preflight, which the console doesn't allow.
+    public static final String ADMIN_REQUEST_HEADER = "X-Admin-Request";
+
+    //The maximum number of entries listed per cache.
+    private static final int MAX_LISTED_ENTRIES = 100;
+
+    //The server, and the console's server socket and thread.
+    private final HTTPServer server;
+    private final InetSocketAddress address;
+    private ServerSocket server_socket;
+    private Thread thread;
+
+    /**
+     * Create the admin console of a server.
+     * @param server The server.
+     * @param address The address to bind the console to.
+     * @param port The port number of the console.
+     */
+    public AdminConsole(HTTPServer server, String address, int port) {
+        this.server = server;
+        this.address = new InetSocketAddress(address, port);
+    }
+
+    /**
+     * Bind the console's port, and start answering requests.
+     * @throws IOException If the port can't be bound.
+     */
+    public void start() throws IOException {
+        this.server_socket = new ServerSocket();
+        this.server_socket.setReuseAddress(true);
+        this.server_socket.bind(this.address);
+        this.thread = new Thread(this, "admin-console");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        System.out.println("Admin console listening on " + this.address.getHostString() + ":" + this.server_socket.getLocalPort());
+    }
+
+    /**
+     * Stop the console.
+     */
+    public void stop() {
+        try {
+            this.server_socket.close();
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * @return The port number the console is bound to.
+     */
+    public int getLocal_port() {
+        return this.server_socket.getLocalPort();
+    }
+
+    /**
+     * The console's thread: accepts and answers requests until the console is stopped.
+     */
+    @Override
+    public void run() {
+        while(!this.server_socket.isClosed()){
+            try(Socket s = this.server_socket.accept()){
+                s.setSoTimeout(SOCKET_TIMEOUT);
+                this.handle(s);
+            } catch (SocketException ex) {
+                //The console was stopped, or the client went away.
+            } catch (Exception ex) {
+                System.err.println(ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Answer a request to the console.
+     * @param s The client's socket.
+     * @throws IOException If the request can't be read, or the response written.
+     */
+    private void handle(Socket s) throws IOException {
+        String head = readHead(new BufferedInputStream(s.getInputStream()));
+        OutputStream output = s.getOutputStream();
+        String[] lines = head != null ? head.split(HTTPResponse.CRLF) : new String[0];
+        String[] tokens = lines.length > 0 ? lines[0].split(" ") : new String[0];
+        if(tokens.length != 3){
+            writeResponse(output, 400, "Bad request.\n");
+            return;
+        }
+        String method = tokens[0];
+        //The Host and X-Admin-Request headers.
+        String host = null;
+        boolean is_admin_request = false;
+        for(int i = 1; i < lines.length; i++){
+            int colon = lines[i].indexOf(':');
+            if(colon <= 0)
+                continue;
+            String name = lines[i].substring(0, colon).trim();
+            if(name.equalsIgnoreCase("Host"))
+                host = lines[i].substring(colon + 1).trim();
+            else if(name.equalsIgnoreCase(ADMIN_REQUEST_HEADER))
+                is_admin_request = true;
+        }
+        if(!isConsoleHost(host, s)){
+            writeResponse(output, 403, "Forbidden: the Host header must name the admin console.\n");
+            return;
+        }
+        if(method.equals("POST") && !is_admin_request){
+            writeResponse(output, 403, "Forbidden: POST requests must carry the " + ADMIN_REQUEST_HEADER + " header.\n");
+            return;
+        }
+        String path = tokens[1].split("\\?", 2)[0];
+        String query = tokens[1].contains("?") ? tokens[1].split("\\?", 2)[1] : "";
+        if(path.equals("/") || path.equals("/status")){
+            if(method.equals("GET"))
+                writeResponse(output, 200, this.composeStatus());
+            else
+                writeResponse(output, 405, "Use GET.\n");
+        }
+        else if(path.equals("/debug")){
+            if(!method.equals("POST")){
+                writeResponse(output, 405, "Use POST /debug?enabled=true|false.\n");
+                return;
+            }
+            if(query.equals("enabled=true") || query.equals("enabled=false"))
+                HTTPServerLogger.setIs_debug_enabled(query.equals("enabled=true"));
+            else
+                HTTPServerLogger.setIs_debug_enabled(!HTTPServerLogger.isIs_debug_enabled());
+            writeResponse(output, 200, "Debug logging " + (HTTPServerLogger.isIs_debug_enabled() ? "enabled" : "disabled") + ".\n");
+        }
+        else if(path.equals("/drain")){
+            if(!method.equals("POST")){
+                writeResponse(output, 405, "Use POST /drain.\n");
+                return;
+            }
+            int drain_timeout = HTTPServerInformation.getConfiguration().getShutdown_timeout();
+            writeResponse(output, 202, "Draining " + this.server.getActive_connections_count() + " connection(s), for up to "
+                    + drain_timeout + " ms.\n");
+            //The server stops the console too, so it's stopped from another thread.
+            Thread drain = new Thread(() -> {
+                try {
+                    this.server.stop(drain_timeout);
+                } catch (InterruptedException ex) {
+                    System.err.println(ex.getMessage());
+                }
+            }, "admin-drain");
+            drain.start();
+        }
+        else
+            writeResponse(output, 404, "Not found. Use GET /, POST /debug?enabled=true|false or POST /drain.\n");
+    }
+
+    /**
+     * Compose the status report of the server.
+     * @return The status report, in plain text.
+     */
+    private String composeStatus() {
+        StringBuilder status = new StringBuilder(4096);
+        HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+        long uptime = (System.currentTimeMillis() - this.server.getStarted_at()) / 1000;
+        status.append("Server: ").append(configuration.getServer_name()).append(", port ").append(this.server.getLocal_port())
+                .append(this.server.isRunning() ? ", running" : ", stopping").append(" for ").append(uptime).append(" s")
+                .append(", ready: ").append(ServerWarmup.isReady())
+                .append(", debug logging: ").append(HTTPServerLogger.isIs_debug_enabled()).append("\n\n");
+
+        //Process: the heap, the threads and the open file descriptors (tracked by scripts/SoakTest.java).
+        Runtime runtime = Runtime.getRuntime();
+        long open_files = countOpenFiles();
+        status.append("Process\n");
+        status.append("  heap: ").append(runtime.totalMemory() - runtime.freeMemory()).append(" bytes used, ")
+                .append(runtime.totalMemory()).append(" committed, ").append(runtime.maxMemory()).append(" max\n");
+        status.append("  threads: ").append(Thread.getAllStackTraces().size()).append('\n');
+        status.append("  open files: ").append(open_files >= 0 ? Long.toString(open_files) : "unknown").append("\n\n");
+
+        //Threads.
+        status.append("Threads\n");
+        ThreadPoolExecutor pool = this.server.getThread_pool();
+        if(pool != null)
+            status.append("  thread pool: ").append(pool.getActiveCount()).append(" busy / ").append(pool.getPoolSize())
+                    .append(" threads (core ").append(pool.getCorePoolSize()).append(", max ").append(pool.getMaximumPoolSize())
+                    .append("), ").append(pool.getQueue().size()).append(" queued, ").append(pool.getCompletedTaskCount())
+                    .append(" completed\n");
+        EventLoop event_loop = EventLoop.getRunning();
+        if(event_loop != null)
+            status.append("  event loop: ").append(event_loop.getConnection_count()).append(" connection(s), ")
+                    .append(String.format("%.2f", event_loop.getUtilization() * 100)).append("% busy\n");
+        else
+            status.append("  event loop: not started\n");
+
+        //Active connections.
+        status.append("\nConnections (").append(this.server.getActive_connections_count()).append(")\n");
+        status.append(String.format("  %-24s %-9s %10s %12s %9s  %s%n", "CLIENT", "STATE", "BYTES IN", "BYTES OUT", "AGE (ms)", "REQUEST"));
+        for(HTTPServer.TrackedClientHandler connection : this.server.getActive_connections()){
+            ClientHandler handler = connection.getHandler();
+            HTTPRequest request = handler.getClient_http_request();
+            status.append(String.format("  %-24s %-9s %10d %12d %9d  %s%n", connection.getSocket().getRemoteSocketAddress(),
+                    handler.getState(), connection.getBytes_read(), handler.getBytes_written(), handler.getAge(),
+                    request != null ? request.getRequest_line() : "-"));
+        }
+
+        //Caches.
+        for(VirtualHost host : configuration.getVirtual_hosts()){
+            StaticResourceCache static_cache = host.getStatic_cache();
+            status.append("\nStatic files cache of ").append(host.getName())
+                    .append(host.getHost_names().isEmpty() ? "" : " " + host.getHost_names()).append(": ")
+                    .append(static_cache.getEntry_count()).append(" file(s), ").append(static_cache.getSize()).append(" / ")
+                    .append(host.getStatic_cache_max_bytes()).append(" bytes, hit rate ")
+                    .append(hitRate(static_cache.getHits(), static_cache.getMisses())).append('\n');
+            appendEntries(status, static_cache.getEntries());
+            if(host.getBundle() != null)
+                status.append("  bundle: ").append(host.getBundle().getPath()).append(", ").append(host.getBundle().getEntry_count())
+                        .append(" path(s), ").append(host.getBundle().getSize()).append(" bytes mapped\n");
+        }
+        HTTPResponseCache response_cache = HTTPResponseCache.getShared();
+        status.append("\nResponse cache: ").append(response_cache.getEntry_count()).append(" response(s), ")
+                .append(response_cache.getSize()).append(" bytes, hit rate ")
+                .append(hitRate(response_cache.getHits(), response_cache.getMisses())).append(", ")
+                .append(response_cache.getCoalesced()).append(" coalesced\n");
+        appendEntries(status, response_cache.getEntries());
+
+        //Rate limiting.
+        RateLimiter rate_limiter = RateLimiter.getInstance();
+        status.append("\nRate limiter: ").append(rate_limiter != null ? rate_limiter.getClient_count() + " client(s) tracked" : "disabled").append('\n');
+        return status.toString();
+    }
+
+    //Count the process' open file descriptors (sockets included), or return -1 if the platform doesn't list them.
+    private static long countOpenFiles() {
+        try(Stream<Path> files = Files.list(Paths.get("/proc/self/fd"))){
+            return files.count();
+        } catch (IOException | UncheckedIOException ex) {
+            return -1;
+        }
+    }
+
+    //Format the hit rate of a cache, with its hits and misses.
+    private static String hitRate(long hits, long misses) {
+        return (hits + misses > 0 ? String.format("%.1f%%", 100.0 * hits / (hits + misses)) : "-")
+                + " (" + hits + " hits, " + misses + " misses)";
+    }
+
+    //List the entries of a cache and their sizes, up to the maximum number of listed entries.
+    private static void appendEntries(StringBuilder status, Map<String, Long> entries) {
+        int listed = 0;
+        for(Map.Entry<String, Long> entry : entries.entrySet()){
+            if(listed++ == MAX_LISTED_ENTRIES){
+                status.append("  ... and ").append(entries.size() - MAX_LISTED_ENTRIES).append(" more\n");
+                break;
+            }
+            status.append(String.format("  %10d  %s%n", entry.getValue(), entry.getKey()));
+        }
+    }
+
+    /**
+     * Check that a request's Host header names the admin console: localhost, or the IP address the request was
+     * received on (with any port).
+     * @param host The Host header, or null if the request has none.
+     * @param s The client's socket.
+     * @return True if the Host header names the console.
+     */
+    private static boolean isConsoleHost(String host, Socket s) {
+        if(host == null || host.isEmpty())
+            return false;
+        //Strip the port, and the brackets of an IPv6 address.
+        String name = host.toLowerCase(Locale.ROOT);
+        if(name.startsWith("[")){
+            int end = name.indexOf(']');
+            if(end < 0)
+                return false;
+            name = name.substring(1, end);
+        }
+        else if(name.indexOf(':') >= 0)
+            name = name.substring(0, name.indexOf(':'));
+        if(name.equals("localhost"))
+            return true;
+        //Only IP literals are compared, so that no name is resolved.
+        if(!name.matches("[0-9.]+|[0-9a-f:.]*:[0-9a-f:.]*"))
+            return false;
+        try {
+            return InetAddress.getByName(name).equals(s.getLocalAddress());
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    //Read the head of a request, without its final empty line (or null if the stream ended before its request line).
+    private static String readHead(InputStream input) throws IOException {
+        StringBuilder head = new StringBuilder(256);
+        int b;
+        while((b = input.read()) != -1 && head.length() < MAX_REQUEST_LENGTH){
+            head.append((char) b);
+            if(b == '\n' && head.length() >= 4 && head.substring(head.length() - 4).equals(HTTPResponse.CONTENT_CRLF))
+                break;
+        }
+        int end = head.indexOf(HTTPResponse.CRLF);
+        if(end <= 0)
+            return null;
+        int head_end = head.indexOf(HTTPResponse.CONTENT_CRLF);
+        return head_end >= 0 ? head.substring(0, head_end) : head.toString();
+    }
+
+    //Write a plain text response.
+    private static void writeResponse(OutputStream output, int code, String content) throws IOException {
+        byte[] body = content.getBytes(StandardCharsets.UTF_8);
+        String head = HTTPServerInformation.SUPPORTED_HTTP_VERSION + " " + code + " " + HTTPServerInformation.getConfiguration().getHttp_status().get(code)
+                + HTTPResponse.CRLF + "Date: " + HTTPResponse.getCurrentDatePerHTTP()
+                + HTTPResponse.CRLF + "Connection: Closed"
+                + HTTPResponse.CRLF + "Cache-Control: no-store"
+                + HTTPResponse.CRLF + "Content-Type: text/plain; charset=utf-8"
+                + HTTPResponse.CRLF + "Content-Length: " + body.length + HTTPResponse.CONTENT_CRLF;
+        output.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        output.write(body);
+        output.flush();
+    }
+}
@@ -0,0 +1,56 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class encodes content with the chunked transfer coding (<b>RFC 7230, section 4.1</b>), for responses whose
+ * length isn't known when their headers are sent ("Transfer-Encoding: chunked"), such as event streams and the
+ * reverse proxy's responses whose upstream server didn't send their length.
+ * @author Hodaifa98
+ */
+public final class ChunkedEncoding {
+
+    /**
+     * The last chunk, ending a chunked content (without trailer headers).
+     */
+    public static final byte[] LAST_CHUNK = ("0" + HTTPResponse.CRLF + HTTPResponse.CRLF).getBytes(StandardCharsets.ISO_8859_1);
+
+    //Private empty constructor to prevent this class from being instantiated.
+    private ChunkedEncoding(){}
+
+    /**
+     * Encode data as a single chunk: its size in hexadecimal, a CRLF, the data and a CRLF.
+     * @param data The data of the chunk, which must not be empty (an empty chunk ends the content).
+     * @return The encoded chunk.
+     */
+    public static byte[] encodeChunk(byte[] data) {
+        return encodeChunk(data, 0, data.length);
+    }
+
+    /**
+     * Write data to a stream as a single chunk, in a single write.
+     * @param output The stream the chunk is written to.
+     * @param data The buffer holding the data of the chunk.
+     * @param offset The offset of the data in the buffer.
+     * @param length The length of the data, which must not be 0 (an empty chunk ends the content).
+     * @throws IOException If the chunk can't be written.
+     */
+    public static void writeChunk(OutputStream output, byte[] data, int offset, int length) throws IOException {
+        output.write(encodeChunk(data, offset, length));
+    }
+
+    //Encode a part of a buffer as a single chunk.
+    private static byte[] encodeChunk(byte[] data, int offset, int length) {
+        byte[] size_line = (Integer.toHexString(length) + HTTPResponse.CRLF).getBytes(StandardCharsets.ISO_8859_1);
+        byte[] chunk = new byte[size_line.length + length + 2];
+        System.arraycopy(size_line, 0, chunk, 0, size_line.length);
+        System.arraycopy(data, offset, chunk, size_line.length, length);
+        chunk[chunk.length - 2] = '\r';
+        chunk[chunk.length - 1] = '\n';
+        return chunk;
+    }
+}
@@ -2,11 +2,13 @@ package com.multi_threaded_http_web_server;
 
 
 //Imports.
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The ClientHandler class that is responsible for
@@ -14,32 +16,96 @@ import java.util.ArrayList;
  * @author Hodaifa98.
  */
 public class ClientHandler implements Runnable{
+    
+    /**
+     * The state of a client's connection, listed by the admin console.
+     */
+    public enum State {
+        /** Accepted, and waiting for a thread of the thread pool. */
+        QUEUED,
+        /** Reading the client's request. */
+        READING,
+        /** Handling the request and writing its response. */
+        WRITING,
+        /** Handed over to the event loop (event streams, WebSockets). */
+        DETACHED,
+        /** Closed. */
+        CLOSED
+    }
+    
     //Client's Socket and its output and input streams.
     final private Socket s;
-    final private BufferedReader br;
+    final private BufferedInputStream bis;
     final private DataOutputStream dos;
     
-    /**
-     * Client's HTTPRequest object containing all information about the request to the Server.
-     */
-    public HTTPRequest client_http_request;
-    /**
-     * Client's HTTPResponse object containing all information about the response to the client.
-     */
-    public HTTPResponse client_http_response;
+    //The maximum length of a line of the request's head, and the buffer of the line being read.
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private byte[] line_buffer = new byte[256];
+    
+    //The result of readLineBytes() for a line longer than its maximum length.
+    private static final int LINE_TOO_LONG = -2;
+    
+    //The status code of the request's rejection by the strict parsing, or 0 if it wasn't rejected.
+    private int rejected_status = 0;
+    
+    //A boolean denoting if the connection was handed over to the event loop, in which case it must stay open.
+    private boolean is_detached = false;
+    
+    //The time the connection was accepted (the handler is created by the accepting thread).
+    private final long accepted_at = System.nanoTime();
+    
+    //The state of the connection.
+    private volatile State state = State.QUEUED;
+    
+    //Client's HTTPRequest object containing all information about the request to the Server (read by the admin
+    //console's thread too).
+    private volatile HTTPRequest client_http_request;
+    //Client's HTTPResponse object containing all information about the response to the client (read by the admin
+    //console's thread too).
+    private volatile HTTPResponse client_http_response;
     
     /**
      * The ClientHandler class's main constructor.
      * @param s The client's socket.
-     * @param br The BufferedReader assigned to the client socket's input stream.
+     * @param bis The BufferedInputStream assigned to the client socket's input stream.
      * @param dos The DataOutputStream of the client's socket.
      */
-    public ClientHandler(Socket s, BufferedReader br, DataOutputStream dos) {
+    public ClientHandler(Socket s, BufferedInputStream bis, DataOutputStream dos) {
         this.s = s;
-        this.br = br;
+        this.bis = bis;
         this.dos = dos;
     }
     
+    /**
+     * @return The client's HTTPRequest, or null if it isn't read yet.
+     */
+    public HTTPRequest getClient_http_request() {
+        return this.client_http_request;
+    }
+    
+    /**
+     * @return The state of the client's connection.
+     */
+    public State getState() {
+        return this.state;
+    }
+    
+    /**
+     * @return The time in milliseconds since the client's connection was accepted.
+     */
+    public long getAge() {
+        return (System.nanoTime() - this.accepted_at) / 1000000;
+    }
+    
+    /**
+     * @return The number of bytes written to the client so far.
+     */
+    public long getBytes_written() {
+        //A bundled file is written to the socket's channel, around the stream.
+        HTTPResponse response = this.client_http_response;
+        return this.dos.size() + (response != null ? response.getBundle_bytes_written() : 0);
+    }
+    
     /**
      * Overriding the default run method of the Runnable interface.<br>
      * In here, a method will be invoked to handle the incoming HTTP request from a client.
@@ -54,67 +120,256 @@ public class ClientHandler implements Runnable{
      * Handles the HTTP Request initiated by the client.
      */
     private void handleHTTPRequest(){
-        //Using the try-with to automatically flush and close the streams and sockets when the server is done
-        //reading the HTTP request, and writing the appropriate response.
-        try(this.br; this.dos; this.s) {
-            //Call the readHTTPRequest() method that uses BufferedReader to read the request from the input stream.
+        //The streams and the socket are closed when the server is done reading the HTTP request and writing
+        //the appropriate response, unless the connection is handed over to the event loop (long-lived streams).
+        //The timing of the request's phases, or null if tracing is disabled.
+        RequestTrace trace = RequestTrace.start(this.accepted_at);
+        try {
+            if(trace != null)
+                trace.end(RequestTrace.Phase.QUEUE);
+            this.state = State.READING;
+            //Call the readHTTPRequest() method that uses BufferedInputStream to read the request from the input stream.
             this.client_http_request = this.readHTTPRequest();
+            if(trace != null)
+                trace.end(RequestTrace.Phase.READ);
+            this.state = State.WRITING;
+            //If the strict parsing rejected the request, then answer it without handling it.
+            if(this.rejected_status != 0){
+                HTTPResponse.writeStatusResponse(this.dos, this.rejected_status, "");
+                this.discardInput();
+                return;
+            }
+            if(trace != null)
+                trace.continueTrace(this.client_http_request);
+            //If the request is for the readiness path, then tell if the server is warmed up.
+            if(ServerWarmup.isReadinessRequest(this.client_http_request)){
+                ServerWarmup.writeReadiness(this.dos);
+                return;
+            }
+            //If the client exceeded its rate limit, then tell it when to retry.
+            RateLimiter rate_limiter = RateLimiter.getInstance();
+            long wait = rate_limiter != null ? rate_limiter.acquire(this.s.getInetAddress(), this.client_http_request.getRequested_resource()) : 0;
+            if(wait > 0){
+                HTTPResponse.writeStatusResponse(this.dos, 429, HTTPResponse.CRLF + "Retry-After: " + Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999999999)));
+                return;
+            }
+            //If the request uploads (or deletes) a file, then stream its content to the upload directory.
+            if(FileUpload.isUploadRequest(this.client_http_request)){
+                FileUpload.handle(this.client_http_request, this.bis, this.s, this.dos);
+                return;
+            }
+            //If the requested resource is a WebSocket path, then let the WebSocket hub upgrade the connection.
+            String websocket_channel = WebSocketHub.getChannel(this.client_http_request);
+            if(websocket_channel != null){
+                this.is_detached = WebSocketHub.getInstance().handle(this.client_http_request, websocket_channel, this.s, this.dos);
+                return;
+            }
+            //If the requested resource is an event stream, then let the Server-Sent Events hub handle the request.
+            String sse_channel = SSEHub.getChannel(this.client_http_request);
+            if(sse_channel != null){
+                this.is_detached = SSEHub.getInstance().handle(this.client_http_request, sse_channel, this.s, this.dos);
+                return;
+            }
+            //If the requested resource is routed to upstream servers, then let the reverse proxy forward the request,
+            //unless its response is in the shared response cache.
+            ReverseProxy proxy = ReverseProxy.getInstance();
+            if(proxy.isProxied(this.client_http_request)){
+                HTTPRequest request = this.client_http_request;
+                if(trace != null)
+                    trace.end(RequestTrace.Phase.ROUTE);
+                HTTPResponseCache.getShared().serve(request, this.dos, (output) -> proxy.forward(request, this.s, output, trace));
+                if(trace != null)
+                    trace.end(RequestTrace.Phase.PROXY);
+                return;
+            }
+            if(trace != null)
+                trace.end(RequestTrace.Phase.ROUTE);
             //Initiate the HTTP response for the client's request.
             this.client_http_response = new HTTPResponse(this.client_http_request);
+            this.client_http_response.setTrace(trace);
+            this.client_http_response.setChannel(this.s.getChannel());
             //Write the HTTP response to the client's OutputStream
             this.client_http_response.writeHTTPResponse(dos);
         } catch (Exception ex) {
             System.err.println(ex.getMessage());
+        } finally {
+            this.state = this.is_detached ? State.DETACHED : State.CLOSED;
+            if(!this.is_detached)
+                this.close();
+            if(trace != null)
+                trace.finish(this.client_http_request, this.client_http_response != null ? this.client_http_response.getHttp_status_code() : this.rejected_status);
         }
     }
     
     /**
-     * Use the client's BufferedReader to read the HTTP request line by line, and then
-     * create an HTTPRequest instance containing the information about the client's request.
-     * @return An HTTPRequest instance representing the client's request to the server.
+     * Flush and close the client's streams and socket.
+     */
+    private void close(){
+        try(this.bis; this.dos; this.s) {
+            this.dos.flush();
+        } catch (Exception ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+    
+    /**
+     * Shut down the output once a rejection is written, and discard the bytes of the request already received, so
+     * that closing the socket doesn't reset the connection before the client reads the response.
+     */
+    private void discardInput(){
+        try {
+            this.dos.flush();
+            this.s.shutdownOutput();
+            this.bis.skip(this.bis.available());
+        } catch (Exception ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+    
+    /**
+     * Read the HTTP request from the client's BufferedInputStream line by line, and then
+     * create an HTTPRequest instance containing the information about the client's request.<br>
+     * The content of an upload request isn't read: it's streamed to disk by FileUpload.<br>
+     * In strict parsing mode, the request line and the header lines are checked byte by byte in the line buffer,
+     * before they're decoded or added to the headers table, and their sizes are bounded while they're read. A request
+     * that fails a check isn't read any further: its rejection status is set, and null is returned.
+     * @return An HTTPRequest instance representing the client's request to the server, or null if it was rejected.
      * @throws IOException 
      */
     private HTTPRequest readHTTPRequest() throws IOException{
-        //Initiate an ArrayList to hold the HTTP request headers.
-        ArrayList<String> http_request_headers = new ArrayList<>();
+        HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+        boolean is_strict = configuration.isStrict_parsing();
+        //Initiate the table holding the HTTP request headers.
+        HTTPHeaders http_request_headers = new HTTPHeaders();
         //Read the first line which contains the request line in the format of:
         //HTTP_METHOD /RESOURCE HTTP_VERSION
-        String line = br.readLine();
+        int length = this.readLineBytes(is_strict ? configuration.getMax_request_line_length() : MAX_LINE_LENGTH);
+        //An empty line before the request line is ignored (RFC 9112, section 2.2).
+        if(length == 0 && is_strict)
+            length = this.readLineBytes(configuration.getMax_request_line_length());
+        if(length == LINE_TOO_LONG && !is_strict)
+            throw new IOException("Line too long in the client's request.");
+        if(length == LINE_TOO_LONG)
+            return this.reject(414);
+        if(is_strict && length != -1 && !HTTPRequest.isValidRequestLine(this.line_buffer, length))
+            return this.reject(400);
         //Store the request line.
-        String request_line = line;
-        //Initiate an integer to hold the content line.
-        int content_length = -1;
-        String post_content = "";
+        String request_line = length != -1 ? new String(this.line_buffer, 0, length, StandardCharsets.UTF_8) : null;
+        byte[] post_content = new byte[0];
         try{
-            //Loop through the client's InputStream using the BufferedReader.
-            //Then read the HTTP request line by line.
-            while((line = br.readLine()) != null && (line.length() != 0)){
-                //If one of the HTTP request headers contains Content-Length, it means there is some content sent in the request body
-                //or as form values. If that is the case, then extract that length (in bytes) to use for reading the content.
-                if (line.contains("Content-Length:"))
-                    content_length = Integer.parseInt(line.split("\\s")[1]);
-                //Add each request header to the headers ArrayList.
-                http_request_headers.add(line);
+            //Loop through the client's InputStream and read the HTTP request headers line by line, until the empty
+            //line. Each header is copied from the line buffer to the headers table. In strict mode, the header lines
+            //share the maximum header size, and a malformed one rejects the request rather than being ignored.
+            int header_size = 0;
+            while((length = this.readLineBytes(is_strict ? configuration.getMax_header_size() - header_size : MAX_LINE_LENGTH)) > 0){
+                if(!is_strict){
+                    http_request_headers.add(this.line_buffer, 0, length);
+                    continue;
+                }
+                header_size += length;
+                if(http_request_headers.size() >= configuration.getMax_header_count())
+                    return this.reject(431);
+                if(!HTTPHeaders.isValidHeader(this.line_buffer, 0, length) || !http_request_headers.add(this.line_buffer, 0, length))
+                    return this.reject(400);
             }
+            if(length == LINE_TOO_LONG && !is_strict)
+                throw new IOException("Line too long in the client's request.");
+            if(length == LINE_TOO_LONG)
+                return this.reject(431);
+            //A head cut off before its empty line is incomplete.
+            if(length == -1 && is_strict)
+                return this.reject(400);
+            int framing_error = is_strict ? getFramingError(http_request_headers) : 0;
+            if(framing_error != 0)
+                return this.reject(framing_error);
             
-            //If the HTTP request contains a Content-Length header
-            if(content_length != -1){
-                //Declare a char array with its size being the content length.
-                char [] content_array = new char[content_length];
-                //Read as much bytes from the InputStream and store them in the char array.
-                br.read(content_array, 0, content_length);
-                //Convert the char array to a string.
-                post_content = new String(content_array);
+            //If the request is an upload, then its content is left in the stream for FileUpload.
+            HTTPRequest request = new HTTPRequest(request_line, http_request_headers);
+            if(FileUpload.isUploadRequest(request))
+                return request;
+            //If the HTTP request contains a Content-Length header, it means there is some content sent in the request
+            //body or as form values. If that is the case, then use that length (in bytes) to read the content.
+            long content_length = http_request_headers.getLong(HTTPHeaders.CONTENT_LENGTH);
+            //The content is read in memory, so it's limited (before approving it, if the client waits for approval).
+            if(content_length > HTTPServerInformation.getConfiguration().getMax_content_size())
+                return this.reject(413);
+            if(content_length > 0){
+                //If the client waits for the server's approval before sending the content, then approve it.
+                if("100-continue".equalsIgnoreCase(request.getRequest_header(HTTPHeaders.EXPECT))){
+                    this.dos.write((HTTPServerInformation.SUPPORTED_HTTP_VERSION + " 100 Continue" + HTTPResponse.CONTENT_CRLF).getBytes(StandardCharsets.ISO_8859_1));
+                    this.dos.flush();
+                }
+                //Read exactly the content length in bytes from the InputStream. The request keeps the bytes as sent.
+                post_content = this.bis.readNBytes((int) content_length);
             }
         } catch(Exception ex){
             System.err.println(ex.getMessage());
+            //In strict mode, a request that can't be read completely isn't handled.
+            if(is_strict)
+                return this.reject(400);
         }
         
         //Return a new HTTPRequest instanciated with the request line and headers.
-        if(post_content.isEmpty())
+        if(post_content.length == 0)
             return new HTTPRequest(request_line, http_request_headers);
         
         //If there is any post content, then invoke the full HTTPRequest's constructor.
         return new HTTPRequest(request_line, http_request_headers, post_content);
     }
+    
+    /**
+     * Set the status code of the request's rejection by the strict parsing.
+     * @param code An integer denoting the HTTP status code.
+     * @return null, as the request isn't read any further.
+     */
+    private HTTPRequest reject(int code){
+        this.rejected_status = code;
+        return null;
+    }
+    
+    /**
+     * Check the headers framing the request's content, which must be unambiguous for the server and for the upstream
+     * servers of the reverse proxy: a single Host, a single numeric Content-Length, and no Transfer-Encoding along
+     * with a Content-Length. Per the specification: <b>RFC 9112, section 6.3</b>.
+     * @param headers The request's headers.
+     * @return An integer denoting the HTTP status code of the rejection: 400 for ambiguous framing, 411 (Length
+     * Required) for chunked content (which the server doesn't decode), or 0 if the framing is valid.
+     */
+    private static int getFramingError(HTTPHeaders headers){
+        if(headers.count(HTTPHeaders.HOST) > 1 || headers.count(HTTPHeaders.CONTENT_LENGTH) > 1 || headers.getLong(HTTPHeaders.CONTENT_LENGTH) == -2)
+            return 400;
+        if(headers.count(HTTPHeaders.TRANSFER_ENCODING) == 0)
+            return 0;
+        //Chunked must be the final coding, otherwise the content's end is unknown.
+        String codings = headers.get(HTTPHeaders.TRANSFER_ENCODING);
+        if(headers.count(HTTPHeaders.TRANSFER_ENCODING) > 1 || headers.count(HTTPHeaders.CONTENT_LENGTH) > 0
+                || !codings.substring(codings.lastIndexOf(',') + 1).trim().equalsIgnoreCase("chunked"))
+            return 400;
+        return 411;
+    }
+    
+    /**
+     * Read a line of the request's head into the line buffer, without its line terminator (CRLF or LF).<br>
+     * A line longer than the maximum length isn't read any further.
+     * @param max_length The maximum length of the line, without its line terminator.
+     * @return The length of the line, -1 if the end of the stream is reached before any data, or LINE_TOO_LONG.
+     * @throws IOException If the line can't be read.
+     */
+    private int readLineBytes(int max_length) throws IOException{
+        int length = 0;
+        int b;
+        while((b = this.bis.read()) != -1){
+            if(b == '\n'){
+                int line_length = length > 0 && this.line_buffer[length - 1] == '\r' ? length - 1 : length;
+                return line_length <= max_length ? line_length : LINE_TOO_LONG;
+            }
+            //The line's CR is stored past its maximum length.
+            if(length > max_length)
+                return LINE_TOO_LONG;
+            if(length == this.line_buffer.length)
+                this.line_buffer = Arrays.copyOf(this.line_buffer, Math.min(length * 2, max_length + 1));
+            this.line_buffer[length++] = (byte) b;
+        }
+        return length > 0 ? length : -1;
+    }
 }
\ No newline at end of file
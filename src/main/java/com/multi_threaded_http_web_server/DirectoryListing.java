@@ -0,0 +1,121 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * This class generates paginated directory listings, in HTML or JSON, from a directory snapshot.
+ * @author Hodaifa98
+ */
+public final class DirectoryListing {
+
+    //Private empty constructor to prevent this class from being instantiated.
+    private DirectoryListing(){}
+
+    /**
+     * Generate an HTML page listing a page of a directory's entries, with links to the previous and next pages.
+     * @param request_path The requested directory path, ending with "/".
+     * @param snapshot The snapshot of the directory.
+     * @param page The page number, starting from 1.
+     * @param page_size The maximum number of entries in a page.
+     * @return The HTML listing encoded in UTF-8.
+     */
+    public static byte[] renderHTML(String request_path, DirectorySnapshot snapshot, int page, int page_size){
+        StringBuilder html = new StringBuilder(256 + page_size * 128);
+        String title = "Index of " + escapeHTML(request_path);
+        html.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>").append(title).append("</title>\n</head>\n<body>\n");
+        html.append("<h1>").append(title).append("</h1>\n<ul>\n");
+        //Link to the parent directory, unless this is the root directory.
+        if(!request_path.equals("/"))
+            html.append("<li><a href=\"../\">../</a></li>\n");
+        for(DirectorySnapshot.Entry entry : snapshot.getPage(page, page_size)){
+            String name = entry.getName() + (entry.isIs_directory() ? "/" : "");
+            //The links are relative to the directory, whose path ends with "/".
+            html.append("<li><a href=\"").append(escapeHTML(encodePathSegment(entry.getName())));
+            if(entry.isIs_directory())
+                html.append('/');
+            html.append("\">").append(escapeHTML(name)).append("</a>");
+            if(!entry.isIs_directory())
+                html.append(" (").append(entry.getSize()).append(" bytes)");
+            html.append("</li>\n");
+        }
+        html.append("</ul>\n<p>");
+        //Pagination links.
+        int page_count = getPageCount(snapshot, page_size);
+        if(page > 1)
+            html.append("<a href=\"?page=").append(page - 1).append("&amp;page_size=").append(page_size).append("\">Previous</a> ");
+        html.append("Page ").append(page).append(" of ").append(page_count);
+        if(page < page_count)
+            html.append(" <a href=\"?page=").append(page + 1).append("&amp;page_size=").append(page_size).append("\">Next</a>");
+        html.append("</p>\n</body>\n</html>\n");
+        return html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Generate a JSON document listing a page of a directory's entries.
+     * @param request_path The requested directory path, ending with "/".
+     * @param snapshot The snapshot of the directory.
+     * @param page The page number, starting from 1.
+     * @param page_size The maximum number of entries in a page.
+     * @return The JSON listing encoded in UTF-8.
+     */
+    public static byte[] renderJSON(String request_path, DirectorySnapshot snapshot, int page, int page_size){
+        StringBuilder json = new StringBuilder(128 + page_size * 96);
+        json.append("{\"path\":\"").append(escapeJSON(request_path)).append('"');
+        json.append(",\"page\":").append(page);
+        json.append(",\"page_size\":").append(page_size);
+        json.append(",\"page_count\":").append(getPageCount(snapshot, page_size));
+        json.append(",\"total_entries\":").append(snapshot.getEntry_count());
+        json.append(",\"entries\":[");
+        List<DirectorySnapshot.Entry> entries = snapshot.getPage(page, page_size);
+        for(int i = 0; i < entries.size(); i++){
+            DirectorySnapshot.Entry entry = entries.get(i);
+            if(i > 0)
+                json.append(',');
+            json.append("{\"name\":\"").append(escapeJSON(entry.getName())).append('"');
+            json.append(",\"type\":\"").append(entry.isIs_directory() ? "directory" : "file").append('"');
+            json.append(",\"size\":").append(entry.getSize());
+            json.append(",\"last_modified\":\"").append(Instant.ofEpochMilli(entry.getLast_modified())).append("\"}");
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the number of pages of a directory listing. An empty directory still has one (empty) page.
+     * @param snapshot The snapshot of the directory.
+     * @param page_size The maximum number of entries in a page.
+     * @return The number of pages.
+     */
+    public static int getPageCount(DirectorySnapshot snapshot, int page_size){
+        return Math.max(1, (snapshot.getEntry_count() + page_size - 1) / page_size);
+    }
+
+    //Percent-encode a file name so that it can be used as a single URL path segment.
+    private static String encodePathSegment(String name){
+        return URLEncoder.encode(name, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    //Escape the characters that have a special meaning in HTML.
+    private static String escapeHTML(String text){
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    //Escape the characters that have a special meaning in a JSON string.
+    private static String escapeJSON(String text){
+        StringBuilder escaped = new StringBuilder(text.length());
+        for(char c : text.toCharArray()){
+            if(c == '"' || c == '\\')
+                escaped.append('\\').append(c);
+            else if(c < 0x20)
+                escaped.append(String.format("\\u%04x", (int) c));
+            else
+                escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
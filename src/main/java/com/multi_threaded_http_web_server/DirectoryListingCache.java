@@ -0,0 +1,145 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of directory snapshots used to generate directory listings.<br>
+ * A directory is listed once, the first time it's requested, and its snapshot is then kept up to date
+ * incrementally from the events of a WatchService instead of listing the directory again on every request.
+ * @author Hodaifa98
+ */
+public final class DirectoryListingCache {
+
+    //The cached snapshots, keyed by the absolute, normalized path of their directory.
+    private static final ConcurrentHashMap<Path, DirectorySnapshot> SNAPSHOTS = new ConcurrentHashMap<>();
+
+    //The directories registered with the WatchService, keyed by their WatchKey.
+    private static final ConcurrentHashMap<WatchKey, Path> WATCHED_DIRECTORIES = new ConcurrentHashMap<>();
+
+    //The WatchService, created lazily along with its watcher thread when the first directory is requested.
+    private static WatchService watch_service;
+
+    //Private empty constructor to prevent this class from being instantiated.
+    private DirectoryListingCache(){}
+
+    /**
+     * Get the snapshot of a directory, listing and watching the directory if it isn't cached yet.
+     * @param directory The path of the directory.
+     * @param max_cached_directories The maximum number of directories to keep in the cache. If the cache is full,
+     * another directory is dropped from it to make room for this one.
+     * @return The current DirectorySnapshot of the directory.
+     * @throws IOException If the directory can't be listed.
+     */
+    public static DirectorySnapshot getSnapshot(Path directory, int max_cached_directories) throws IOException {
+        Path key = directory.toAbsolutePath().normalize();
+        DirectorySnapshot snapshot = SNAPSHOTS.get(key);
+        if(snapshot != null)
+            return snapshot;
+        //Register the directory before listing it, so that no change made after the listing can be missed.
+        //The listing is done inside computeIfAbsent, which makes the watcher's updates for this directory wait for it.
+        watchDirectory(key, max_cached_directories);
+        try {
+            snapshot = SNAPSHOTS.computeIfAbsent(key, (path) -> {
+                try {
+                    return DirectorySnapshot.fromDirectory(path);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        //The directory may have been evicted (or deleted) since it was registered, before its snapshot was cached.
+        //An evicted directory's snapshot is removed after its watch, so a snapshot without a watch is dropped here,
+        //otherwise it would never be updated again. It's still current for this request.
+        if(!WATCHED_DIRECTORIES.containsValue(key))
+            SNAPSHOTS.remove(key, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Register a directory with the WatchService, starting the watcher thread on first use.
+     * @param directory The absolute path of the directory to watch.
+     * @param max_cached_directories The maximum number of watched directories.
+     * @throws IOException If the directory can't be registered.
+     */
+    private static synchronized void watchDirectory(Path directory, int max_cached_directories) throws IOException {
+        if(WATCHED_DIRECTORIES.containsValue(directory))
+            return;
+        //Stop watching (and forget) other directories until there is room for this one.
+        for(WatchKey watched : WATCHED_DIRECTORIES.keySet()){
+            if(WATCHED_DIRECTORIES.size() < max_cached_directories)
+                break;
+            watched.cancel();
+            Path evicted = WATCHED_DIRECTORIES.remove(watched);
+            if(evicted != null)
+                SNAPSHOTS.remove(evicted);
+        }
+        if(watch_service == null){
+            watch_service = FileSystems.getDefault().newWatchService();
+            Thread watcher = new Thread(DirectoryListingCache::processEvents, "directory-listing-watcher");
+            //The watcher must not keep the server's process alive.
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+        WatchKey key = directory.register(watch_service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        WATCHED_DIRECTORIES.put(key, directory);
+    }
+
+    /**
+     * The watcher thread's loop. Applies every event to the snapshot of its directory.
+     */
+    private static void processEvents() {
+        try {
+            while(true){
+                WatchKey key = watch_service.take();
+                Path directory = WATCHED_DIRECTORIES.get(key);
+                if(directory != null){
+                    for(WatchEvent<?> event : key.pollEvents())
+                        applyEvent(directory, event);
+                }
+                //If the key is no longer valid (the directory was deleted), forget the directory entirely.
+                if(!key.reset()){
+                    WATCHED_DIRECTORIES.remove(key);
+                    if(directory != null)
+                        SNAPSHOTS.remove(directory);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * Apply a single WatchService event to the cached snapshot of a directory.
+     * @param directory The directory the event belongs to.
+     * @param event The WatchService event.
+     */
+    private static void applyEvent(Path directory, WatchEvent<?> event) {
+        //If events were lost, the snapshot can't be updated incrementally. Drop it so that it's listed again.
+        if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+            SNAPSHOTS.remove(directory);
+            return;
+        }
+        Path child = directory.resolve((Path) event.context());
+        SNAPSHOTS.computeIfPresent(directory, (path, snapshot) -> {
+            if(event.kind() == StandardWatchEventKinds.ENTRY_DELETE)
+                return snapshot.withoutEntry(child.getFileName().toString());
+            //Created or modified entries are read again. If the entry is already gone, then remove it.
+            DirectorySnapshot.Entry entry = DirectorySnapshot.readEntry(child);
+            return entry != null ? snapshot.withEntry(entry) : snapshot.withoutEntry(child.getFileName().toString());
+        });
+    }
+}
@@ -0,0 +1,189 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the entries of a directory in the server's public directory.<br>
+ * Entries are kept sorted (directories first, then by name) so that a listing page can be sliced
+ * directly from the snapshot without sorting on every request.<br>
+ * Updates never modify a snapshot, they create a new one with a single entry added, replaced or removed.
+ * @author Hodaifa98
+ */
+public final class DirectorySnapshot {
+
+    /**
+     * A single entry (file or sub-directory) of a directory snapshot.
+     */
+    public static final class Entry {
+        private final String name;
+        private final boolean is_directory;
+        private final long size;
+        private final long last_modified;
+
+        /**
+         * The Entry class's main constructor.
+         * @param name The name of the file or directory.
+         * @param is_directory A boolean denoting if the entry is a directory.
+         * @param size The size of the entry in bytes.
+         * @param last_modified The last modification time of the entry in milliseconds since the epoch.
+         */
+        public Entry(String name, boolean is_directory, long size, long last_modified) {
+            this.name = name;
+            this.is_directory = is_directory;
+            this.size = size;
+            this.last_modified = last_modified;
+        }
+
+        /**
+         * @return The name of the file or directory.
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * @return A boolean denoting if the entry is a directory.
+         */
+        public boolean isIs_directory() {
+            return this.is_directory;
+        }
+
+        /**
+         * @return The size of the entry in bytes.
+         */
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * @return The last modification time of the entry in milliseconds since the epoch.
+         */
+        public long getLast_modified() {
+            return this.last_modified;
+        }
+    }
+
+    //Sort directories first, then files, each group ordered by name.
+    private static final Comparator<Entry> ENTRY_ORDER = Comparator
+            .comparing((Entry e) -> !e.is_directory)
+            .thenComparing(e -> e.name);
+
+    //The directory this snapshot was taken from, and its sorted entries.
+    private final Path directory;
+    private final Entry[] entries;
+
+    //Private constructor, snapshots are created by listing a directory or by updating an existing snapshot.
+    private DirectorySnapshot(Path directory, Entry[] entries) {
+        this.directory = directory;
+        this.entries = entries;
+    }
+
+    /**
+     * @return The path of the directory this snapshot was taken from.
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * @return The number of entries in the directory.
+     */
+    public int getEntry_count() {
+        return this.entries.length;
+    }
+
+    /**
+     * List a directory and create a new snapshot of its entries.
+     * @param directory The path of the directory to list.
+     * @return A new DirectorySnapshot of the directory.
+     * @throws IOException If the directory can't be listed.
+     */
+    public static DirectorySnapshot fromDirectory(Path directory) throws IOException {
+        ArrayList<Entry> listed_entries = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory)){
+            for(Path child : stream){
+                Entry entry = readEntry(child);
+                //The entry may have been removed between listing and reading its attributes.
+                if(entry != null)
+                    listed_entries.add(entry);
+            }
+        }
+        Entry[] sorted_entries = listed_entries.toArray(new Entry[0]);
+        Arrays.sort(sorted_entries, ENTRY_ORDER);
+        return new DirectorySnapshot(directory, sorted_entries);
+    }
+
+    /**
+     * Read the attributes of a path and create the corresponding snapshot entry.
+     * @param path The path of a file or directory.
+     * @return A new Entry, or null if the path doesn't exist anymore.
+     */
+    public static Entry readEntry(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Entry(path.getFileName().toString(), attributes.isDirectory(), attributes.size(),
+                    attributes.lastModifiedTime().toMillis());
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Create a new snapshot with an entry added, or replaced if an entry with the same name already exists.
+     * @param entry The entry to add to the snapshot.
+     * @return A new DirectorySnapshot containing the entry.
+     */
+    public DirectorySnapshot withEntry(Entry entry) {
+        //Remove any previous version of the entry first, since its position may change (file replaced by a directory).
+        Entry[] current = this.withoutEntry(entry.name).entries;
+        int index = Arrays.binarySearch(current, entry, ENTRY_ORDER);
+        int insertion_point = index >= 0 ? index : -(index + 1);
+        Entry[] updated = new Entry[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, insertion_point);
+        updated[insertion_point] = entry;
+        System.arraycopy(current, insertion_point, updated, insertion_point + 1, current.length - insertion_point);
+        return new DirectorySnapshot(this.directory, updated);
+    }
+
+    /**
+     * Create a new snapshot with the entry of the name provided as a parameter removed.
+     * @param name The name of the entry to remove.
+     * @return A new DirectorySnapshot without the entry, or the current snapshot if there is no such entry.
+     */
+    public DirectorySnapshot withoutEntry(String name) {
+        for(int i = 0; i < this.entries.length; i++){
+            if(this.entries[i].name.equals(name)){
+                Entry[] updated = new Entry[this.entries.length - 1];
+                System.arraycopy(this.entries, 0, updated, 0, i);
+                System.arraycopy(this.entries, i + 1, updated, i, this.entries.length - i - 1);
+                return new DirectorySnapshot(this.directory, updated);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Get a page of entries from the snapshot.
+     * @param page The page number, starting from 1.
+     * @param page_size The maximum number of entries in a page.
+     * @return An unmodifiable list of the entries in the requested page (empty if the page is out of range).
+     */
+    public List<Entry> getPage(int page, int page_size) {
+        long from = (long) (page - 1) * page_size;
+        if(page < 1 || page_size < 1 || from >= this.entries.length)
+            return Collections.emptyList();
+        int to = (int) Math.min(from + page_size, this.entries.length);
+        return Collections.unmodifiableList(Arrays.asList(this.entries).subList((int) from, to));
+    }
+}
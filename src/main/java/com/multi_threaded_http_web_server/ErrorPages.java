@@ -0,0 +1,153 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+/**
+ * The error pages of a virtual host, for every error status code (4xx and 5xx) the server knows the text of.<br>
+ * The pages are read, templated and encoded once, when the configuration is loaded: serving one is a lookup in an
+ * array indexed by the status code, and a single write of the response's head and content. A status code without its
+ * own page (error_page.CODE) gets the error page template (error_page_template), or the built-in page if there is
+ * none. Editing a page takes effect when the configuration is reloaded.<br>
+ * Templates can contain the following placeholders: {{status}} (the status code), {{status_text}} (its text) and
+ * {{request_id}} (the request's trace id when tracing is enabled, otherwise "-").
+ * @author Hodaifa98
+ */
+public final class ErrorPages {
+
+    //The placeholders of a template.
+    private static final String STATUS = "{{status}}";
+    private static final String STATUS_TEXT = "{{status_text}}";
+    private static final String REQUEST_ID = "{{request_id}}";
+
+    //The page used when there is no template.
+    private static final String BUILT_IN_TEMPLATE = "<!DOCTYPE html>\n<html>\n    <head>\n        <title>{{status}} {{status_text}}</title>\n"
+            + "        <meta charset=\"UTF-8\">\n    </head>\n    <body>\n        <h1>{{status}} {{status_text}}</h1>\n"
+            + "        <p>Request id: {{request_id}}</p>\n    </body>\n</html>\n";
+
+    /**
+     * An encoded error page: its content is split around the request id, the only part that changes per request.
+     */
+    public static final class Page {
+        private final byte[] head;
+        private final byte[] tail;
+        private final boolean has_request_id;
+        private final String meme_type;
+
+        private Page(byte[] head, byte[] tail, boolean has_request_id, String meme_type){
+            this.head = head;
+            this.tail = tail;
+            this.has_request_id = has_request_id;
+            this.meme_type = meme_type;
+        }
+
+        /**
+         * @return The MEME type of the page.
+         */
+        public String getMeme_type() {
+            return this.meme_type;
+        }
+
+        /**
+         * Get the length of the page's content.
+         * @param request_id The request id written in the page.
+         * @return The length of the page's content in bytes.
+         */
+        public int getContent_length(String request_id) {
+            return this.head.length + this.tail.length + (this.has_request_id ? request_id.length() : 0);
+        }
+
+        /**
+         * Encode a response: its head (status line and headers, ending with a double CRLF) followed by the page.
+         * @param head The response's head.
+         * @param request_id The request id written in the page (ASCII).
+         * @return The bytes of the whole response, to be written at once.
+         */
+        public byte[] encode(byte[] head, String request_id) {
+            byte[] response = new byte[head.length + this.getContent_length(request_id)];
+            System.arraycopy(head, 0, response, 0, head.length);
+            int offset = head.length;
+            System.arraycopy(this.head, 0, response, offset, this.head.length);
+            offset += this.head.length;
+            if(this.has_request_id){
+                byte[] id = request_id.getBytes(StandardCharsets.ISO_8859_1);
+                System.arraycopy(id, 0, response, offset, id.length);
+                offset += id.length;
+            }
+            System.arraycopy(this.tail, 0, response, offset, this.tail.length);
+            return response;
+        }
+    }
+
+    //The pages, indexed by status code.
+    private final Page[] pages = new Page[600];
+
+    /**
+     * Load the error pages of a virtual host. A page that can't be read is replaced by the template (or the
+     * built-in page), with a warning.
+     * @param error_pages The paths of the host's error pages, keyed by status code.
+     * @param template The path of the host's error page template, or null to use the built-in page.
+     * @param http_status The texts of the status codes.
+     */
+    public ErrorPages(Map<Integer, String> error_pages, String template, Map<Integer, String> http_status) {
+        String template_content = template != null ? read(template) : null;
+        String template_meme_type = template_content != null ? MEME_TYPES.getMEMETypeFromResource(template) : "text/html";
+        if(template_content == null)
+            template_content = BUILT_IN_TEMPLATE;
+        for(Map.Entry<Integer, String> status : http_status.entrySet()){
+            int code = status.getKey();
+            if(code < 400 || code >= this.pages.length)
+                continue;
+            String page = template_content;
+            String meme_type = template_meme_type;
+            String path = error_pages.get(code);
+            if(path != null){
+                String content = read(path);
+                if(content != null){
+                    page = content;
+                    meme_type = MEME_TYPES.getMEMETypeFromResource(path);
+                }
+            }
+            this.pages[code] = encode(page, code, status.getValue(), meme_type);
+        }
+    }
+
+    /**
+     * Get the error page of a status code.
+     * @param code An integer denoting a HTTP status code.
+     * @return The encoded Page, or null if the status code isn't an error (or its text is unknown).
+     */
+    public Page get(int code) {
+        return code >= 0 && code < this.pages.length ? this.pages[code] : null;
+    }
+
+    //Fill in a template's status placeholders, and encode it around the request id placeholder.
+    private static Page encode(String template, int code, String status_text, String meme_type) {
+        String page = template.replace(STATUS_TEXT, escapeHTML(status_text)).replace(STATUS, Integer.toString(code));
+        int request_id = page.indexOf(REQUEST_ID);
+        if(request_id == -1)
+            return new Page(page.getBytes(StandardCharsets.UTF_8), new byte[0], false, meme_type);
+        return new Page(page.substring(0, request_id).getBytes(StandardCharsets.UTF_8),
+                page.substring(request_id + REQUEST_ID.length()).replace(REQUEST_ID, "").getBytes(StandardCharsets.UTF_8), true, meme_type);
+    }
+
+    //Read a page, or return null (with a warning) if it can't be read.
+    private static String read(String path) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            System.err.println("Error page not loaded, using the default page instead: " + path);
+            return null;
+        }
+    }
+
+    //Escape the HTML special characters of a configured status text.
+    private static String escapeHTML(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,348 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single selector thread holding long-lived connections (event streams, WebSockets) once their HTTP exchange
+ * is done, so that they don't keep a thread of the request handling thread pool each.<br>
+ * Every connection has an outbound queue of buffers, written by the event loop's thread when the socket is writable.
+ * Buffers can be shared between connections (as read-only duplicates), so that a message sent to many connections is
+ * only encoded once. A connection whose queue exceeds its limit (a client not reading fast enough) is closed.
+ * @author Hodaifa98
+ */
+public class EventLoop implements Runnable {
+
+    /**
+     * Receives the data read from a connection, and its closing.
+     */
+    public interface ConnectionListener {
+        /**
+         * Called by the event loop's thread with the data read from the connection.
+         * @param connection The connection the data was read from.
+         * @param data The data read, valid only during the call.
+         */
+        void onRead(Connection connection, ByteBuffer data);
+
+        /**
+         * Called by the event loop's thread once the connection is closed.
+         * @param connection The closed connection.
+         */
+        void onClose(Connection connection);
+    }
+
+    /**
+     * A connection held by the event loop.
+     */
+    public static final class Connection {
+        private final EventLoop event_loop;
+        private final SocketChannel channel;
+        private final ConnectionListener listener;
+        private final InetAddress remote_address;
+        private final long max_queued_bytes;
+        private final ConcurrentLinkedQueue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        private final AtomicLong queued_bytes = new AtomicLong();
+        private final AtomicBoolean is_scheduled = new AtomicBoolean();
+        private volatile boolean is_closing = false;
+        private volatile boolean is_closed = false;
+        private SelectionKey key;
+
+        private Connection(EventLoop event_loop, SocketChannel channel, ConnectionListener listener, long max_queued_bytes) {
+            this.event_loop = event_loop;
+            this.channel = channel;
+            this.listener = listener;
+            this.max_queued_bytes = max_queued_bytes;
+            InetSocketAddress address = (InetSocketAddress) channel.socket().getRemoteSocketAddress();
+            this.remote_address = address != null ? address.getAddress() : null;
+        }
+
+        /**
+         * Queue data to be written to the connection. The buffer's content must not be modified afterwards;
+         * a buffer shared between connections should be sent as buffer.duplicate().
+         * @param buffer The data to write, from its position to its limit.
+         * @return A boolean denoting if the data was queued: false if the connection is closed, or if its queue
+         * exceeded its limit, in which case the connection is closed.
+         */
+        public boolean send(ByteBuffer buffer) {
+            if(this.is_closing)
+                return false;
+            if(this.queued_bytes.addAndGet(buffer.remaining()) > this.max_queued_bytes){
+                System.err.println("Closing a slow connection from " + this.remote_address + ": "
+                        + this.queued_bytes.get() + " bytes queued.");
+                this.is_closing = true;
+                this.outbound.clear();
+                this.event_loop.schedule(this);
+                return false;
+            }
+            this.outbound.add(buffer);
+            this.event_loop.schedule(this);
+            return true;
+        }
+
+        /**
+         * Close the connection once the data already queued is written.
+         */
+        public void close() {
+            this.is_closing = true;
+            this.event_loop.schedule(this);
+        }
+
+        /**
+         * @return A boolean denoting if the connection is closed, or closing.
+         */
+        public boolean isIs_closed() {
+            return this.is_closing || this.is_closed;
+        }
+
+        /**
+         * @return The number of bytes queued and not written to the connection yet.
+         */
+        public long getQueued_bytes() {
+            return this.queued_bytes.get();
+        }
+
+        /**
+         * @return The address of the client.
+         */
+        public InetAddress getRemote_address() {
+            return this.remote_address;
+        }
+    }
+
+    //The maximum number of buffers written to a connection at once.
+    private static final int MAX_GATHERED_BUFFERS = 64;
+
+    //The running event loop, started on the first registered connection.
+    private static EventLoop instance;
+
+    //The selector, and the connections registered or scheduled for a write (or a close) since the last selection.
+    private final Selector selector;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<Connection> registrations = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Connection> scheduled = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer read_buffer = ByteBuffer.allocateDirect(16 * 1024);
+    private final AtomicLong connection_count = new AtomicLong();
+    private volatile boolean is_running = true;
+
+    //The time the event loop started, and the time its thread spent outside of the selection (busy), in nanoseconds.
+    private final long started_at = System.nanoTime();
+    private volatile long busy_time = 0;
+
+    private EventLoop() throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, "event-loop");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Get the running event loop, starting it if needed.
+     * @return The event loop.
+     * @throws IOException If the selector can't be opened.
+     */
+    public static synchronized EventLoop getInstance() throws IOException {
+        if(instance == null){
+            instance = new EventLoop();
+            instance.thread.start();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the running event loop, without starting it.
+     * @return The event loop, or null if it isn't running.
+     */
+    public static synchronized EventLoop getRunning() {
+        return instance;
+    }
+
+    /**
+     * Stop the event loop if it's running, closing all its connections.
+     */
+    public static synchronized void shutdown() {
+        if(instance == null)
+            return;
+        instance.is_running = false;
+        instance.selector.wakeup();
+        try {
+            instance.thread.join(5000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        instance = null;
+    }
+
+    /**
+     * @return The number of connections held by the event loop.
+     */
+    public long getConnection_count() {
+        return this.connection_count.get();
+    }
+
+    /**
+     * Get the utilization of the event loop's thread since it started: the part of its time spent reading and
+     * writing connections, rather than waiting for them.
+     * @return A double between 0 and 1.
+     */
+    public double getUtilization() {
+        long elapsed = System.nanoTime() - this.started_at;
+        return elapsed > 0 ? Math.min(1, (double) this.busy_time / elapsed) : 0;
+    }
+
+    /**
+     * Hand a connected socket channel over to the event loop. The channel is switched to non-blocking mode,
+     * so its socket's streams can't be used anymore.
+     * @param channel The client's socket channel, after its HTTP exchange.
+     * @param listener The listener receiving the data read from the connection, and its closing.
+     * @param max_queued_bytes The maximum number of bytes queued for the connection before it's closed.
+     * @return The connection.
+     * @throws IOException If the channel can't be switched to non-blocking mode.
+     */
+    public Connection register(SocketChannel channel, ConnectionListener listener, long max_queued_bytes) throws IOException {
+        channel.configureBlocking(false);
+        Connection connection = new Connection(this, channel, listener, max_queued_bytes);
+        this.registrations.add(connection);
+        this.selector.wakeup();
+        return connection;
+    }
+
+    //Schedule a connection's queue to be written (or the connection to be closed) by the event loop's thread.
+    private void schedule(Connection connection) {
+        if(connection.is_scheduled.compareAndSet(false, true)){
+            this.scheduled.add(connection);
+            //Repeated wake ups before the next selection are coalesced by the selector.
+            if(Thread.currentThread() != this.thread)
+                this.selector.wakeup();
+        }
+    }
+
+    /**
+     * The event loop's thread: registers new connections, reads or writes the connections whose sockets are ready,
+     * and writes the scheduled queues.
+     */
+    @Override
+    public void run() {
+        while(this.is_running){
+            try {
+                this.selector.select();
+                long selected_at = System.nanoTime();
+                Connection connection;
+                while((connection = this.registrations.poll()) != null){
+                    connection.key = connection.channel.register(this.selector, SelectionKey.OP_READ, connection);
+                    this.connection_count.incrementAndGet();
+                    //Data may have been queued before the registration.
+                    connection.is_scheduled.set(true);
+                    this.scheduled.add(connection);
+                }
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while(keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    connection = (Connection) key.attachment();
+                    try {
+                        if(key.isValid() && key.isWritable())
+                            this.write(connection);
+                        if(key.isValid() && key.isReadable())
+                            this.read(connection);
+                    } catch (CancelledKeyException ex) {
+                        this.closeConnection(connection);
+                    }
+                }
+                //Write the queues scheduled by other threads, and by the listeners while handling the reads.
+                while((connection = this.scheduled.poll()) != null){
+                    connection.is_scheduled.set(false);
+                    if(connection.key != null)
+                        this.write(connection);
+                }
+                //Only the event loop's thread updates its busy time.
+                this.busy_time += System.nanoTime() - selected_at;
+            } catch (Exception ex) {
+                System.err.println(ex.getMessage());
+            }
+        }
+        //Close all the connections when the event loop is stopped.
+        for(SelectionKey key : this.selector.keys())
+            this.closeConnection((Connection) key.attachment());
+        try {
+            this.selector.close();
+        } catch (IOException ex) {}
+    }
+
+    //Read the available data of a connection, and pass it to its listener.
+    private void read(Connection connection) {
+        try {
+            this.read_buffer.clear();
+            int bytes = connection.channel.read(this.read_buffer);
+            if(bytes == -1){
+                this.closeConnection(connection);
+                return;
+            }
+            this.read_buffer.flip();
+            if(bytes > 0)
+                connection.listener.onRead(connection, this.read_buffer);
+        } catch (Exception ex) {
+            this.closeConnection(connection);
+        }
+    }
+
+    //Write as much of a connection's queue as its socket accepts, gathering several buffers per write.
+    private void write(Connection connection) {
+        if(connection.is_closed)
+            return;
+        try {
+            ByteBuffer[] buffers = new ByteBuffer[MAX_GATHERED_BUFFERS];
+            while(!connection.outbound.isEmpty()){
+                int count = 0;
+                for(Iterator<ByteBuffer> queued = connection.outbound.iterator(); queued.hasNext() && count < buffers.length;)
+                    buffers[count++] = queued.next();
+                long written = connection.channel.write(buffers, 0, count);
+                connection.queued_bytes.addAndGet(-written);
+                //Remove the buffers written completely.
+                for(int i = 0; i < count && !buffers[i].hasRemaining(); i++)
+                    connection.outbound.poll();
+                if(buffers[count - 1].hasRemaining()){
+                    //The socket's send buffer is full: wait until it's writable again.
+                    connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            connection.key.interestOps(SelectionKey.OP_READ);
+            if(connection.is_closing)
+                this.closeConnection(connection);
+        } catch (Exception ex) {
+            this.closeConnection(connection);
+        }
+    }
+
+    //Close a connection, and notify its listener.
+    private void closeConnection(Connection connection) {
+        if(connection.is_closed)
+            return;
+        connection.is_closing = true;
+        connection.is_closed = true;
+        connection.outbound.clear();
+        if(connection.key != null){
+            connection.key.cancel();
+            this.connection_count.decrementAndGet();
+        }
+        try {
+            connection.channel.close();
+        } catch (IOException ex) {}
+        try {
+            connection.listener.onClose(connection);
+        } catch (Exception ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+}
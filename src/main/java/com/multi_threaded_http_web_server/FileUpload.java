@@ -0,0 +1,405 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Handles the uploads to the upload path: PUT requests (the content is the file), streaming multipart/form-data
+ * POST requests (every file part is a file), and DELETE requests.<br>
+ * Uploaded content is never held in memory: it's streamed from the socket to a temporary file in the target directory
+ * through a FileChannel, then atomically renamed to its final name once it's complete, so a file is never seen
+ * partially written. Requests larger than the maximum upload size are rejected from their Content-Length, before
+ * their content is sent when the client asked for it with "Expect: 100-continue".
+ * @author Hodaifa98
+ */
+public final class FileUpload {
+
+    //The maximum size of a part's headers in a multipart content.
+    private static final int MAX_PART_HEADERS_SIZE = 16 * 1024;
+
+    //Private empty constructor to prevent this class from being instantiated.
+    private FileUpload(){}
+
+    /**
+     * Check if a request is an upload: a PUT, POST or DELETE request to the upload path, with uploads enabled.
+     * @param request The client's HTTP request, without its content.
+     * @return A boolean denoting if the request must be handled by handle().
+     */
+    public static boolean isUploadRequest(HTTPRequest request) {
+        HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+        HTTP_Method method = request.getHttp_method();
+        return configuration.isUpload_enabled() && request.getRequested_resource() != null
+                && request.getRequested_resource().startsWith(configuration.getUpload_path())
+                && (method == HTTP_Method.PUT || method == HTTP_Method.POST || method == HTTP_Method.DELETE);
+    }
+
+    /**
+     * Handle an upload request, reading its content from the client's input stream, and write the response.
+     * @param request The client's HTTP request, without its content.
+     * @param input The client socket's input stream, positioned at the start of the request's content.
+     * @param s The client's socket.
+     * @param dos The DataOutputStream of the client's socket.
+     * @throws IOException If the response can't be written.
+     */
+    public static void handle(HTTPRequest request, InputStream input, Socket s, DataOutputStream dos) throws IOException {
+        HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+        if(configuration.isUpload_loopback_only() && !s.getInetAddress().isLoopbackAddress()){
+            HTTPResponse.writeStatusResponse(dos, 403, "");
+            return;
+        }
+        Path target = resolveTarget(configuration, request.getRequested_resource());
+        if(target == null){
+            HTTPResponse.writeStatusResponse(dos, 400, "");
+            return;
+        }
+        if(request.getHttp_method() == HTTP_Method.DELETE){
+            HTTPResponse.writeStatusResponse(dos, Files.isRegularFile(target) && Files.deleteIfExists(target) ? 204 : 404, "");
+            return;
+        }
+        //The content's length must be known, to reject large uploads before reading them.
+        long content_length;
+        try {
+            content_length = Long.parseLong(request.getRequest_header(HTTPHeaders.CONTENT_LENGTH).trim());
+        } catch (Exception ex) {
+            content_length = -1;
+        }
+        String boundary = getBoundary(request.getRequest_header(HTTPHeaders.CONTENT_TYPE));
+        int code = 0;
+        if(request.getRequest_header(HTTPHeaders.TRANSFER_ENCODING) != null || content_length < 0)
+            code = 411;
+        else if(content_length > configuration.getUpload_max_size())
+            code = 413;
+        else if(request.getHttp_method() == HTTP_Method.POST && boundary == null)
+            code = 415;
+        else if(request.getHttp_method() == HTTP_Method.PUT && (request.getRequested_resource().endsWith("/") || Files.isDirectory(target)))
+            code = 400;
+        else if(request.getRequest_header(HTTPHeaders.EXPECT) != null && !request.getRequest_header(HTTPHeaders.EXPECT).trim().equalsIgnoreCase("100-continue"))
+            code = 417;
+        if(code != 0){
+            HTTPResponse.writeStatusResponse(dos, code, "");
+            return;
+        }
+        //The request is acceptable: let the client send its content.
+        if(request.getRequest_header(HTTPHeaders.EXPECT) != null){
+            dos.write((HTTPServerInformation.SUPPORTED_HTTP_VERSION + " 100 " + configuration.getHttp_status().get(100)
+                    + HTTPResponse.CONTENT_CRLF).getBytes(StandardCharsets.ISO_8859_1));
+            dos.flush();
+        }
+        BoundedInputStream content = new BoundedInputStream(input, content_length);
+        byte[] buffer = new byte[configuration.getBuffer_size()];
+        try {
+            if(request.getHttp_method() == HTTP_Method.PUT){
+                boolean is_existing = Files.exists(target);
+                Files.createDirectories(target.getParent());
+                storeFile(content, buffer, target);
+                HTTPResponse.writeStatusResponse(dos, is_existing ? 204 : 201,
+                        is_existing ? "" : HTTPResponse.CRLF + "Location: " + request.getRequested_resource());
+            }
+            else{
+                Files.createDirectories(target);
+                int files = storeMultipartFiles(new MultipartReader(content, boundary, buffer), target);
+                HTTPResponse.writeStatusResponse(dos, files > 0 ? 201 : 400, "");
+            }
+        } catch (MalformedContentException ex) {
+            HTTPResponse.writeStatusResponse(dos, 400, "");
+        } catch (IOException ex) {
+            //The client may have disconnected, or the file couldn't be written.
+            System.err.println("Upload failed: " + ex.getMessage());
+            HTTPResponse.writeStatusResponse(dos, 500, "");
+        }
+    }
+
+    /**
+     * Resolve the path of the file (or directory) an upload request targets, in the upload directory.
+     * The path is percent-decoded first, as when the file is requested, so that encoded "." and ".." segments are
+     * blocked too.
+     * @return The target path, or null if the requested resource is outside of the upload directory (or has an
+     * invalid escape).
+     */
+    private static Path resolveTarget(HTTPServerConfiguration configuration, String resource) {
+        String relative = HTTPRequest.decodePath(resource.substring(configuration.getUpload_path().length()));
+        if(relative == null || relative.contains("\\") || relative.indexOf('\0') != -1)
+            return null;
+        for(String segment : relative.split("/"))
+            if(segment.equals("..") || segment.equals("."))
+                return null;
+        try {
+            Path directory = Paths.get(configuration.getUpload_directory()).toAbsolutePath().normalize();
+            Path target = directory.resolve(relative).normalize();
+            return target.startsWith(directory) ? target : null;
+        } catch (InvalidPathException ex) {
+            //The path can't be represented on the filesystem (such as characters unmappable by its encoding).
+            return null;
+        }
+    }
+
+    //Get the boundary of a multipart/form-data content type, or null if it isn't one.
+    private static String getBoundary(String content_type) {
+        if(content_type == null || !content_type.toLowerCase().startsWith("multipart/form-data"))
+            return null;
+        for(String parameter : content_type.split(";")){
+            parameter = parameter.trim();
+            if(parameter.toLowerCase().startsWith("boundary=")){
+                String boundary = parameter.substring("boundary=".length()).replace("\"", "");
+                return boundary.isEmpty() || boundary.length() > 70 ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stream a content to a temporary file next to the target, then atomically rename it to the target.
+     * The temporary file is deleted if the content can't be stored completely.
+     */
+    private static void storeFile(BoundedInputStream content, byte[] buffer, Path target) throws IOException {
+        Path temporary = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try {
+            try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)){
+                int bytes;
+                while((bytes = content.read(buffer, 0, buffer.length)) != -1)
+                    writeFully(channel, buffer, 0, bytes);
+            }
+            if(content.getRemaining() > 0)
+                throw new MalformedContentException("The content ended before its Content-Length.");
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Store every file part of a multipart content in a directory, each one streamed to a temporary file and then
+     * renamed to its (sanitized) file name. Parts without a file name (form fields) are skipped.
+     * @return The number of stored files.
+     */
+    private static int storeMultipartFiles(MultipartReader reader, Path directory) throws IOException {
+        int files = 0;
+        ArrayList<String> headers;
+        while((headers = reader.nextPart()) != null){
+            String file_name = null;
+            for(String header : headers)
+                if(header.toLowerCase().startsWith("content-disposition:"))
+                    file_name = getFileName(header);
+            Path target = file_name != null ? directory.resolve(file_name).normalize() : null;
+            if(target == null || !directory.equals(target.getParent())){
+                reader.transferPart(null);
+                continue;
+            }
+            Path temporary = Files.createTempFile(directory, ".upload-", ".tmp");
+            try {
+                try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)){
+                    reader.transferPart(channel);
+                }
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                files++;
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+        return files;
+    }
+
+    //Get the file name of a part from its Content-Disposition header, without any directory, or null if it has none.
+    private static String getFileName(String content_disposition) {
+        for(String parameter : content_disposition.split(";")){
+            parameter = parameter.trim();
+            if(parameter.toLowerCase().startsWith("filename=")){
+                String file_name = parameter.substring("filename=".length()).replace("\"", "");
+                file_name = file_name.substring(Math.max(file_name.lastIndexOf('/'), file_name.lastIndexOf('\\')) + 1);
+                boolean is_valid = !file_name.isBlank() && !file_name.equals(".") && !file_name.equals("..")
+                        && file_name.chars().noneMatch((c) -> c < 0x20 || c == 0x7F);
+                return is_valid ? file_name : null;
+            }
+        }
+        return null;
+    }
+
+    //Write a part of a buffer to a file channel.
+    private static void writeFully(FileChannel channel, byte[] buffer, int offset, int length) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(buffer, offset, length);
+        while(data.hasRemaining())
+            channel.write(data);
+    }
+
+    /**
+     * Thrown when an upload's content doesn't match its headers.
+     */
+    private static final class MalformedContentException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private MalformedContentException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * An input stream reading at most a number of bytes (the request's Content-Length) from the client's stream.
+     */
+    private static final class BoundedInputStream extends InputStream {
+        private final InputStream input;
+        private long remaining;
+
+        private BoundedInputStream(InputStream input, long length) {
+            this.input = input;
+            this.remaining = length;
+        }
+
+        private long getRemaining() {
+            return this.remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(this.remaining <= 0)
+                return -1;
+            int bytes = this.input.read(b, off, (int) Math.min(len, this.remaining));
+            if(bytes > 0)
+                this.remaining -= bytes;
+            return bytes;
+        }
+    }
+
+    /**
+     * A streaming reader of a multipart/form-data content (<b>RFC 7578</b>): parts are read one at a time, and their
+     * content is transferred as it's read, keeping only a buffer's worth of data in memory.
+     */
+    private static final class MultipartReader {
+        private final InputStream input;
+        private final byte[] delimiter;
+        private final byte[] buffer;
+        private int start = 0;
+        private int end = 0;
+        private boolean is_finished = false;
+
+        private MultipartReader(InputStream input, String boundary, byte[] buffer) throws IOException {
+            this.input = input;
+            this.delimiter = (HTTPResponse.CRLF + "--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+            this.buffer = buffer.length >= 4 * this.delimiter.length ? buffer : new byte[4 * this.delimiter.length];
+            //The first boundary isn't preceded by a CRLF: add one, so that every boundary matches the delimiter.
+            this.buffer[this.end++] = '\r';
+            this.buffer[this.end++] = '\n';
+            //Skip the preamble.
+            this.transferPart(null);
+        }
+
+        /**
+         * Read the headers of the next part.
+         * @return The headers of the part, or null if there is no more part.
+         */
+        private ArrayList<String> nextPart() throws IOException {
+            if(this.is_finished)
+                return null;
+            //A boundary is followed by "--" for the last one, or by a CRLF.
+            if(!this.ensure(2))
+                throw new MalformedContentException("Incomplete multipart content.");
+            if(this.buffer[this.start] == '-' && this.buffer[this.start + 1] == '-'){
+                this.is_finished = true;
+                return null;
+            }
+            if(this.buffer[this.start] != '\r' || this.buffer[this.start + 1] != '\n')
+                throw new MalformedContentException("Invalid multipart boundary.");
+            this.start += 2;
+            ArrayList<String> headers = new ArrayList<>();
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int headers_size = 0;
+            while(true){
+                if(!this.ensure(1))
+                    throw new MalformedContentException("Incomplete multipart headers.");
+                byte b = this.buffer[this.start++];
+                if(++headers_size > MAX_PART_HEADERS_SIZE)
+                    throw new MalformedContentException("Multipart headers too large.");
+                if(b != '\n'){
+                    line.write(b);
+                    continue;
+                }
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                if(length == 0)
+                    return headers;
+                headers.add(new String(bytes, 0, length, StandardCharsets.UTF_8));
+                line.reset();
+            }
+        }
+
+        /**
+         * Transfer the content of the current part, up to the next delimiter, to a file channel (or skip it).
+         * @param channel The file channel to write the part's content to, or null to skip it.
+         */
+        private void transferPart(FileChannel channel) throws IOException {
+            while(true){
+                int index = this.indexOfDelimiter();
+                if(index != -1){
+                    if(channel != null)
+                        writeFully(channel, this.buffer, this.start, index - this.start);
+                    this.start = index + this.delimiter.length;
+                    return;
+                }
+                //Everything except the last bytes (which could be the start of a delimiter) is part of the content.
+                int safe_end = Math.max(this.start, this.end - this.delimiter.length + 1);
+                if(channel != null)
+                    writeFully(channel, this.buffer, this.start, safe_end - this.start);
+                this.start = safe_end;
+                if(!this.fill())
+                    throw new MalformedContentException("Incomplete multipart content.");
+            }
+        }
+
+        //Find the delimiter in the buffered data.
+        private int indexOfDelimiter() {
+            int last = this.end - this.delimiter.length;
+            for(int i = this.start; i <= last; i++){
+                if(this.buffer[i] != this.delimiter[0])
+                    continue;
+                int j = 1;
+                while(j < this.delimiter.length && this.buffer[i + j] == this.delimiter[j])
+                    j++;
+                if(j == this.delimiter.length)
+                    return i;
+            }
+            return -1;
+        }
+
+        //Make sure at least a number of bytes are buffered.
+        private boolean ensure(int bytes) throws IOException {
+            while(this.end - this.start < bytes)
+                if(!this.fill())
+                    return false;
+            return true;
+        }
+
+        //Move the unread data to the start of the buffer, and read more data after it.
+        private boolean fill() throws IOException {
+            if(this.start > 0){
+                System.arraycopy(this.buffer, this.start, this.buffer, 0, this.end - this.start);
+                this.end -= this.start;
+                this.start = 0;
+            }
+            int bytes = this.input.read(this.buffer, this.end, this.buffer.length - this.end);
+            if(bytes == -1)
+                return false;
+            this.end += bytes;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The headers of a request, stored as slices of a single byte array.<br>
+ * The well-known headers have integer ids (such as HTTPHeaders.CONTENT_LENGTH): looking one up is an array access,
+ * and its name is matched against the well-known names only once, when the header is added. Other headers are found
+ * through a small open-addressed table of their case insensitive names. Header names are case insensitive, and a
+ * header sent several times keeps all its values (a lookup returns the last one).<br>
+ * Values are only decoded to strings when they're requested, and numeric values can be parsed from the bytes.
+ * @author Hodaifa98
+ */
+public final class HTTPHeaders {
+
+    //The ids of the well-known headers.
+    public static final int HOST = 0;
+    public static final int CONTENT_LENGTH = 1;
+    public static final int CONTENT_TYPE = 2;
+    public static final int TRANSFER_ENCODING = 3;
+    public static final int CONNECTION = 4;
+    public static final int ACCEPT = 5;
+    public static final int ACCEPT_ENCODING = 6;
+    public static final int IF_NONE_MATCH = 7;
+    public static final int EXPECT = 8;
+    public static final int UPGRADE = 9;
+    public static final int AUTHORIZATION = 10;
+    public static final int CACHE_CONTROL = 11;
+    public static final int COOKIE = 12;
+    public static final int USER_AGENT = 13;
+    public static final int TRACEPARENT = 14;
+    public static final int SEC_WEBSOCKET_KEY = 15;
+    public static final int SEC_WEBSOCKET_VERSION = 16;
+    public static final int X_FORWARDED_FOR = 17;
+
+    //The names of the well-known headers, indexed by id.
+    private static final String[] NAMES = {"Host", "Content-Length", "Content-Type", "Transfer-Encoding", "Connection",
+        "Accept", "Accept-Encoding", "If-None-Match", "Expect", "Upgrade", "Authorization", "Cache-Control", "Cookie",
+        "User-Agent", "traceparent", "Sec-WebSocket-Key", "Sec-WebSocket-Version", "X-Forwarded-For"};
+
+    //The ids of the well-known headers (plus one, 0 is an empty slot), keyed by the hash of their names.
+    private static final int[] KNOWN_SLOTS = new int[64];
+    static{
+        for(int id = 0; id < NAMES.length; id++){
+            int slot = hash(NAMES[id]) & (KNOWN_SLOTS.length - 1);
+            while(KNOWN_SLOTS[slot] != 0)
+                slot = (slot + 1) & (KNOWN_SLOTS.length - 1);
+            KNOWN_SLOTS[slot] = id + 1;
+        }
+    }
+
+    //The bytes of the headers' names and values.
+    private byte[] data = new byte[512];
+    private int data_length = 0;
+
+    //The headers, in the order they were added: the slices of their names and values, their ids (-1 if they aren't
+    //well-known), the previous header with the same name (-1 if none) and their decoded values.
+    private int size = 0;
+    private int[] name_offsets = new int[16];
+    private int[] name_lengths = new int[16];
+    private int[] value_offsets = new int[16];
+    private int[] value_lengths = new int[16];
+    private int[] ids = new int[16];
+    private int[] previous = new int[16];
+    private String[] values = new String[16];
+
+    //The last header of each well-known id (plus one, 0 if absent).
+    private final int[] known = new int[NAMES.length];
+
+    //The last header of each other name (plus one, 0 is an empty slot), keyed by the hash of its name.
+    private int[] unknown_slots = new int[16];
+    private int unknown_count = 0;
+
+    /**
+     * Get the id of a well-known header.
+     * @param name The name of the header, in any case.
+     * @return The id of the header, or -1 if it isn't well-known.
+     */
+    public static int getId(String name) {
+        for(int slot = hash(name) & (KNOWN_SLOTS.length - 1); KNOWN_SLOTS[slot] != 0; slot = (slot + 1) & (KNOWN_SLOTS.length - 1))
+            if(NAMES[KNOWN_SLOTS[slot] - 1].equalsIgnoreCase(name))
+                return KNOWN_SLOTS[slot] - 1;
+        return -1;
+    }
+
+    /**
+     * Add a header from a line of a request's head, in the form of Name: value. The whitespace around the value is
+     * removed.
+     * @param line The bytes of the line, without its line terminator.
+     * @param offset The offset of the line in the array.
+     * @param length The length of the line.
+     * @return A boolean denoting if the line is a header (otherwise it's not added).
+     */
+    public boolean add(byte[] line, int offset, int length) {
+        int colon = -1;
+        for(int i = offset; i < offset + length; i++){
+            if(line[i] == ':'){
+                colon = i;
+                break;
+            }
+        }
+        if(colon <= offset)
+            return false;
+        int value_start = colon + 1;
+        int value_end = offset + length;
+        while(value_start < value_end && (line[value_start] == ' ' || line[value_start] == '\t'))
+            value_start++;
+        while(value_end > value_start && (line[value_end - 1] == ' ' || line[value_end - 1] == '\t'))
+            value_end--;
+        //Copy the name and the value, and add the header.
+        this.ensureCapacity(length);
+        int index = this.size++;
+        this.name_offsets[index] = this.data_length;
+        this.name_lengths[index] = colon - offset;
+        System.arraycopy(line, offset, this.data, this.data_length, colon - offset);
+        this.data_length += colon - offset;
+        this.value_offsets[index] = this.data_length;
+        this.value_lengths[index] = value_end - value_start;
+        System.arraycopy(line, value_start, this.data, this.data_length, value_end - value_start);
+        this.data_length += value_end - value_start;
+        this.values[index] = null;
+        int hash = hash(this.data, this.name_offsets[index], this.name_lengths[index]);
+        this.ids[index] = this.findKnown(hash, index);
+        if(this.ids[index] != -1){
+            this.previous[index] = this.known[this.ids[index]] - 1;
+            this.known[this.ids[index]] = index + 1;
+        }
+        else
+            this.addUnknown(hash, index);
+        return true;
+    }
+
+    /**
+     * Add a header.
+     * @param line The header, in the form of Name: value.
+     * @return A boolean denoting if the line is a header (otherwise it's not added).
+     */
+    public boolean add(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        return this.add(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Check a header line byte by byte, before it's added: a name made of token characters, immediately followed by
+     * a colon, and a value without control characters (except tabs). A line folded from the previous one (starting
+     * with whitespace) or with whitespace before the colon is invalid, since servers disagree on how to read it.
+     * Per the specification: <b>RFC 9112, section 5</b>.
+     * @param line The bytes of the line, without its line terminator.
+     * @param offset The offset of the line in the array.
+     * @param length The length of the line.
+     * @return A boolean denoting if the line is a valid header.
+     */
+    public static boolean isValidHeader(byte[] line, int offset, int length) {
+        int i = offset;
+        while(i < offset + length && isTokenCharacter(line[i]))
+            i++;
+        if(i == offset || i == offset + length || line[i] != ':')
+            return false;
+        //Bytes above 127 (negative) are allowed in values, as opaque data.
+        for(i++; i < offset + length; i++)
+            if((line[i] >= 0 && line[i] < ' ' && line[i] != '\t') || line[i] == 127)
+                return false;
+        return true;
+    }
+
+    /**
+     * Check if a byte is a token character, allowed in methods and header names (RFC 9110, section 5.6.2).
+     * @param b The byte.
+     * @return A boolean denoting if the byte is a token character.
+     */
+    public static boolean isTokenCharacter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || (b > ' ' && b < 127 && "!#$%&'*+-.^_`|~".indexOf(b) != -1);
+    }
+
+    /**
+     * @return The number of headers.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Get the value of a well-known header.
+     * @param id The id of the header.
+     * @return The value of the header's last occurrence, or null if the request doesn't contain it.
+     */
+    public String get(int id) {
+        return this.known[id] != 0 ? this.getValue(this.known[id] - 1) : null;
+    }
+
+    /**
+     * Get the value of a header, ignoring the case of its name.
+     * @param name The name of the header.
+     * @return The value of the header's last occurrence, or null if the request doesn't contain it.
+     */
+    public String get(String name) {
+        int index = this.find(name);
+        return index != -1 ? this.getValue(index) : null;
+    }
+
+    /**
+     * Count the occurrences of a well-known header.
+     * @param id The id of the header.
+     * @return The number of times the header was sent.
+     */
+    public int count(int id) {
+        int count = 0;
+        for(int index = this.known[id] - 1; index != -1; index = this.previous[index])
+            count++;
+        return count;
+    }
+
+    /**
+     * Parse the value of a well-known header as a non-negative number (such as Content-Length), from its bytes.
+     * @param id The id of the header.
+     * @return The number, -1 if the request doesn't contain the header, or -2 if its value isn't a number.
+     */
+    public long getLong(int id) {
+        if(this.known[id] == 0)
+            return -1;
+        int index = this.known[id] - 1;
+        int length = this.value_lengths[index];
+        if(length == 0 || length > 18)
+            return -2;
+        long value = 0;
+        for(int i = this.value_offsets[index]; i < this.value_offsets[index] + length; i++){
+            if(this.data[i] < '0' || this.data[i] > '9')
+                return -2;
+            value = value * 10 + (this.data[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Get the name of a header, as it was sent.
+     * @param index The index of the header, in the order they were added.
+     * @return The name of the header.
+     */
+    public String getName(int index) {
+        return new String(this.data, this.name_offsets[index], this.name_lengths[index], StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Get the value of a header.
+     * @param index The index of the header, in the order they were added.
+     * @return The value of the header.
+     */
+    public String getValue(int index) {
+        if(this.values[index] == null)
+            this.values[index] = new String(this.data, this.value_offsets[index], this.value_lengths[index], StandardCharsets.UTF_8);
+        return this.values[index];
+    }
+
+    /**
+     * Get the id of a header.
+     * @param index The index of the header, in the order they were added.
+     * @return The id of the header, or -1 if it isn't well-known.
+     */
+    public int getId(int index) {
+        return this.ids[index];
+    }
+
+    //Find the last header with a name (its index), or -1 if there is none.
+    private int find(String name) {
+        int id = getId(name);
+        if(id != -1)
+            return this.known[id] - 1;
+        int mask = this.unknown_slots.length - 1;
+        for(int slot = hash(name) & mask; this.unknown_slots[slot] != 0; slot = (slot + 1) & mask)
+            if(this.nameEquals(this.unknown_slots[slot] - 1, name))
+                return this.unknown_slots[slot] - 1;
+        return -1;
+    }
+
+    //Find the id of a header's name among the well-known names, or -1.
+    private int findKnown(int hash, int index) {
+        for(int slot = hash & (KNOWN_SLOTS.length - 1); KNOWN_SLOTS[slot] != 0; slot = (slot + 1) & (KNOWN_SLOTS.length - 1))
+            if(this.nameEquals(index, NAMES[KNOWN_SLOTS[slot] - 1]))
+                return KNOWN_SLOTS[slot] - 1;
+        return -1;
+    }
+
+    //Add a header that isn't well-known to the table of the other names, growing it to keep it at most half full.
+    private void addUnknown(int hash, int index) {
+        int mask = this.unknown_slots.length - 1;
+        int slot = hash & mask;
+        for(; this.unknown_slots[slot] != 0; slot = (slot + 1) & mask){
+            int other = this.unknown_slots[slot] - 1;
+            if(this.name_lengths[other] == this.name_lengths[index] && this.nameEquals(index, other)){
+                this.previous[index] = other;
+                this.unknown_slots[slot] = index + 1;
+                return;
+            }
+        }
+        this.previous[index] = -1;
+        this.unknown_slots[slot] = index + 1;
+        if(++this.unknown_count * 2 > this.unknown_slots.length){
+            int[] slots = this.unknown_slots;
+            this.unknown_slots = new int[slots.length * 2];
+            mask = this.unknown_slots.length - 1;
+            for(int entry : slots){
+                if(entry == 0)
+                    continue;
+                int new_slot = hash(this.data, this.name_offsets[entry - 1], this.name_lengths[entry - 1]) & mask;
+                while(this.unknown_slots[new_slot] != 0)
+                    new_slot = (new_slot + 1) & mask;
+                this.unknown_slots[new_slot] = entry;
+            }
+        }
+    }
+
+    //Check if the name of a header is equal to a string, ignoring the case.
+    private boolean nameEquals(int index, String name) {
+        if(this.name_lengths[index] != name.length())
+            return false;
+        for(int i = 0; i < name.length(); i++)
+            if(toLowerCase(this.data[this.name_offsets[index] + i]) != toLowerCase(name.charAt(i)))
+                return false;
+        return true;
+    }
+
+    //Check if the names of two headers are equal, ignoring the case.
+    private boolean nameEquals(int index, int other) {
+        for(int i = 0; i < this.name_lengths[index]; i++)
+            if(toLowerCase(this.data[this.name_offsets[index] + i]) != toLowerCase(this.data[this.name_offsets[other] + i]))
+                return false;
+        return true;
+    }
+
+    //Make room for a header of a number of bytes.
+    private void ensureCapacity(int length) {
+        if(this.data_length + length > this.data.length)
+            this.data = Arrays.copyOf(this.data, Math.max(this.data.length * 2, this.data_length + length));
+        if(this.size == this.ids.length){
+            int capacity = this.size * 2;
+            this.name_offsets = Arrays.copyOf(this.name_offsets, capacity);
+            this.name_lengths = Arrays.copyOf(this.name_lengths, capacity);
+            this.value_offsets = Arrays.copyOf(this.value_offsets, capacity);
+            this.value_lengths = Arrays.copyOf(this.value_lengths, capacity);
+            this.ids = Arrays.copyOf(this.ids, capacity);
+            this.previous = Arrays.copyOf(this.previous, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+    }
+
+    //The case insensitive hash of a name, from its bytes or its characters (ASCII names hash the same).
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0;
+        for(int i = offset; i < offset + length; i++)
+            hash = 31 * hash + toLowerCase(bytes[i]);
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(String name) {
+        int hash = 0;
+        for(int i = 0; i < name.length(); i++)
+            hash = 31 * hash + toLowerCase(name.charAt(i));
+        return hash ^ (hash >>> 16);
+    }
+
+    //Lowercase an ASCII letter.
+    private static int toLowerCase(int c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+}
@@ -2,8 +2,10 @@ package com.multi_threaded_http_web_server;
 
 
 //Imports.
-import java.util.ArrayList;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -18,17 +20,21 @@ public final class HTTPRequest {
     private String http_version;
 
     //HTTP headers.
-    private final HashMap<String, String> request_headers = new HashMap<>();;
+    private final HTTPHeaders request_headers;
     
     //Request MEME type.
     private final String request_meme_type;
     
-    //Request content.
+    //Request content, as sent by the client and decoded.
+    private byte[] request_content_bytes = new byte[0];
     private String request_content = "";
     
     //GET query string (if available).
     private String GET_query_string = "";
     
+    //A boolean denoting if the request line is malformed (missing its method, resource or version).
+    private boolean is_malformed = false;
+    
     
     //Getters.
     
@@ -58,6 +64,13 @@ public final class HTTPRequest {
         return this.requested_resource;
     }
     
+    /**
+     * @return A boolean denoting if the request line is malformed (missing its method, resource or version).
+     */
+    public boolean isIs_malformed() {
+        return this.is_malformed;
+    }
+    
     /**
      * @return The HTTP version used by the client in its request.
      */
@@ -67,12 +80,30 @@ public final class HTTPRequest {
     
     /**
      * 
-     * @return A HashMap of the request headers and their values.
+     * @return The request headers and their values.
      */
-    public HashMap<String, String> getRequest_headers() {
+    public HTTPHeaders getRequest_headers() {
         return this.request_headers;
     }
     
+    /**
+     * Get the value of a request header, ignoring the case of its name (header names are case insensitive).
+     * @param name The name of the header.
+     * @return The value of the header, or null if the request doesn't contain it.
+     */
+    public String getRequest_header(String name) {
+        return this.request_headers.get(name);
+    }
+    
+    /**
+     * Get the value of a well-known request header.
+     * @param id The id of the header, such as HTTPHeaders.CONTENT_LENGTH.
+     * @return The value of the header, or null if the request doesn't contain it.
+     */
+    public String getRequest_header(int id) {
+        return this.request_headers.get(id);
+    }
+    
     /**
      * Get the HTTP request MEME type associated with the requested resource.
      * @return The request MEME type.
@@ -89,6 +120,14 @@ public final class HTTPRequest {
         return this.request_content;
     }
     
+    /**
+     * Get the HTTP request content as sent by the client, such as binary content forwarded by the reverse proxy.
+     * @return The request content bytes.
+     */
+    public byte[] getRequest_content_bytes() {
+        return this.request_content_bytes;
+    }
+    
     /**
      * Get the HTTP request content parameters, extracted in the case of a GET request.
      * @return The request parameters.
@@ -101,23 +140,32 @@ public final class HTTPRequest {
     /**
      * Main HTTPRequest constructor.
      * @param request_line The HTTP request line.
-     * @param http_request The HTTP request headers and body.
+     * @param request_headers The HTTP request headers, as read from the client.
      */
-    public HTTPRequest(String request_line, ArrayList<String> http_request){
+    public HTTPRequest(String request_line, HTTPHeaders request_headers){
         this.request_line = request_line;
         this.extractHTTPRequestLine(request_line);
-        this.extractHTTPRequestHeaders(http_request);
+        this.request_headers = request_headers;
         this.request_meme_type = MEME_TYPES.getMEMETypeFromResource(this.requested_resource);
     }
     /**
      * HTTPRequest constructor in the case of a request that contains any sent content.
      * @param request_line The HTTP request line.
-     * @param http_request The HTTP request headers and body.
-     * @param content The HTTP request sent data (content).
+     * @param request_headers The HTTP request headers, as read from the client.
+     * @param content The HTTP request sent data (content), as read from the client.
      */
-    public HTTPRequest(String request_line, ArrayList<String> http_request, String content){
-        this(request_line, http_request);
-        this.request_content = content;
+    public HTTPRequest(String request_line, HTTPHeaders request_headers, byte[] content){
+        this(request_line, request_headers);
+        this.request_content_bytes = content;
+        this.request_content = new String(content, StandardCharsets.UTF_8);
+    }
+    /**
+     * HTTPRequest constructor from header lines, such as a synthetic request.
+     * @param request_line The HTTP request line.
+     * @param http_request The HTTP request headers, in the form of Name: value.
+     */
+    public HTTPRequest(String request_line, List<String> http_request){
+        this(request_line, extractHTTPRequestHeaders(http_request));
     }
     
     
@@ -129,45 +177,90 @@ public final class HTTPRequest {
      * @param request_line The request line to extract data from.
      */
     private void extractHTTPRequestLine(String request_line) {
-        try {
-            String lines[] = request_line.split("\\s");
-            this.requested_resource = lines[1];
-            //If the request line contains GET parameters.
-            if(lines[1].contains("?")){
-                this.requested_resource = lines[1].split("\\?", 2)[0];
-                this.GET_query_string = lines[1].split("\\?", 2)[1];
-            }
-            this.http_version = lines[2];
-            //Determining the HTTP method.
-            try{
-                this.http_method = HTTP_Method.valueOf(lines[0]);
-            }catch(IllegalArgumentException ex){
-                //If the HTTP method used to make the request doesn't exist in the
-                //supported HTTP methods by the server, an IllegalArgumentException will be thrown
-                //and we will set the HTTP method to UNSOPPORTED.
-                this.http_method = HTTP_Method.UNSOPPORTED;
-            }
-        } catch (ArrayIndexOutOfBoundsException ex) {
-            System.err.println(ex.getMessage());
+        String lines[] = request_line != null ? request_line.split("\\s") : new String[0];
+        //A request line without its three parts is malformed: its fields are left null, and it's answered 400 (Bad Request).
+        if(lines.length < 3){
+            this.is_malformed = true;
+            return;
+        }
+        this.requested_resource = lines[1];
+        //If the request line contains GET parameters.
+        if(lines[1].contains("?")){
+            this.requested_resource = lines[1].split("\\?", 2)[0];
+            this.GET_query_string = lines[1].split("\\?", 2)[1];
+        }
+        this.http_version = lines[2];
+        //Determining the HTTP method.
+        try{
+            this.http_method = HTTP_Method.valueOf(lines[0]);
+        }catch(IllegalArgumentException ex){
+            //If the HTTP method used to make the request doesn't exist in the
+            //supported HTTP methods by the server, an IllegalArgumentException will be thrown
+            //and we will set the HTTP method to UNSOPPORTED.
+            this.http_method = HTTP_Method.UNSOPPORTED;
         }
     }
     
     /**
-     * Extract the HTTP request headers and add them to this current HTTPRequest instance's request_headers property.
-     * @param request_headers An ArrayList of request headers to parse.
+     * Check a request line byte by byte, before it's decoded: a method made of token characters, a single space, a
+     * request target made of visible ASCII characters, a single space, and HTTP/DIGIT.DIGIT.<br>
+     * Per the specification: <b>RFC 9112, section 3</b>.
+     * @param line The bytes of the request line, without its line terminator.
+     * @param length The length of the line.
+     * @return A boolean denoting if the request line is well-formed (its method and version may still be unsupported).
      */
-    private void extractHTTPRequestHeaders(ArrayList<String> request_headers){
-        try {
-            //Map through each request header and separate the string by ": ". And then parse the header name and content.
-            //Example:
-            //Content-Length: 128 would become ["Content-Length", "128"].
-            request_headers.stream().map((r) -> r.split(": ", 2)).forEachOrdered((header_and_data) -> {
-                //Add the header to the current HTTPRequest instance's request_headers HashMap.
-                this.request_headers.put(header_and_data[0], header_and_data[1]);
-            });
-        } catch (Exception ex) {
-            System.err.println(ex.getMessage());
+    public static boolean isValidRequestLine(byte[] line, int length) {
+        int i = 0;
+        while(i < length && HTTPHeaders.isTokenCharacter(line[i]))
+            i++;
+        if(i == 0 || i == length || line[i] != ' ')
+            return false;
+        int target = ++i;
+        //Bytes above 127 are negative, and must be percent-encoded.
+        while(i < length && line[i] > ' ' && line[i] < 127)
+            i++;
+        if(i == target || i == length || line[i] != ' ')
+            return false;
+        i++;
+        return length - i == 8 && line[i] == 'H' && line[i + 1] == 'T' && line[i + 2] == 'T' && line[i + 3] == 'P' && line[i + 4] == '/'
+                && Character.isDigit(line[i + 5]) && line[i + 6] == '.' && Character.isDigit(line[i + 7]);
+    }
+    
+    /**
+     * Percent-decode a request path, such as /my%20file.html, whose escaped bytes are UTF-8. A "+" isn't a space
+     * in a path.
+     * @param path The requested path, without its query string.
+     * @return The decoded path, or null if it contains an invalid escape (a "%" not followed by two hexadecimal digits).
+     */
+    public static String decodePath(String path) {
+        if(path.indexOf('%') == -1)
+            return path;
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream(path.length());
+        for(int i = 0; i < path.length(); i++){
+            char c = path.charAt(i);
+            if(c != '%'){
+                byte[] bytes = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                decoded.write(bytes, 0, bytes.length);
+                continue;
+            }
+            if(i + 2 >= path.length() || Character.digit(path.charAt(i + 1), 16) == -1 || Character.digit(path.charAt(i + 2), 16) == -1)
+                return null;
+            decoded.write(Character.digit(path.charAt(i + 1), 16) * 16 + Character.digit(path.charAt(i + 2), 16));
+            i += 2;
         }
+        return new String(decoded.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Extract the HTTP request headers from their lines.
+     * @param request_headers A list of request headers to parse, in the form of Name: value.
+     * @return The parsed HTTPHeaders. Lines that aren't headers are ignored.
+     */
+    private static HTTPHeaders extractHTTPRequestHeaders(List<String> request_headers){
+        HTTPHeaders headers = new HTTPHeaders();
+        for(String header : request_headers)
+            headers.add(header);
+        return headers;
     }
     
     /**
@@ -228,8 +321,8 @@ public final class HTTPRequest {
         request_string += "\tRequested resource: " + this.requested_resource + "\n";
         request_string += "\tHTTP Version: " + this.http_version + "\n";
         request_string += "HTTP Headers: \n";
-        for(Map.Entry<String, String> header : this.request_headers.entrySet())
-            request_string += "\t" + header.getKey() + ": " + header.getValue() + "\n";
+        for(int i = 0; i < this.request_headers.size(); i++)
+            request_string += "\t" + this.request_headers.getName(i) + ": " + this.request_headers.getValue(i) + "\n";
         request_string += "Request GET parameters:";
         //Check if there are any GET query parameters. If not, return the string "EMPTY".
         if (this.extractGETParameters() == null)
@@ -6,11 +6,16 @@ import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Locale;
 
 /**
  * The HTTPResponse class that handles, parses, and write the HTTP response appropriate to the output steam of
@@ -32,6 +37,15 @@ public class HTTPResponse {
      */
     public static final String CONTENT_CRLF = "\r\n\r\n";
     
+    //The format of the Date response header.
+    private static final DateTimeFormatter HTTP_DATE_FORMATTER = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss O", Locale.ENGLISH);
+    
+    //The server's configuration at the time of the request, used for the whole response.
+    private final HTTPServerConfiguration configuration;
+    
+    //The virtual host serving the request (its public directory, error pages and forbidden directories).
+    private final VirtualHost host;
+    
     //HTTP method and version.
     private final HTTP_Method http_method;
     private String http_version = "";
@@ -43,6 +57,16 @@ public class HTTPResponse {
     //A boolean to denote if this is a Bad request.
     private boolean is_bad_request = false;
     
+    //A boolean to denote if the requested resource resolves outside of the host's public directory.
+    private boolean is_outside_public_directory = false;
+    
+    //The location a directory requested without its trailing slash is redirected to (the requested path followed by
+    //a "/", and the GET query string), or null if the requested path ends with a "/" or is a route.
+    private String directory_location = null;
+    
+    //The location the response redirects to, or null.
+    private String redirect_location = null;
+    
     //HTTP Status code.
     private int http_status_code = 0;
     
@@ -59,6 +83,27 @@ public class HTTPResponse {
     //HTTPRequest content values
     private HashMap<String, String> request_content_values = null;
     
+    //Directory listing of the requested resource, if it's a directory without an index page.
+    private boolean is_directory_listing = false;
+    private boolean is_JSON_listing = false;
+    private byte[] directory_listing = null;
+    
+    //The requested file, if it's served from the static resource cache, and the request's conditional and
+    //compression headers.
+    private StaticResourceCache.Resource static_resource = null;
+    private boolean is_gzip = false;
+    private final String if_none_match;
+    private final String accept_encoding;
+    
+    //The requested file's entry in the host's bundle (or -1), the client's socket channel the bundle's slices are
+    //written to, and the number of bytes written to it (read by the admin console's thread).
+    private int bundle_entry = -1;
+    private SocketChannel channel = null;
+    private volatile long bundle_bytes_written = 0;
+    
+    //The timing of the request's phases, or null if tracing is disabled.
+    private RequestTrace trace = null;
+    
     
     //GETTERS.
     
@@ -155,6 +200,39 @@ public class HTTPResponse {
         return this.request_content_values;
     }
     
+    /**
+     * Check if the requested resource is a directory without an index page, whose listing is sent as the response.
+     * @return A boolean denoting if the response is a directory listing.
+     */
+    public boolean isIs_directory_listing() {
+        return this.is_directory_listing;
+    }
+    
+    /**
+     * Get the number of bytes of a bundled response, written to the client's socket channel rather than to its stream.
+     * @return A long denoting the number of bytes written from the host's bundle.
+     */
+    public long getBundle_bytes_written() {
+        return this.bundle_bytes_written;
+    }
+    
+    
+    /**
+     * Set the trace timing the phases of the response.
+     * @param trace The request's RequestTrace, or null if tracing is disabled.
+     */
+    public void setTrace(RequestTrace trace) {
+        this.trace = trace;
+    }
+    
+    /**
+     * Set the client's socket channel, to which the files of a bundled host are written without being copied.
+     * @param channel The client's SocketChannel, or null to write every response to the DataOutputStream.
+     */
+    public void setChannel(SocketChannel channel) {
+        this.channel = channel;
+    }
+    
     
     /**
      * The main HTTPResponse constructor.
@@ -163,18 +241,95 @@ public class HTTPResponse {
      * @param request An HTTPRequest instance used to create the current HTTPResponse object.
      */
     public HTTPResponse(HTTPRequest request) {
+        this.configuration = HTTPServerInformation.getConfiguration();
+        this.host = this.configuration.getVirtual_host(request.getRequest_header(HTTPHeaders.HOST));
         this.http_method = request.getHttp_method();
         this.meme_type = request.getRequest_meme_type();
         this.requested_resourse = request.getRequested_resource();
-        //If the request resource is the index page, then it will be "/".
-        if(this.requested_resourse.equals("/"))
-            this.requested_resourse += HTTPServerInformation.INDEX_PAGE;
+        //If the requested resource is a configured route, then serve the resource it's routed to.
+        if(this.requested_resourse != null && this.configuration.getRoutes().containsKey(this.requested_resourse)){
+            this.requested_resourse = this.configuration.getRoutes().get(this.requested_resourse);
+            this.meme_type = MEME_TYPES.getMEMETypeFromResource(this.requested_resourse);
+        }
+        else if(this.requested_resourse != null && !this.requested_resourse.endsWith("/"))
+            this.directory_location = this.requested_resourse + "/"
+                    + (request.getGET_query_string().isEmpty() ? "" : "?" + request.getGET_query_string());
         this.http_version = request.getHttp_version();
         //Check if the current HTTP request is correctly formatted.
-        this.is_bad_request = this.checkIfBadRequest(request.getRequest_line());
+        this.is_bad_request = request.isIs_malformed() || this.checkIfBadRequest(request.getRequest_line());
+        //The resource's file is found from its percent-decoded path (such as the links of a directory listing). An
+        //invalid escape makes the request bad.
+        String decoded_resource = this.requested_resourse != null ? HTTPRequest.decodePath(this.requested_resourse) : null;
+        if(this.requested_resourse != null && decoded_resource == null)
+            this.is_bad_request = true;
+        else if(decoded_resource != null && !decoded_resource.equals(this.requested_resourse)){
+            this.requested_resourse = decoded_resource;
+            this.meme_type = MEME_TYPES.getMEMETypeFromResource(this.requested_resourse);
+        }
         //
         this.request_GET_query_string_values = request.extractGETParameters();
         this.request_content_values = request.extractPOSTContent();
+        this.if_none_match = request.getRequest_header(HTTPHeaders.IF_NONE_MATCH);
+        this.accept_encoding = request.getRequest_header(HTTPHeaders.ACCEPT_ENCODING);
+        //A resource outside of the public directory (e.g. "/../../etc/") is never touched: it doesn't exist.
+        //A bundle only holds the files of its public directory.
+        if(this.requested_resourse != null && this.host.getBundle() == null)
+            this.is_outside_public_directory = !this.isInPublicDirectory(this.requested_resourse);
+        //If the requested resource is a directory (e.g. "/"), then serve its index page or its listing. A bundle
+        //resolves its directories itself.
+        if(this.requested_resourse != null && this.host.getBundle() == null && !this.is_outside_public_directory)
+            this.resolveDirectoryResource(request.getRequest_header(HTTPHeaders.ACCEPT));
+    }
+    
+    /**
+     * Check if a resource resolves inside the host's public directory, once its "." and ".." segments are resolved
+     * and, if it exists, once its symbolic links are followed.
+     * @param resource The requested resource.
+     * @return A boolean denoting if the resource is in the public directory.
+     */
+    private boolean isInPublicDirectory(String resource){
+        try {
+            Path root = Paths.get(this.host.getPublic_directory()).toAbsolutePath().normalize();
+            Path target = Paths.get(this.host.getPublic_directory() + resource).toAbsolutePath().normalize();
+            if(!target.startsWith(root))
+                return false;
+            //A symbolic link may lead outside of the public directory.
+            return !target.toFile().exists() || target.toRealPath().startsWith(root.toRealPath());
+        } catch (IOException | InvalidPathException ex) {
+            return false;
+        }
+    }
+    
+    /**
+     * If the requested resource is a directory in the public directory, then resolve it to its index page.<br>
+     * If the directory doesn't contain an index page, then mark the response as a directory listing, in JSON if
+     * requested by the "format=json" GET parameter or the Accept header, otherwise in HTML.
+     * @param accept The value of the request's Accept header, or null if it wasn't sent.
+     */
+    private void resolveDirectoryResource(String accept){
+        File directory = new File(this.host.getPublic_directory() + this.requested_resourse);
+        if(!directory.isDirectory())
+            return;
+        //A directory is served at a path ending with a "/", so that the relative links of its index page or listing
+        //resolve in it. A route keeps its path, and its directory is served in place.
+        if(!this.requested_resourse.endsWith("/")){
+            if(this.directory_location != null){
+                this.redirect_location = this.directory_location;
+                return;
+            }
+            this.requested_resourse += "/";
+        }
+        //If the directory contains an index page, then it's the requested resource.
+        if(new File(directory, this.configuration.getIndex_page()).isFile()){
+            this.requested_resourse += this.configuration.getIndex_page();
+            this.meme_type = MEME_TYPES.getMEMETypeFromResource(this.requested_resourse);
+            return;
+        }
+        this.is_directory_listing = true;
+        String format = this.request_GET_query_string_values != null ? this.request_GET_query_string_values.get("format") : null;
+        this.is_JSON_listing = "json".equals(format)
+                || (format == null && accept != null && accept.contains("application/json") && !accept.contains("text/html"));
+        this.meme_type = MEME_TYPES.getMEMETypeFromResource(this.is_JSON_listing ? "listing.json" : "listing.html");
     }
     
     /**
@@ -209,53 +364,95 @@ public class HTTPResponse {
      */
     public void writeHTTPResponse(DataOutputStream dos) throws IOException{
         this.http_status_code = this.getHTTPStatusCodes();
+        if(this.trace != null)
+            this.trace.end(RequestTrace.Phase.STATUS);
+        boolean is_bundled = false;
         try {
             //Compose the HTTPResponseLine.
             this.http_response_line = this.composeHTTPResponseLine(this.http_status_code);
-            //Writing the response line to the client.
-            dos.write(http_response_line.getBytes("UTF-8"));
             
             //Writing the response headers.
-            this.response_headers += CRLF + "Date: " +  this.getCurrentDatePerHTTP();
+            this.response_headers += CRLF + "Date: " +  getCurrentDatePerHTTP();
             this.response_headers += CRLF + "Connection: Closed";
-            this.response_headers += CRLF + "Server: " + HTTPServerInformation.SERVER_NAME;
+            this.response_headers += CRLF + "Server: " + this.configuration.getServer_name();
             
+            //A file served from memory is sent with its ETag, and compressed if the client accepts it.
+            if(this.static_resource != null && (this.http_status_code == 200 || this.http_status_code == 304)){
+                this.response_headers += CRLF + "ETag: " + this.static_resource.getEtag(this.is_gzip);
+                if(this.static_resource.getGzip_content() != null)
+                    this.response_headers += CRLF + "Vary: Accept-Encoding";
+                if(this.is_gzip)
+                    this.response_headers += CRLF + "Content-Encoding: gzip";
+            }
+            //A bundled file's headers are precomputed, except for a 304 (Not Modified) response.
+            if(this.bundle_entry != -1 && this.http_status_code == 304){
+                this.response_headers += CRLF + "ETag: " + this.host.getBundle().getEtag(this.bundle_entry, this.is_gzip);
+                if(this.host.getBundle().hasGzip(this.bundle_entry))
+                    this.response_headers += CRLF + "Vary: Accept-Encoding";
+            }
+            //A redirection has no content, only the location the client is redirected to.
+            if(this.http_status_code == 301)
+                this.response_headers += CRLF + "Location: " + this.redirect_location + CRLF + "Content-Length: 0";
+            //A 405 (Method Not Allowed) response lists the allowed methods.
+            if(this.http_status_code == 405 && this.getOPTIONSResponseToStream() != null)
+                this.response_headers += this.getOPTIONSResponseToStream();
             //If the HTTP method is OPTIONS, then do not write the HTTP headers.
             if(this.http_method == HTTP_Method.OPTIONS && this.getOPTIONSResponseToStream() != null)
                 //Add the HTTP request OPTIONS's response to the response headers.
                 this.response_headers = this.getOPTIONSResponseToStream() + this.response_headers;
-            else{                
-                //If the HTTP method used is GET/POST/HEAD, then write the content type and length of the HTTP
-                //body response to the stream.
-                if(this.http_method == HTTP_Method.GET || this.http_method == HTTP_Method.POST || this.http_method == HTTP_Method.HEAD){
-                    //If the HTTP status code is a one of the error pages defined by the server
-                    //then it's an error.
-                    if(HTTPServerInformation.ERROR_PAGES.containsKey(this.http_status_code))
-                        //Calculate the content length of the HTTP status page.
-                        this.content_length = this.getHTTPStatusPageContentLength(this.http_status_code);
-                    if(this.content_length != -1){
-                        //If there is any content length, then write it to the stream, along with the MEME type
-                        //of the error page.
-                        this.response_headers += CRLF + "Content-Length: ";
-                        this.response_headers += this.content_length;
-                        this.response_headers += CRLF + "Content-Type: " + this.meme_type;
-                    }
-                }
+            //An error is sent with the host's error page of its status code, preloaded with the configuration.
+            ErrorPages.Page error_page = this.host.getError_page(this.http_status_code);
+            String request_id = this.trace != null ? this.trace.getTrace_id() : "-";
+            if(error_page != null){
+                this.content_length = error_page.getContent_length(request_id);
+                this.meme_type = error_page.getMeme_type();
             }
-            //Writing the full response headers to the stream.
-            dos.write(response_headers.getBytes("UTF-8"));
+            //If the HTTP method used is GET/POST/HEAD (or the response is an error), then write the content type and
+            //length of the HTTP body response to the stream.
+            boolean has_content = this.http_method == HTTP_Method.GET || this.http_method == HTTP_Method.POST || this.http_method == HTTP_Method.HEAD;
+            is_bundled = this.bundle_entry != -1 && this.http_status_code == 200 && has_content;
+            if(this.content_length != -1 && (has_content || error_page != null) && !is_bundled){
+                this.response_headers += CRLF + "Content-Length: ";
+                this.response_headers += this.content_length;
+                this.response_headers += CRLF + "Content-Type: " + this.meme_type;
+            }
+            //The timing of the phases so far, if enabled.
+            if(this.trace != null && this.configuration.isTracing_server_timing())
+                this.response_headers += CRLF + "Server-Timing: " + this.trace.getServer_timing();
+            //Writing the response line and the full response headers to the stream. An error page is written along
+            //with them, at once.
+            if(error_page != null){
+                byte[] response_head = (this.http_response_line + this.response_headers + CONTENT_CRLF).getBytes("UTF-8");
+                dos.write(this.http_method == HTTP_Method.HEAD ? response_head : error_page.encode(response_head, request_id));
+            }
+            //A bundled file is written along with them, from the bundle's mapping.
+            else if(is_bundled)
+                this.bundle_bytes_written = this.host.getBundle().write(dos, this.channel, (this.http_response_line + this.response_headers).getBytes("UTF-8"),
+                        this.bundle_entry, this.is_gzip, this.http_method != HTTP_Method.HEAD);
+            else
+                dos.write((this.http_response_line + this.response_headers).getBytes("UTF-8"));
+            if(this.trace != null)
+                this.trace.end(RequestTrace.Phase.HEADERS);
         } catch (Exception ex) {
             System.err.println(ex.getMessage());
             this.http_status_code = 500;
         }
         
-        //If the response code is 200 (OK), then write the requested resource to the stream.
-        if(this.http_status_code == 200 && this.http_method != HTTP_Method.HEAD)
-           this.writeResourceToStream(dos, HTTPServerInformation.PUBLIC_DIRECTORY + this.requested_resourse);
-        //Else there is an HTTP status page is included in the defined error pages of the server, write it.
-        else if(HTTPServerInformation.ERROR_PAGES.containsKey(this.http_status_code))
-            this.sendHTTPStatusPage(dos, this.http_status_code);
-        
+        //If the response code is 200 (OK), then write the requested resource (or directory listing) to the stream.
+        if(this.http_status_code == 304 || this.http_status_code == 301)
+            dos.write(CONTENT_CRLF.getBytes("UTF-8"));
+        else if(this.http_status_code == 200 && this.http_method != HTTP_Method.HEAD && this.is_directory_listing){
+            dos.write(CONTENT_CRLF.getBytes("UTF-8"));
+            dos.write(this.directory_listing);
+        }
+        else if(this.http_status_code == 200 && this.http_method != HTTP_Method.HEAD && this.static_resource != null){
+            dos.write(CONTENT_CRLF.getBytes("UTF-8"));
+            dos.write(this.is_gzip ? this.static_resource.getGzip_content() : this.static_resource.getContent());
+        }
+        else if(this.http_status_code == 200 && this.http_method != HTTP_Method.HEAD && !is_bundled)
+           this.writeResourceToStream(dos, this.host.getPublic_directory() + this.requested_resourse);
+        if(this.trace != null)
+            this.trace.end(RequestTrace.Phase.CONTENT);
     }
     
     /**
@@ -263,9 +460,36 @@ public class HTTPResponse {
      * The format is defined per <b>RFC 7231, section 7.1.1.2: Date</b>.
      * @return A string representing the current date.
      */
-    private String getCurrentDatePerHTTP(){
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss O");
-        return formatter.format(ZonedDateTime.now(ZoneOffset.UTC));
+    public static String getCurrentDatePerHTTP(){
+        return HTTP_DATE_FORMATTER.format(ZonedDateTime.now(ZoneOffset.UTC));
+    }
+    
+    /**
+     * Write a complete response without content (or with the default host's error page, for an error) to the stream
+     * provided as a parameter.<br>
+     * Used for responses that are not about a resource of the server, such as errors of the reverse proxy.
+     * @param dos A DataOutputStream object used to write the response to the stream.
+     * @param code An integer denoting the HTTP status code.
+     * @param headers Additional response headers, each one preceded by a CRLF (or an empty string).
+     * @throws IOException If the response can't be written.
+     */
+    public static void writeStatusResponse(DataOutputStream dos, int code, String headers) throws IOException{
+        HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+        String response = HTTPServerInformation.SUPPORTED_HTTP_VERSION + " " + code + " " + configuration.getHttp_status().get(code);
+        response += CRLF + "Date: " + getCurrentDatePerHTTP();
+        response += CRLF + "Connection: Closed";
+        response += CRLF + "Server: " + configuration.getServer_name();
+        response += headers;
+        //An error is sent with the default host's error page of its status code.
+        ErrorPages.Page error_page = configuration.getVirtual_host(null).getError_page(code);
+        if(error_page == null){
+            response += CRLF + "Content-Length: 0" + CONTENT_CRLF;
+            dos.write(response.getBytes("UTF-8"));
+            return;
+        }
+        response += CRLF + "Content-Length: " + error_page.getContent_length("-");
+        response += CRLF + "Content-Type: " + error_page.getMeme_type() + CONTENT_CRLF;
+        dos.write(error_page.encode(response.getBytes("UTF-8"), "-"));
     }
     
     /**
@@ -278,7 +502,7 @@ public class HTTPResponse {
             //Writing a double CRLF to separate the HTTP headers from the content.
             dos.write(CONTENT_CRLF.getBytes("UTF-8"));
             final byte[] buffer;
-            buffer = new byte[1024];
+            buffer = new byte[this.configuration.getBuffer_size()];
             int bytes;
             while((bytes = fis.read(buffer)) != -1)
                 dos.write(buffer, 0, bytes);
@@ -288,36 +512,6 @@ public class HTTPResponse {
         }
     }
     
-    /**
-     * Check if there is an error page corresponding to the HTTP status code provided in the parameter.<br>
-     * If yes, return its content length, otherwise, return -1.
-     * @param code An integer denoting a HTTP status code.
-     * @return A long denoting the content length of the HTTP status page.
-     */
-    private long getHTTPStatusPageContentLength(int code){
-        if(HTTPServerInformation.ERROR_PAGES.containsKey(code)){
-            if(new File(HTTPServerInformation.ERROR_PAGES.get(code)).exists()){
-                String error_page = HTTPServerInformation.ERROR_PAGES.get(code);
-                //Set the HTTPResponse MEME type to the type of the error page.
-                this.meme_type = MEME_TYPES.getMEMETypeFromResource(error_page);
-                return this.getContentLength(HTTPServerInformation.ERROR_PAGES.get(code));
-            }
-        }
-        return -1;
-    }
-    
-    /**
-     * Send a status (error) page to the client's output steam based on the HTTP status code sent 
-     * in the parameters.<br>
-     * @param dos A DataOutputStream object to use to write to a client's steam.
-     * @param code An integer denoting a HTTP status code.
-     */
-    private void sendHTTPStatusPage(DataOutputStream dos, int code){
-        if(HTTPServerInformation.ERROR_PAGES.containsKey(code))
-            if(new File(HTTPServerInformation.ERROR_PAGES.get(code)).exists())
-                this.writeResourceToStream(dos, HTTPServerInformation.ERROR_PAGES.get(code));
-    }
-    
     /**
      * Get one of the supported HTTP response codes depending on the request.<br>
      * For example: Return 400 if the request is badly formatted. Or 505 if the HTTP version isn't supported.
@@ -325,13 +519,22 @@ public class HTTPResponse {
      */
     private int getHTTPStatusCodes(){
         int code;
-        String public_resource_path = HTTPServerInformation.PUBLIC_DIRECTORY + this.requested_resourse;
+        String public_resource_path = this.host.getPublic_directory() + this.requested_resourse;
         if(this.is_bad_request)
             code = 400;
         else if(this.http_method == HTTP_Method.UNSOPPORTED)
             code = 501;
         else if(!this.http_version.equals(HTTPServerInformation.SUPPORTED_HTTP_VERSION))
             code = 505;
+        else if(this.http_method == HTTP_Method.PUT || this.http_method == HTTP_Method.DELETE)
+            //Files can only be uploaded or deleted in the upload path (handled by FileUpload).
+            code = 405;
+        else if(this.is_outside_public_directory)
+            code = 404;
+        else if(this.redirect_location != null)
+            code = 301;
+        else if(this.host.getBundle() != null)
+            code = this.getBundledStatusCode();
         else if(this.isRequestedResourceForbidden(this.requested_resourse) && new File(public_resource_path).exists())
             code = 403;
         else if(this.meme_type.equals("UNSOPPORTED") && new File(public_resource_path).exists())
@@ -340,13 +543,120 @@ public class HTTPResponse {
             code = 404;
         else if(this.http_method == HTTP_Method.OPTIONS)
             code = 204;
+        else if(this.is_directory_listing)
+            code = this.generateDirectoryListing();
         else{
-            this.content_length = this.getContentLength(HTTPServerInformation.PUBLIC_DIRECTORY + this.requested_resourse);
+            //Small files are served from memory, with their precomputed ETag and compressed variant.
+            this.static_resource = this.host.getStatic_cache().get(public_resource_path, this.host, this.configuration);
+            if(this.static_resource != null){
+                this.is_gzip = this.static_resource.getGzip_content() != null && this.acceptsGzip();
+                if(this.matchesETag(this.static_resource.getEtag(this.is_gzip)))
+                    return 304;
+                this.content_length = this.is_gzip ? this.static_resource.getGzip_content().length : this.static_resource.getContent().length;
+            }
+            else
+                this.content_length = this.getContentLength(public_resource_path);
             code = 200;
         }
         return code;
     }
     
+    /**
+     * Get the response code of a request to a bundled host, from its bundle only: the files that aren't bundled
+     * (including the forbidden ones) don't exist.
+     * @return An integer denoting the HTTP response code: 200, 204 for OPTIONS, 301 for a directory requested without
+     * its trailing slash, 304 if the client's copy is still valid, or 404.
+     */
+    private int getBundledStatusCode(){
+        SiteBundle bundle = this.host.getBundle();
+        //A bundled directory requested without its trailing slash is redirected to it.
+        if(this.directory_location != null && bundle.find(this.requested_resourse + "/") != -1){
+            this.redirect_location = this.directory_location;
+            return 301;
+        }
+        this.bundle_entry = this.requested_resourse != null ? bundle.find(this.requested_resourse) : -1;
+        if(this.bundle_entry == -1)
+            return 404;
+        if(this.http_method == HTTP_Method.OPTIONS)
+            return 204;
+        this.is_gzip = bundle.hasGzip(this.bundle_entry) && this.acceptsGzip();
+        if(this.if_none_match != null && this.matchesETag(bundle.getEtag(this.bundle_entry, this.is_gzip)))
+            return 304;
+        this.content_length = bundle.getContent_length(this.bundle_entry, this.is_gzip);
+        return 200;
+    }
+    
+    /**
+     * Check if the request's Accept-Encoding header accepts gzip (and doesn't refuse it with q=0).
+     * @return A boolean denoting if the response can be compressed with gzip.
+     */
+    private boolean acceptsGzip(){
+        if(this.accept_encoding == null)
+            return false;
+        for(String coding : this.accept_encoding.split(",")){
+            String[] parameters = coding.split(";");
+            if(parameters[0].trim().equalsIgnoreCase("gzip"))
+                return parameters.length < 2 || !parameters[1].replace(" ", "").matches("q=0(\\.0*)?");
+        }
+        return false;
+    }
+    
+    /**
+     * Check if the request's If-None-Match header matches the ETag of the requested file, in which case the client's
+     * copy is still valid. Per the specification: <b>RFC 7232, section 3.2: If-None-Match</b>.
+     * @param etag The ETag of the requested file.
+     * @return A boolean denoting if the response is 304 (Not Modified).
+     */
+    private boolean matchesETag(String etag){
+        if(this.if_none_match == null || (this.http_method != HTTP_Method.GET && this.http_method != HTTP_Method.HEAD))
+            return false;
+        for(String tag : this.if_none_match.split(",")){
+            tag = tag.trim();
+            //The comparison is weak: a W/ prefix is ignored.
+            if(tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(etag))
+                return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Generate the listing of the requested directory from its cached snapshot, for the page requested by
+     * the "page" and "page_size" GET parameters.
+     * @return An integer denoting the HTTP response code: 200 if the listing was generated, 403 if directory
+     * listings are disabled, 400 if the pagination parameters are invalid, or 500 if the directory can't be listed.
+     */
+    private int generateDirectoryListing(){
+        if(!this.configuration.isDirectory_listing_enabled())
+            return 403;
+        int page = 1;
+        int page_size = this.configuration.getDirectory_listing_page_size();
+        try {
+            if(this.request_GET_query_string_values != null){
+                if(this.request_GET_query_string_values.get("page") != null)
+                    page = Integer.parseInt(this.request_GET_query_string_values.get("page"));
+                if(this.request_GET_query_string_values.get("page_size") != null)
+                    page_size = Integer.parseInt(this.request_GET_query_string_values.get("page_size"));
+            }
+        } catch (NumberFormatException ex) {
+            return 400;
+        }
+        if(page < 1 || page_size < 1 || page_size > this.configuration.getDirectory_listing_max_page_size())
+            return 400;
+        try {
+            DirectorySnapshot snapshot = DirectoryListingCache.getSnapshot(
+                    Paths.get(this.host.getPublic_directory() + this.requested_resourse),
+                    this.configuration.getDirectory_listing_max_cached_directories());
+            this.directory_listing = this.is_JSON_listing
+                    ? DirectoryListing.renderJSON(this.requested_resourse, snapshot, page, page_size)
+                    : DirectoryListing.renderHTML(this.requested_resourse, snapshot, page, page_size);
+            this.content_length = this.directory_listing.length;
+            return 200;
+        } catch (Exception ex) {
+            System.err.println(ex.getMessage());
+            return 500;
+        }
+    }
+    
     /**
      * Compose the HTTP response line based on the HTTP status code provided in the parameters.<br>
      * The format is: HTTP_VERSION HTTP_STATUS_CODE HTTP_STATUS_TEXT.<br>
@@ -357,7 +667,7 @@ public class HTTPResponse {
     private String composeHTTPResponseLine(int http_code){
         String response_line = HTTPServerInformation.SUPPORTED_HTTP_VERSION + " ";
         response_line += Integer.toString(http_code) + " ";
-        response_line += HTTPServerInformation.SUPPORTED_HTTP_STATUS.get(http_code);
+        response_line += this.configuration.getHttp_status().get(http_code);
         return response_line;
     }
 
@@ -378,8 +688,11 @@ public class HTTPResponse {
     private String getOPTIONSResponseToStream() {
         try {
             String supported_http_values = CRLF + "Allow:";
+            //PUT and DELETE are only allowed in the upload path, when uploads are enabled.
+            boolean is_upload_path = this.configuration.isUpload_enabled() && this.requested_resourse != null
+                    && this.requested_resourse.startsWith(this.configuration.getUpload_path());
             for(HTTP_Method method : HTTP_Method.values())
-                if(method != HTTP_Method.UNSOPPORTED)
+                if(method != HTTP_Method.UNSOPPORTED && (is_upload_path || (method != HTTP_Method.PUT && method != HTTP_Method.DELETE)))
                     supported_http_values += " " + method + ",";
             //Remove last "," in the supported http_values string.
             supported_http_values = supported_http_values.substring(0, supported_http_values.length()-1);
@@ -398,7 +711,7 @@ public class HTTPResponse {
      * @return A boolean denoting if the resource is forbidden to request or not.
      */
     private boolean isRequestedResourceForbidden(String resource){
-        return HTTPServerInformation.getFORBIDDEN_DIRECTORIES().stream().anyMatch(directory -> resource.contains(directory));
+        return this.host.getForbidden_directories().stream().anyMatch(directory -> resource.contains(directory));
     }
     
     /**
@@ -0,0 +1,586 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A shared HTTP response cache in front of the handlers producing dynamic responses (such as the reverse proxy).<br>
+ * Responses are cached per method, path, GET query string and the request headers listed in their Vary header,
+ * for as long as their Cache-Control (max-age, s-maxage) or Expires headers allow. The cache is limited to a number
+ * of bytes, and evicts the least recently used responses (approximately, with the second chance (clock) algorithm).<br>
+ * Concurrent misses for the same key are coalesced: only the first request produces the response, the others wait
+ * for it. A stale response within its stale-while-revalidate window is served immediately while it's revalidated
+ * in the background.
+ * @author Hodaifa98
+ */
+public class HTTPResponseCache {
+
+    /**
+     * A handler producing a complete HTTP response (status line, headers and content) to a stream.
+     */
+    public interface ResponseProducer {
+        /**
+         * Write a complete HTTP response to the stream.
+         * @param dos The DataOutputStream to write the response to.
+         * @throws IOException If the response can't be produced or written.
+         */
+        void writeResponse(DataOutputStream dos) throws IOException;
+    }
+
+    /**
+     * A cached response.
+     */
+    private static final class CachedResponse {
+        private final String base_key;
+        private final byte[] status_line;
+        private final byte[] headers_and_content;
+        private final String[] vary;
+        private final long stored_at;
+        private final long expires_at;
+        private final long stale_until;
+        //A boolean denoting if the response was served since the eviction last checked it.
+        private volatile boolean is_referenced = false;
+
+        private CachedResponse(String base_key, byte[] status_line, byte[] headers_and_content, String[] vary, long stored_at,
+                long expires_at, long stale_until){
+            this.base_key = base_key;
+            this.status_line = status_line;
+            this.headers_and_content = headers_and_content;
+            this.vary = vary;
+            this.stored_at = stored_at;
+            this.expires_at = expires_at;
+            this.stale_until = stale_until;
+        }
+
+        private long getSize(){
+            return this.status_line.length + this.headers_and_content.length;
+        }
+    }
+
+    /**
+     * The names of the headers the responses of a base key vary on, and the number of its cached variants.
+     */
+    private static final class Variants {
+        private final String[] vary;
+        private final int count;
+
+        private Variants(String[] vary, int count){
+            this.vary = vary;
+            this.count = count;
+        }
+    }
+
+    //The statuses that can be cached, per <b>RFC 7231, section 6.1</b>.
+    private static final int[] CACHEABLE_STATUS = {200, 203, 204, 300, 301, 404, 405, 410, 414, 501};
+
+    //The cache shared by the server's handlers.
+    private static final HTTPResponseCache SHARED_CACHE = new HTTPResponseCache();
+
+    //The thread pool revalidating stale responses in the background.
+    private static final ThreadPoolExecutor REVALIDATION_POOL = new ThreadPoolExecutor(0, 4, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(1000), (r) -> {
+                Thread t = new Thread(r, "response-cache-revalidation");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
+    //The cached responses, the variants of their base keys, and the responses being produced. A base key's variants
+    //are kept as long as one of them is cached: the entries are added and removed under the lock of their base key.
+    private final ConcurrentHashMap<String, CachedResponse> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Variants> variants = new ConcurrentHashMap<>();
+    //The keys of the cached responses, in the order the eviction checks them (a removed response's key is skipped).
+    private final ConcurrentLinkedQueue<String> eviction_queue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<String, CompletableFuture<CachedResponse>> in_flight = new ConcurrentHashMap<>();
+
+    //The size of the cached responses, and the statistics of the cache.
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @return The response cache shared by the server's handlers.
+     */
+    public static HTTPResponseCache getShared() {
+        return SHARED_CACHE;
+    }
+
+    /**
+     * @return The number of cached responses.
+     */
+    public int getEntry_count() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return The size of the cached responses in bytes.
+     */
+    public long getSize() {
+        return this.size.get();
+    }
+
+    /**
+     * @return The number of requests served from the cache.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return The number of requests whose response had to be produced.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return The number of requests that waited for a response produced for another request.
+     */
+    public long getCoalesced() {
+        return this.coalesced.get();
+    }
+
+    /**
+     * Get the keys of the cached responses and their sizes: the request's method, host, path, GET query string,
+     * and the values of the headers the response varies on.
+     * @return A map of the cached keys and their sizes in bytes.
+     */
+    public Map<String, Long> getEntries() {
+        TreeMap<String, Long> entries = new TreeMap<>();
+        this.entries.forEach((key, cached) -> entries.put(key, cached.getSize()));
+        return entries;
+    }
+
+    /**
+     * Serve a request from the cache, or produce its response (and cache it if it's cacheable).<br>
+     * Only GET requests without credentials are cached, other requests are always produced.
+     * @param request The client's HTTP request.
+     * @param dos The DataOutputStream of the client's socket.
+     * @param producer The handler producing the response.
+     * @throws IOException If the response can't be produced or written.
+     */
+    public void serve(HTTPRequest request, DataOutputStream dos, ResponseProducer producer) throws IOException {
+        HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+        if(!configuration.isResponse_cache_enabled() || request.getHttp_method() != HTTP_Method.GET
+                || request.getRequest_header(HTTPHeaders.AUTHORIZATION) != null){
+            producer.writeResponse(dos);
+            return;
+        }
+        String base_key = getBaseKey(request);
+        Variants variants = this.variants.get(base_key);
+        this.serve(request, dos, producer, base_key, getKey(base_key, variants != null ? variants.vary : null, request), true);
+    }
+
+    /**
+     * Serve a request from the cache under a key, or produce its response.
+     * @param is_first_attempt A boolean denoting if the key was computed from the Vary headers known when the request
+     * was received (the request is served again once under its own variant's key, if they were unknown).
+     */
+    private void serve(HTTPRequest request, DataOutputStream dos, ResponseProducer producer, String base_key, String key,
+            boolean is_first_attempt) throws IOException {
+        HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+        //A request with "Cache-Control: no-cache" can't be served from the cache, but its response can be cached.
+        String request_cache_control = request.getRequest_header(HTTPHeaders.CACHE_CONTROL);
+        boolean is_lookup_allowed = request_cache_control == null
+                || (!request_cache_control.contains("no-cache") && !request_cache_control.contains("no-store"));
+        long now = System.currentTimeMillis();
+        CachedResponse cached = is_lookup_allowed ? this.entries.get(key) : null;
+        if(cached != null && now < cached.expires_at){
+            this.writeCachedResponse(cached, dos, now);
+            return;
+        }
+        if(cached != null && now < cached.stale_until){
+            //Serve the stale response, and revalidate it in the background (once).
+            this.writeCachedResponse(cached, dos, now);
+            CompletableFuture<CachedResponse> revalidation = new CompletableFuture<>();
+            if(this.in_flight.putIfAbsent(key, revalidation) == null)
+                REVALIDATION_POOL.execute(() -> this.produce(request, base_key, key, revalidation, OutputStream.nullOutputStream(), producer));
+            return;
+        }
+        //Coalesce the misses: the first request produces the response, the others wait for it.
+        CompletableFuture<CachedResponse> production = new CompletableFuture<>();
+        CompletableFuture<CachedResponse> existing = this.in_flight.putIfAbsent(key, production);
+        if(existing == null){
+            this.misses.incrementAndGet();
+            this.produce(request, base_key, key, production, dos, producer);
+            return;
+        }
+        this.coalesced.incrementAndGet();
+        try {
+            CachedResponse produced = existing.get(configuration.getResponse_cache_coalescing_timeout(), TimeUnit.MILLISECONDS);
+            //The produced response varies on headers that may have been unknown when the request was coalesced, so
+            //it's only shared if the request's own variant key matches. Otherwise, the request's variant is served.
+            String produced_key = produced != null ? getKey(base_key, produced.vary, request) : null;
+            if(produced != null && produced_key.equals(key)){
+                this.writeCachedResponse(produced, dos, System.currentTimeMillis());
+                return;
+            }
+            if(produced != null && is_first_attempt){
+                this.serve(request, dos, producer, base_key, produced_key, false);
+                return;
+            }
+        } catch (TimeoutException ex) {
+            System.err.println("Timed out waiting for a coalesced response: " + key);
+        } catch (Exception ex) {
+            System.err.println(ex.getMessage());
+        }
+        //The response couldn't be cached (or shared), so it's produced for this request too.
+        producer.writeResponse(dos);
+    }
+
+    /**
+     * Produce a response to the client's stream while capturing it, then cache it if it's cacheable.
+     * The waiting requests are given the cached response, or null if it isn't cacheable.
+     */
+    private void produce(HTTPRequest request, String base_key, String key, CompletableFuture<CachedResponse> production,
+            OutputStream client_output, ResponseProducer producer) {
+        CachedResponse cached = null;
+        try {
+            HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+            CapturingOutputStream capture = new CapturingOutputStream(client_output, configuration.getResponse_cache_max_entry_bytes());
+            producer.writeResponse(new DataOutputStream(capture));
+            cached = capture.isIs_complete() ? parseResponse(base_key, capture.toByteArray(), System.currentTimeMillis()) : null;
+            if(cached != null)
+                this.store(request, base_key, cached, configuration);
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+        } finally {
+            production.complete(cached);
+            this.in_flight.remove(key, production);
+        }
+    }
+
+    /**
+     * Store a response under the key of its request and Vary headers, then evict responses until the cache
+     * fits in its budget.
+     */
+    private void store(HTTPRequest request, String base_key, CachedResponse cached, HTTPServerConfiguration configuration) {
+        if(cached.getSize() > configuration.getResponse_cache_max_bytes())
+            return;
+        String key = getKey(base_key, cached.vary, request);
+        this.variants.compute(base_key, (k, variants) -> {
+            CachedResponse previous = this.entries.put(key, cached);
+            this.size.addAndGet(cached.getSize() - (previous != null ? previous.getSize() : 0));
+            if(previous == null)
+                this.eviction_queue.offer(key);
+            int count = variants != null ? variants.count : 0;
+            return new Variants(cached.vary, previous == null ? count + 1 : count);
+        });
+        while(this.size.get() > configuration.getResponse_cache_max_bytes() && this.evictLeastRecentlyUsed());
+    }
+
+    /**
+     * Evict an approximately least recently used response, with the second chance (clock) algorithm: the responses
+     * are checked in the order they were cached, and a response served since it was last checked is queued again
+     * instead of being evicted.
+     * @return A boolean denoting if a response was evicted.
+     */
+    private boolean evictLeastRecentlyUsed() {
+        //Every response gets a second chance at most once per pass, unless it's served again meanwhile.
+        for(int attempts = 2 * this.entries.size() + 1; attempts > 0; attempts--){
+            String key = this.eviction_queue.poll();
+            if(key == null)
+                return false;
+            CachedResponse cached = this.entries.get(key);
+            if(cached == null)
+                continue;
+            if(cached.is_referenced){
+                cached.is_referenced = false;
+                this.eviction_queue.offer(key);
+                continue;
+            }
+            this.remove(key, cached);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Remove a cached response, and its base key's variants if it was the last one.
+     */
+    private void remove(String key, CachedResponse cached) {
+        this.variants.computeIfPresent(cached.base_key, (k, variants) -> {
+            if(!this.entries.remove(key, cached))
+                return variants;
+            this.size.addAndGet(-cached.getSize());
+            return variants.count > 1 ? new Variants(variants.vary, variants.count - 1) : null;
+        });
+    }
+
+    /**
+     * Remove every cached response.
+     */
+    public void clear() {
+        for(Map.Entry<String, CachedResponse> entry : this.entries.entrySet())
+            this.remove(entry.getKey(), entry.getValue());
+    }
+
+    /**
+     * Write a cached response to the client, with an Age header.
+     */
+    private void writeCachedResponse(CachedResponse cached, DataOutputStream dos, long now) throws IOException {
+        this.hits.incrementAndGet();
+        cached.is_referenced = true;
+        dos.write(cached.status_line);
+        dos.write((HTTPResponse.CRLF + "Age: " + Math.max(0, (now - cached.stored_at) / 1000)).getBytes(StandardCharsets.ISO_8859_1));
+        dos.write(cached.headers_and_content);
+        dos.flush();
+    }
+
+    /**
+     * Parse a captured response, and create a cached response from it if its status and headers allow it to be cached.
+     * @param base_key The key of the response's request, without its Vary headers.
+     * @param response The complete response: status line, headers and content.
+     * @param now The current time in milliseconds.
+     * @return A CachedResponse, or null if the response isn't cacheable (or its content doesn't match its framing).
+     */
+    private static CachedResponse parseResponse(String base_key, byte[] response, long now) {
+        String head = new String(response, 0, Math.min(response.length, 64 * 1024), StandardCharsets.ISO_8859_1);
+        int end_of_status_line = head.indexOf(HTTPResponse.CRLF);
+        int end_of_headers = head.indexOf(HTTPResponse.CONTENT_CRLF);
+        if(end_of_status_line == -1 || end_of_headers == -1 || head.length() < 12)
+            return null;
+        int status_code;
+        try {
+            status_code = Integer.parseInt(head.substring(9, 12));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        boolean is_cacheable_status = false;
+        for(int code : CACHEABLE_STATUS)
+            is_cacheable_status |= code == status_code;
+        if(!is_cacheable_status)
+            return null;
+        long max_age = -1;
+        long stale_while_revalidate = 0;
+        String vary = "";
+        long content_length = -1;
+        boolean is_chunked = false;
+        ZonedDateTime date = null;
+        ZonedDateTime expires = null;
+        for(String line : head.substring(end_of_status_line + 2, end_of_headers).split(HTTPResponse.CRLF)){
+            int colon = line.indexOf(':');
+            if(colon <= 0)
+                continue;
+            String name = line.substring(0, colon).trim().toLowerCase();
+            String value = line.substring(colon + 1).trim();
+            switch(name){
+                case "cache-control":
+                    for(String directive : value.toLowerCase().split(",")){
+                        directive = directive.trim();
+                        if(directive.equals("no-store") || directive.equals("private") || directive.equals("no-cache"))
+                            return null;
+                        //s-maxage takes precedence over max-age for a shared cache.
+                        if(directive.startsWith("s-maxage="))
+                            max_age = parseSeconds(directive);
+                        else if(directive.startsWith("max-age=") && max_age == -1)
+                            max_age = parseSeconds(directive);
+                        else if(directive.startsWith("stale-while-revalidate="))
+                            stale_while_revalidate = Math.max(0, parseSeconds(directive));
+                    }
+                    break;
+                case "expires":
+                    expires = parseDate(value);
+                    //An invalid Expires header means the response is already expired.
+                    if(expires == null)
+                        return null;
+                    break;
+                case "date":
+                    date = parseDate(value);
+                    break;
+                case "vary":
+                    vary = value;
+                    break;
+                case "set-cookie":
+                    return null;
+                case "content-length":
+                    try {
+                        content_length = Long.parseLong(value);
+                    } catch (NumberFormatException ex) {
+                        return null;
+                    }
+                    break;
+                case "transfer-encoding":
+                    is_chunked = value.toLowerCase().endsWith("chunked");
+                    break;
+                default:
+                    break;
+            }
+        }
+        if(max_age == -1 && expires != null)
+            max_age = (expires.toEpochSecond() - (date != null ? date.toEpochSecond() : now / 1000));
+        if(max_age <= 0 || vary.contains("*"))
+            return null;
+        //Only a complete response is cached: its content must match its Content-Length, or end with the last chunk.
+        //A response whose content ends when the connection closes can't be told apart from a truncated one (the reverse
+        //proxy chunks such content for HTTP/1.1 clients, ending it with the last chunk once the upstream server closed
+        //the connection cleanly).
+        int content_start = end_of_headers + 4;
+        if(status_code == 204 ? response.length != content_start
+                : is_chunked ? !isCompleteChunkedContent(response, content_start)
+                : content_length != response.length - content_start)
+            return null;
+        String[] vary_names = vary.isBlank() ? new String[0] : vary.split("\\s*,\\s*");
+        byte[] status_line = new byte[end_of_status_line];
+        byte[] headers_and_content = new byte[response.length - end_of_status_line];
+        System.arraycopy(response, 0, status_line, 0, status_line.length);
+        System.arraycopy(response, end_of_status_line, headers_and_content, 0, headers_and_content.length);
+        long expires_at = now + max_age * 1000;
+        return new CachedResponse(base_key, status_line, headers_and_content, vary_names, now, expires_at, expires_at + stale_while_revalidate * 1000);
+    }
+
+    /**
+     * Check if chunked content is complete: every chunk has its announced size, and the content ends with the last
+     * chunk (of size 0), its optional trailer headers and an empty line.
+     * @param response The captured response.
+     * @param offset The offset of the content in the response.
+     * @return A boolean denoting if the chunked content is complete.
+     */
+    private static boolean isCompleteChunkedContent(byte[] response, int offset) {
+        int position = offset;
+        while(true){
+            int end_of_line = indexOfCRLF(response, position);
+            if(end_of_line == -1)
+                return false;
+            String size_line = new String(response, position, end_of_line - position, StandardCharsets.ISO_8859_1);
+            int extension = size_line.indexOf(';');
+            long size;
+            try {
+                size = Long.parseLong((extension == -1 ? size_line : size_line.substring(0, extension)).trim(), 16);
+            } catch (NumberFormatException ex) {
+                return false;
+            }
+            position = end_of_line + 2;
+            if(size == 0)
+                break;
+            if(size < 0 || size > response.length - position - 2)
+                return false;
+            position += (int) size;
+            if(response[position] != '\r' || response[position + 1] != '\n')
+                return false;
+            position += 2;
+        }
+        //The trailer headers end with an empty line, which must be the end of the response.
+        while(true){
+            int end_of_line = indexOfCRLF(response, position);
+            if(end_of_line == -1)
+                return false;
+            if(end_of_line == position)
+                return end_of_line + 2 == response.length;
+            position = end_of_line + 2;
+        }
+    }
+
+    //Find the next CRLF of a response from an offset. Returns -1 if there's none.
+    private static int indexOfCRLF(byte[] response, int offset) {
+        for(int i = offset; i < response.length - 1; i++)
+            if(response[i] == '\r' && response[i + 1] == '\n')
+                return i;
+        return -1;
+    }
+
+    //Parse the number of seconds of a directive, such as max-age=60. Returns -1 if it's invalid.
+    private static long parseSeconds(String directive) {
+        try {
+            return Long.parseLong(directive.substring(directive.indexOf('=') + 1).replace("\"", "").trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    //Parse an HTTP date. Returns null if it's invalid.
+    private static ZonedDateTime parseDate(String value) {
+        try {
+            return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    //The key of a request, without its Vary headers: method, Host, path and GET query string.
+    private static String getBaseKey(HTTPRequest request) {
+        String host = request.getRequest_header(HTTPHeaders.HOST);
+        return "GET " + (host != null ? host.toLowerCase() : "") + request.getRequested_resource() + "?" + request.getGET_query_string();
+    }
+
+    //The key of a request: its base key followed by the values of the headers its responses vary on.
+    private static String getKey(String base_key, String[] vary, HTTPRequest request) {
+        if(vary == null || vary.length == 0)
+            return base_key;
+        StringBuilder key = new StringBuilder(base_key);
+        for(String name : vary){
+            String value = request.getRequest_header(name);
+            key.append('\n').append(name.toLowerCase()).append('=').append(value != null ? value : "");
+        }
+        return key.toString();
+    }
+
+    /**
+     * An output stream writing through to the client's stream while keeping a copy of the response,
+     * up to a maximum size.
+     */
+    private static final class CapturingOutputStream extends OutputStream {
+        private final OutputStream client_output;
+        private final ByteArrayOutputStream capture = new ByteArrayOutputStream(4096);
+        private final long max_size;
+        private boolean is_overflowed = false;
+        private boolean is_client_failed = false;
+
+        private CapturingOutputStream(OutputStream client_output, long max_size){
+            this.client_output = client_output;
+            this.max_size = max_size;
+        }
+
+        //The captured response is complete if it fit in the maximum size and the client received all of it.
+        private boolean isIs_complete(){
+            return !this.is_overflowed && !this.is_client_failed;
+        }
+
+        private byte[] toByteArray(){
+            return this.capture.toByteArray();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if(!this.is_overflowed){
+                if(this.capture.size() + len > this.max_size)
+                    this.is_overflowed = true;
+                else
+                    this.capture.write(b, off, len);
+            }
+            try {
+                this.client_output.write(b, off, len);
+            } catch (IOException ex) {
+                this.is_client_failed = true;
+                throw ex;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.client_output.flush();
+        }
+    }
+}
@@ -2,45 +2,128 @@ package com.multi_threaded_http_web_server;
 
 
 //Imports.
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.ServerSocket;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * The main HTTP server class that starts the server and allows for a continuous running and listening to incoming
- * connections by clients.
+ * connections by clients.<br>
+ * The server's lifecycle is: start() binds the server socket and accepts connections in a background thread,
+ * stop() stops accepting connections and drains the requests in progress, and awaitTermination() waits until the
+ * server is stopped.
  * @author Hodaifa98
  */
 public class HTTPServer {
-    
+
     /**
      * The default port to use for the server in the case of not providing a custom port.
      */
     public static final int DEFAULT_PORT = 8080;
-    
+
     //The HTTPServer's port  number.
     private final int port_number;
 
+    //The server socket's channel, the thread accepting connections and the thread pool handling the clients' requests.
+    //Created when the server starts.
+    private ServerSocketChannel server_channel;
+    private Thread acceptor;
+    private ThreadPoolExecutor thread_pool;
+
+    //Resizes the thread pool when the configuration is reloaded.
+    private final Consumer<HTTPServerConfiguration> configuration_listener = this::applyConfiguration;
+
+    //The clients whose requests are queued or in progress, keyed by their socket.
+    private final ConcurrentHashMap<Socket, TrackedClientHandler> active_connections = new ConcurrentHashMap<>();
+
+    //The admin console, if it's enabled, and the time the server started (System.currentTimeMillis()).
+    private AdminConsole admin_console;
+    private long started_at;
+
+    //The server's state.
+    private volatile boolean is_running = false;
+    private boolean is_stopped = false;
+    private final CountDownLatch termination = new CountDownLatch(1);
+
     /**
-     * 
+     *
      * @return The port number associated with the current instance of the HTTPServer.
      */
     public int getPort_number() {
         return port_number;
     }
-    
+
+    /**
+     * Get the port number the server socket is actually bound to, which differs from the port number
+     * when the server was started on port 0 (any free port), or with an inherited server socket.
+     * @return The local port number, or -1 if the server isn't started.
+     */
+    public int getLocal_port() {
+        ServerSocketChannel channel = this.server_channel;
+        return channel != null ? channel.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * @return A boolean denoting if the server is accepting connections.
+     */
+    public boolean isRunning() {
+        return this.is_running;
+    }
+
+    /**
+     * @return The number of clients whose requests are queued or in progress.
+     */
+    public int getActive_connections_count() {
+        return this.active_connections.size();
+    }
+
+    /**
+     * @return The clients whose requests are queued or in progress (a live view).
+     */
+    Collection<TrackedClientHandler> getActive_connections() {
+        return this.active_connections.values();
+    }
+
+    /**
+     * @return The thread pool handling the clients' requests, or null if the server isn't started.
+     */
+    ThreadPoolExecutor getThread_pool() {
+        return this.thread_pool;
+    }
+
+    /**
+     * @return The time the server started, in milliseconds since the epoch.
+     */
+    public long getStarted_at() {
+        return this.started_at;
+    }
+
     /**
      * Default constructor for the HTTPServer class when a custom port isn't provided.
-     * The default port number is used instead.
+     * The port number of the server's configuration is used instead.
      */
     public HTTPServer(){
-        this.port_number = DEFAULT_PORT;
+        this.port_number = HTTPServerInformation.getConfiguration().getPort();
     }
-    
+
     /**
      * HTTPServer class's constructor with a port number provided as a parameter.
      * @param port_number A custom port number to use for the current instance of HTTPServer.
@@ -48,42 +131,304 @@ public class HTTPServer {
     public HTTPServer(int port_number) {
         this.port_number = port_number;
     }
-    
+
     /**
-     * Main method to start the HTTP server.
+     * Main method to start the HTTP server. Starts the server and blocks until it's stopped.
      */
     public void startServer(){
         try {
-            //Initialising a counter for clients who make a request to the server.
-            int client_number = 1;
-            
-            //Initialising the server socket to listen for incoming HTTP requests.
-            final ServerSocket server = new ServerSocket(this.port_number);
-            
-            //The server socket will continiously listen to incoming requests.
-            System.out.println("Listening on port: " + this.port_number);
-            while(true){
+            this.start();
+            this.awaitTermination();
+        } catch (IOException ex) {
+            System.out.println(ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Bind the server socket and start accepting connections in a background thread.<br>
+     * If configured, the server socket is inherited from the parent process (socket activation) instead of being
+     * bound, or is bound with SO_REUSEPORT so that a new server process can listen on the same port while this one
+     * is draining (rolling restarts without refused connections).
+     * @throws IOException If the server socket can't be bound.
+     * @throws IllegalStateException If the server was already started.
+     */
+    public synchronized void start() throws IOException {
+        if(this.server_channel != null)
+            throw new IllegalStateException("The server was already started.");
+        HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+        //Initialising the server socket to listen for incoming HTTP requests.
+        this.server_channel = this.openServerChannel(configuration);
+
+        //Initialising the thread pool. When all threads are busy and the queue is full, the accepting thread
+        //handles the request itself, which stops accepting new connections until the server catches up.
+        this.thread_pool = new ThreadPoolExecutor(configuration.getThread_pool_core_size(), configuration.getThread_pool_max_size(),
+                60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(configuration.getThread_pool_queue_size()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        //Resize the thread pool when the configuration is reloaded.
+        HTTPServerInformation.addConfigurationListener(this.configuration_listener);
+
+        this.is_running = true;
+        this.started_at = System.currentTimeMillis();
+        this.acceptor = new Thread(this::acceptConnections, "http-acceptor-" + this.getLocal_port());
+        this.acceptor.start();
+        System.out.println("Listening on port: " + this.getLocal_port());
+        //Preload the static files and warm up the request handling code, then report the server ready.
+        ServerWarmup.start(this.getLocal_port());
+        //Start the admin console on its own port, if it's enabled.
+        if(configuration.isAdmin_enabled()){
+            try {
+                AdminConsole console = new AdminConsole(this, configuration.getAdmin_address(), configuration.getAdmin_port());
+                console.start();
+                this.admin_console = console;
+            } catch (IOException ex) {
+                System.err.println("The admin console can't be started: " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Open the server socket's channel: either the channel inherited from the parent process, or a new channel
+     * bound to the server's port number.
+     * @param configuration The configuration of the server.
+     * @return The bound ServerSocketChannel.
+     * @throws IOException If the channel can't be inherited or bound.
+     */
+    private ServerSocketChannel openServerChannel(HTTPServerConfiguration configuration) throws IOException {
+        if(configuration.isInherit_channel()){
+            Channel inherited = System.inheritedChannel();
+            if(!(inherited instanceof ServerSocketChannel))
+                throw new IOException("No server socket was inherited from the parent process.");
+            System.out.println("Using the inherited server socket.");
+            return (ServerSocketChannel) inherited;
+        }
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            if(configuration.isReuse_port()){
+                if(!channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT))
+                    throw new IOException("SO_REUSEPORT is not supported on this platform.");
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            channel.bind(new InetSocketAddress(this.port_number), configuration.getAccept_backlog());
+            return channel;
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * The acceptor thread's loop. Accepts connections until the server socket is closed by stop().
+     */
+    private void acceptConnections(){
+        //Initialising a counter for clients who make a request to the server.
+        int client_number = 1;
+        //The server socket will continiously listen to incoming requests.
+        while(this.is_running){
+            Socket s = null;
+            try {
                 //Accepting a socket connecting.
-                Socket s = server.accept();
-                //Getting the reading and writing streams for the client's socket.
-                BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream()));
+                SocketChannel client = this.server_channel.accept();
+                s = client.socket();
+                s.setSoTimeout(HTTPServerInformation.getConfiguration().getSocket_timeout());
+                //Getting the reading and writing streams for the client's socket. The bytes read are counted for
+                //the admin console (the DataOutputStream counts the bytes written).
+                CountingInputStream counter = new CountingInputStream(s.getInputStream());
+                BufferedInputStream reader = new BufferedInputStream(counter);
                 DataOutputStream writer = new DataOutputStream(s.getOutputStream());
                 System.out.println("\nServing client: " + client_number);
-                //this.printClientInformation(s);
-                //Create a new thread object for this client so that the server can serve multiple requests.
-                Thread t = new Thread(new ClientHandler(s, reader, writer));
-                //Start the client's socket HTTP exchange with the server in a separate thread.
-                t.start();
+                if(HTTPServerLogger.isIs_debug_enabled())
+                    this.printClientInformation(s);
+                //Handle the client's socket HTTP exchange with the server in one of the thread pool's threads,
+                //so that the server can serve multiple requests.
+                TrackedClientHandler handler = new TrackedClientHandler(s, new ClientHandler(s, reader, writer), counter);
+                this.active_connections.put(s, handler);
+                this.thread_pool.execute(handler);
                 //Increment the count of clients who connected to our HTTP server.
                 client_number++;
+            } catch (ClosedChannelException ex) {
+                //The server socket was closed by stop().
+                break;
+            } catch (Exception ex) {
+                System.out.println(ex.getMessage());
+                if(s != null){
+                    this.active_connections.remove(s);
+                    this.closeQuietly(s);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop the server: stop accepting new connections, then wait for the requests in progress (and the queued ones)
+     * to complete. Connections still open when the drain timeout expires are closed.
+     * @param drain_timeout The maximum time to wait for the requests in progress, in milliseconds.
+     * @return A boolean denoting if all the requests in progress completed before the drain timeout.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public boolean stop(long drain_timeout) throws InterruptedException {
+        synchronized(this){
+            if(this.server_channel == null || this.is_stopped)
+                return true;
+            this.is_stopped = true;
+            this.is_running = false;
+        }
+        //Report the server as not ready, so that no new requests are sent to it.
+        ServerWarmup.stop();
+        System.out.println("Stopping, draining " + this.active_connections.size() + " connection(s)...");
+        try {
+            //Closing the server socket stops the acceptor thread.
+            this.server_channel.close();
+            this.acceptor.join(drain_timeout);
+            HTTPServerInformation.removeConfigurationListener(this.configuration_listener);
+            //Let the thread pool finish the queued and in progress requests, up to the drain timeout.
+            this.thread_pool.shutdown();
+            boolean drained = this.thread_pool.awaitTermination(drain_timeout, TimeUnit.MILLISECONDS);
+            if(!drained){
+                System.err.println("Drain timeout expired, closing " + this.active_connections.size() + " connection(s).");
+                for(Socket s : this.active_connections.keySet())
+                    this.closeQuietly(s);
+                this.thread_pool.shutdownNow();
             }
+            //Close the long-lived connections (event streams) held by the event loop, and the admin console.
+            EventLoop.shutdown();
+            if(this.admin_console != null)
+                this.admin_console.stop();
+            System.out.println("Stopped.");
+            return drained;
         } catch (IOException ex) {
-            System.out.println(ex.getMessage());
+            System.err.println(ex.getMessage());
+            return false;
+        } finally {
+            this.termination.countDown();
+        }
+    }
+
+    /**
+     * Wait until the server is stopped.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public void awaitTermination() throws InterruptedException {
+        this.termination.await();
+    }
+
+    /**
+     * Wait until the server is stopped, or until the timeout expires.
+     * @param timeout The maximum time to wait, in milliseconds.
+     * @return A boolean denoting if the server is stopped.
+     * @throws InterruptedException If the current thread is interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeout) throws InterruptedException {
+        return this.termination.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Apply a reloaded configuration to the running server.<br>
+     * The thread pool is resized, and the caches of the removed virtual hosts are dropped. The port number and the thread pool's queue size require a restart.
+     * @param configuration The new configuration of the server.
+     */
+    private void applyConfiguration(HTTPServerConfiguration configuration){
+        ThreadPoolExecutor pool = this.thread_pool;
+        //The maximum size can't be lower than the core size, so the order of the updates depends on the direction.
+        if(configuration.getThread_pool_core_size() > pool.getMaximumPoolSize()){
+            pool.setMaximumPoolSize(configuration.getThread_pool_max_size());
+            pool.setCorePoolSize(configuration.getThread_pool_core_size());
         }
+        else{
+            pool.setCorePoolSize(configuration.getThread_pool_core_size());
+            pool.setMaximumPoolSize(configuration.getThread_pool_max_size());
+        }
+        //Drop the static files caches of the removed virtual hosts.
+        StaticResourceCache.retainHosts(configuration.getVirtual_hosts().stream().map(VirtualHost::getName).collect(Collectors.toList()));
+        if(configuration.getPort() != this.port_number)
+            System.err.println("The port number was changed to " + configuration.getPort() + ", a restart is required to apply it.");
     }
-    
+
+    //Close a socket, ignoring any error.
+    private void closeQuietly(Socket s){
+        try {
+            s.close();
+        } catch (IOException ex) {}
+    }
+
+    /**
+     * Runs a ClientHandler and removes its socket from the active connections when it's done.
+     */
+    class TrackedClientHandler implements Runnable {
+        private final Socket s;
+        private final ClientHandler handler;
+        private final CountingInputStream counter;
+
+        TrackedClientHandler(Socket s, ClientHandler handler, CountingInputStream counter){
+            this.s = s;
+            this.handler = handler;
+            this.counter = counter;
+        }
+
+        /**
+         * @return The client's socket.
+         */
+        Socket getSocket() {
+            return this.s;
+        }
+
+        /**
+         * @return The client's handler.
+         */
+        ClientHandler getHandler() {
+            return this.handler;
+        }
+
+        /**
+         * @return The number of bytes read from the client so far.
+         */
+        long getBytes_read() {
+            return this.counter.count;
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.handler.run();
+            } finally {
+                active_connections.remove(this.s);
+            }
+        }
+    }
+
+    /**
+     * An input stream counting the bytes read from the stream it wraps.
+     */
+    static final class CountingInputStream extends FilterInputStream {
+        //Only written by the thread reading the stream.
+        private volatile long count = 0;
+
+        CountingInputStream(InputStream in){
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b != -1)
+                this.count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int bytes = super.read(b, off, len);
+            if(bytes > 0)
+                this.count += bytes;
+            return bytes;
+        }
+    }
+
     /**
      * Print to the console output a client information based on its associated connecting socket.
+     * Only used when debug logging is enabled: the admin console lists the active connections on demand.
      * @param client A socket object associated with a client that connected to the HTTPServer.
      */
     private void printClientInformation(Socket client) throws SocketException{
@@ -0,0 +1,1082 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * An immutable snapshot of the server's configuration.<br>
+ * A configuration is read from a properties file (and command line overrides), with every missing key falling back to
+ * its default value from HTTPServerInformation. The current configuration is held by HTTPServerInformation and is
+ * replaced as a whole when the configuration file changes, so a request always sees a consistent set of values.<br>
+ * Supported keys:<br>
+ * port, public_directory, index_page, server_name, forbidden_directories (comma separated),
+ * error_page.CODE, error_page_template, status.CODE, route./PATH (rewrites /PATH to another resource),
+ * thread_pool.core_size, thread_pool.max_size, thread_pool.queue_size, buffer_size, socket_timeout (ms),
+ * accept_backlog, shutdown_timeout (ms), reuse_port, inherit_channel,
+ * strict_parsing, max_request_line_length, max_header_size, max_header_count, max_content_size,
+ * directory_listing.enabled, directory_listing.page_size, directory_listing.max_page_size,
+ * directory_listing.max_cached_directories,
+ * proxy_route./PREFIX/ (comma separated upstream URLs), proxy.balancing, proxy.connect_timeout (ms),
+ * proxy.read_timeout (ms), proxy.max_idle_connections, proxy.health_check_interval (ms), proxy.health_check_path,
+ * response_cache.enabled, response_cache.max_bytes, response_cache.max_entry_bytes, response_cache.coalescing_timeout (ms),
+ * sse_route./PATH (the channel of an event stream), sse.flush_interval (ms), sse.heartbeat_interval (ms), sse.retry (ms),
+ * sse.max_queued_bytes, websocket_route./PATH (the channel of a WebSocket path), websocket.max_message_size,
+ * websocket.max_queued_bytes, websocket.ping_interval (ms),
+ * upload.enabled, upload.path, upload.directory, upload.max_size, upload.loopback_only,
+ * rate_limit.enabled, rate_limit.requests_per_second, rate_limit.burst, rate_limit.max_clients,
+ * rate_limit_route./PREFIX (RATE/BURST),
+ * static_cache.enabled, static_cache.max_bytes, static_cache.max_file_size, static_cache.preload, bundle_file,
+ * warmup.requests, warmup.exit, readiness_path,
+ * vhost.NAME.hosts (comma separated, such as example.com,*.example.com), vhost.NAME.public_directory,
+ * vhost.NAME.error_page.CODE, vhost.NAME.error_page_template, vhost.NAME.forbidden_directories, vhost.NAME.static_cache.max_bytes,
+ * vhost.NAME.bundle_file,
+ * tracing.enabled, tracing.server_timing, tracing.slow_request_threshold (ms),
+ * admin.enabled, admin.address, admin.port.
+ * @author Hodaifa98
+ */
+public final class HTTPServerConfiguration {
+
+    //Server.
+    private final int port;
+    private final String public_directory;
+    private final String index_page;
+    private final String server_name;
+    private final List<String> forbidden_directories;
+    private final Map<Integer, String> error_pages;
+    private final Map<Integer, String> http_status;
+    private final Map<String, String> routes;
+
+    //Threads, buffers and timeouts.
+    private final int thread_pool_core_size;
+    private final int thread_pool_max_size;
+    private final int thread_pool_queue_size;
+    private final int buffer_size;
+    private final int socket_timeout;
+
+    //Server socket and shutdown.
+    private final int accept_backlog;
+    private final int shutdown_timeout;
+    private final boolean reuse_port;
+    private final boolean inherit_channel;
+
+    //Request parsing.
+    private final boolean strict_parsing;
+    private final int max_request_line_length;
+    private final int max_header_size;
+    private final int max_header_count;
+    private final int max_content_size;
+
+    //Directory listings.
+    private final boolean directory_listing_enabled;
+    private final int directory_listing_page_size;
+    private final int directory_listing_max_page_size;
+    private final int directory_listing_max_cached_directories;
+
+    //Reverse proxy.
+    private final Map<String, List<String>> proxy_routes;
+    private final String proxy_balancing;
+    private final int proxy_connect_timeout;
+    private final int proxy_read_timeout;
+    private final int proxy_max_idle_connections;
+    private final int proxy_health_check_interval;
+    private final String proxy_health_check_path;
+
+    //Response cache.
+    private final boolean response_cache_enabled;
+    private final int response_cache_max_bytes;
+    private final int response_cache_max_entry_bytes;
+    private final int response_cache_coalescing_timeout;
+
+    //Server-Sent Events.
+    private final Map<String, String> sse_routes;
+    private final int sse_flush_interval;
+    private final int sse_heartbeat_interval;
+    private final int sse_retry;
+    private final int sse_max_queued_bytes;
+
+    //WebSockets.
+    private final Map<String, String> websocket_routes;
+    private final int websocket_max_message_size;
+    private final int websocket_max_queued_bytes;
+    private final int websocket_ping_interval;
+
+    //Uploads.
+    private final boolean upload_enabled;
+    private final String upload_path;
+    private final String upload_directory;
+    private final long upload_max_size;
+    private final boolean upload_loopback_only;
+
+    //Rate limiting.
+    private final boolean rate_limit_enabled;
+    private final int rate_limit_requests_per_second;
+    private final int rate_limit_burst;
+    private final int rate_limit_max_clients;
+    private final Map<String, String> rate_limit_routes;
+
+    //Static files cache, warm-up and readiness.
+    private final boolean static_cache_enabled;
+    private final int static_cache_max_bytes;
+    private final int static_cache_max_file_size;
+    private final boolean static_cache_preload;
+    private final String bundle_file;
+    private final int warmup_requests;
+    private final boolean warmup_exit;
+    private final String readiness_path;
+
+    //Virtual hosts (the default host first), and the hosts keyed by their exact host names and wildcard suffixes.
+    private final List<VirtualHost> virtual_hosts;
+    private final Map<String, VirtualHost> exact_hosts;
+    private final Map<String, VirtualHost> wildcard_hosts;
+
+    //Tracing.
+    private final boolean tracing_enabled;
+    private final boolean tracing_server_timing;
+    private final int tracing_slow_request_threshold;
+
+    //Admin console.
+    private final boolean admin_enabled;
+    private final String admin_address;
+    private final int admin_port;
+
+    //The properties this configuration was created from, kept to derive new configurations from it.
+    private final Properties properties;
+
+    /**
+     * Create a configuration with every value set to its default.
+     */
+    public HTTPServerConfiguration() {
+        this(new Properties());
+    }
+
+    /**
+     * Create a configuration from properties. Every missing property falls back to its default value.
+     * @param properties The configuration properties.
+     * @throws IllegalArgumentException If a property has an invalid value.
+     */
+    public HTTPServerConfiguration(Properties properties) {
+        this.properties = new Properties();
+        this.properties.putAll(properties);
+        this.port = getInteger(properties, "port", HTTPServer.DEFAULT_PORT, 0, 65535);
+        this.public_directory = properties.getProperty("public_directory", HTTPServerInformation.PUBLIC_DIRECTORY).trim();
+        this.index_page = properties.getProperty("index_page", HTTPServerInformation.INDEX_PAGE).trim();
+        this.server_name = properties.getProperty("server_name", HTTPServerInformation.SERVER_NAME).trim();
+        //Forbidden directories, comma separated.
+        String forbidden = properties.getProperty("forbidden_directories");
+        if(forbidden == null)
+            this.forbidden_directories = Collections.unmodifiableList(new ArrayList<>(HTTPServerInformation.getFORBIDDEN_DIRECTORIES()));
+        else{
+            ArrayList<String> directories = new ArrayList<>();
+            for(String directory : forbidden.split(","))
+                if(!directory.isBlank())
+                    directories.add(directory.trim());
+            this.forbidden_directories = Collections.unmodifiableList(directories);
+        }
+        //Error pages and status texts, keyed by status code. Error pages are relative to the public directory.
+        HashMap<Integer, String> relative_pages = new HashMap<>();
+        HashMap<Integer, String> status = new HashMap<>(HTTPServerInformation.SUPPORTED_HTTP_STATUS);
+        HTTPServerInformation.ERROR_PAGES.forEach((code, page) -> relative_pages.put(code,
+                page.substring(HTTPServerInformation.PUBLIC_DIRECTORY.length())));
+        String relative_template = properties.getProperty("error_page_template",
+                HTTPServerInformation.ERROR_PAGE_TEMPLATE.substring(HTTPServerInformation.PUBLIC_DIRECTORY.length())).trim();
+        HashMap<String, String> configured_routes = new HashMap<>();
+        LinkedHashMap<String, List<String>> configured_proxy_routes = new LinkedHashMap<>();
+        HashMap<String, String> configured_sse_routes = new HashMap<>();
+        HashMap<String, String> configured_websocket_routes = new HashMap<>();
+        HashMap<String, String> configured_rate_limit_routes = new HashMap<>();
+        TreeMap<String, Properties> vhost_properties = new TreeMap<>();
+        for(String key : properties.stringPropertyNames()){
+            String value = properties.getProperty(key).trim();
+            if(key.startsWith("error_page."))
+                relative_pages.put(getStatusCode(key), value);
+            else if(key.startsWith("status."))
+                status.put(getStatusCode(key), value);
+            else if(key.startsWith("route."))
+                configured_routes.put(key.substring("route.".length()), value);
+            else if(key.startsWith("proxy_route."))
+                configured_proxy_routes.put(key.substring("proxy_route.".length()), getUpstreamURLs(key, value));
+            else if(key.startsWith("sse_route."))
+                configured_sse_routes.put(key.substring("sse_route.".length()), value);
+            else if(key.startsWith("websocket_route."))
+                configured_websocket_routes.put(key.substring("websocket_route.".length()), value);
+            else if(key.startsWith("rate_limit_route."))
+                configured_rate_limit_routes.put(key.substring("rate_limit_route.".length()), getRateLimit(key, value));
+            else if(key.startsWith("vhost.")){
+                //Virtual host settings, grouped by the host's name: vhost.NAME.SETTING.
+                int dot = key.indexOf('.', "vhost.".length());
+                String name = dot != -1 ? key.substring("vhost.".length(), dot) : "";
+                if(!name.matches("[A-Za-z0-9_-]+") || name.equals(VirtualHost.DEFAULT_NAME))
+                    throw new IllegalArgumentException("Invalid virtual host key: " + key + " (expected vhost.NAME.SETTING)");
+                vhost_properties.computeIfAbsent(name, (n) -> new Properties()).setProperty(key.substring(dot + 1), value);
+            }
+        }
+        HashMap<Integer, String> pages = new HashMap<>();
+        relative_pages.forEach((code, page) -> pages.put(code, this.public_directory + page));
+        this.rate_limit_routes = Collections.unmodifiableMap(configured_rate_limit_routes);
+        this.websocket_routes = Collections.unmodifiableMap(configured_websocket_routes);
+        this.sse_routes = Collections.unmodifiableMap(configured_sse_routes);
+        this.proxy_routes = Collections.unmodifiableMap(configured_proxy_routes);
+        this.error_pages = Collections.unmodifiableMap(pages);
+        this.http_status = Collections.unmodifiableMap(status);
+        this.routes = Collections.unmodifiableMap(configured_routes);
+        //Threads, buffers and timeouts.
+        this.thread_pool_core_size = getInteger(properties, "thread_pool.core_size", HTTPServerInformation.THREAD_POOL_CORE_SIZE, 1, Integer.MAX_VALUE);
+        this.thread_pool_max_size = getInteger(properties, "thread_pool.max_size",
+                Math.max(this.thread_pool_core_size, HTTPServerInformation.THREAD_POOL_MAX_SIZE), this.thread_pool_core_size, Integer.MAX_VALUE);
+        this.thread_pool_queue_size = getInteger(properties, "thread_pool.queue_size", HTTPServerInformation.THREAD_POOL_QUEUE_SIZE, 1, Integer.MAX_VALUE);
+        this.buffer_size = getInteger(properties, "buffer_size", HTTPServerInformation.BUFFER_SIZE, 512, 16 * 1024 * 1024);
+        this.socket_timeout = getInteger(properties, "socket_timeout", HTTPServerInformation.SOCKET_TIMEOUT, 0, Integer.MAX_VALUE);
+        //Server socket and shutdown.
+        this.accept_backlog = getInteger(properties, "accept_backlog", HTTPServerInformation.ACCEPT_BACKLOG, 1, Integer.MAX_VALUE);
+        this.shutdown_timeout = getInteger(properties, "shutdown_timeout", HTTPServerInformation.SHUTDOWN_TIMEOUT, 0, Integer.MAX_VALUE);
+        this.reuse_port = getBoolean(properties, "reuse_port", HTTPServerInformation.REUSE_PORT);
+        this.inherit_channel = getBoolean(properties, "inherit_channel", HTTPServerInformation.INHERIT_CHANNEL);
+        //Request parsing.
+        this.strict_parsing = getBoolean(properties, "strict_parsing", HTTPServerInformation.STRICT_PARSING);
+        this.max_request_line_length = getInteger(properties, "max_request_line_length", HTTPServerInformation.MAX_REQUEST_LINE_LENGTH, 16, 1024 * 1024);
+        this.max_header_size = getInteger(properties, "max_header_size", HTTPServerInformation.MAX_HEADER_SIZE, 0, 1024 * 1024);
+        this.max_header_count = getInteger(properties, "max_header_count", HTTPServerInformation.MAX_HEADER_COUNT, 0, 10000);
+        this.max_content_size = getInteger(properties, "max_content_size", HTTPServerInformation.MAX_CONTENT_SIZE, 0, Integer.MAX_VALUE);
+        //Reverse proxy.
+        this.proxy_balancing = properties.getProperty("proxy.balancing", HTTPServerInformation.PROXY_BALANCING).trim();
+        if(!this.proxy_balancing.equals("round_robin") && !this.proxy_balancing.equals("least_connections"))
+            throw new IllegalArgumentException("Invalid value for proxy.balancing: " + this.proxy_balancing
+                    + " (expected round_robin or least_connections)");
+        this.proxy_connect_timeout = getInteger(properties, "proxy.connect_timeout", HTTPServerInformation.PROXY_CONNECT_TIMEOUT, 0, Integer.MAX_VALUE);
+        this.proxy_read_timeout = getInteger(properties, "proxy.read_timeout", HTTPServerInformation.PROXY_READ_TIMEOUT, 0, Integer.MAX_VALUE);
+        this.proxy_max_idle_connections = getInteger(properties, "proxy.max_idle_connections", HTTPServerInformation.PROXY_MAX_IDLE_CONNECTIONS, 0, Integer.MAX_VALUE);
+        this.proxy_health_check_interval = getInteger(properties, "proxy.health_check_interval", HTTPServerInformation.PROXY_HEALTH_CHECK_INTERVAL, 0, Integer.MAX_VALUE);
+        this.proxy_health_check_path = properties.getProperty("proxy.health_check_path", HTTPServerInformation.PROXY_HEALTH_CHECK_PATH).trim();
+        //Response cache.
+        this.response_cache_enabled = getBoolean(properties, "response_cache.enabled", HTTPServerInformation.RESPONSE_CACHE_ENABLED);
+        this.response_cache_max_bytes = getInteger(properties, "response_cache.max_bytes", HTTPServerInformation.RESPONSE_CACHE_MAX_BYTES, 0, Integer.MAX_VALUE);
+        this.response_cache_max_entry_bytes = getInteger(properties, "response_cache.max_entry_bytes",
+                Math.min(HTTPServerInformation.RESPONSE_CACHE_MAX_ENTRY_BYTES, this.response_cache_max_bytes), 0, this.response_cache_max_bytes);
+        this.response_cache_coalescing_timeout = getInteger(properties, "response_cache.coalescing_timeout",
+                HTTPServerInformation.RESPONSE_CACHE_COALESCING_TIMEOUT, 0, Integer.MAX_VALUE);
+        //Server-Sent Events.
+        this.sse_flush_interval = getInteger(properties, "sse.flush_interval", HTTPServerInformation.SSE_FLUSH_INTERVAL, 1, Integer.MAX_VALUE);
+        this.sse_heartbeat_interval = getInteger(properties, "sse.heartbeat_interval", HTTPServerInformation.SSE_HEARTBEAT_INTERVAL, 0, Integer.MAX_VALUE);
+        this.sse_retry = getInteger(properties, "sse.retry", HTTPServerInformation.SSE_RETRY, 0, Integer.MAX_VALUE);
+        this.sse_max_queued_bytes = getInteger(properties, "sse.max_queued_bytes", HTTPServerInformation.SSE_MAX_QUEUED_BYTES, 1, Integer.MAX_VALUE);
+        //WebSockets.
+        this.websocket_max_message_size = getInteger(properties, "websocket.max_message_size", HTTPServerInformation.WEBSOCKET_MAX_MESSAGE_SIZE, 125, Integer.MAX_VALUE - 14);
+        this.websocket_max_queued_bytes = getInteger(properties, "websocket.max_queued_bytes", HTTPServerInformation.WEBSOCKET_MAX_QUEUED_BYTES, 1, Integer.MAX_VALUE);
+        this.websocket_ping_interval = getInteger(properties, "websocket.ping_interval", HTTPServerInformation.WEBSOCKET_PING_INTERVAL, 0, Integer.MAX_VALUE / 2);
+        //Uploads. The upload directory follows the public directory unless it's configured.
+        this.upload_enabled = getBoolean(properties, "upload.enabled", HTTPServerInformation.UPLOAD_ENABLED);
+        this.upload_path = properties.getProperty("upload.path", HTTPServerInformation.UPLOAD_PATH).trim();
+        if(!this.upload_path.startsWith("/") || !this.upload_path.endsWith("/"))
+            throw new IllegalArgumentException("Invalid value for upload.path: " + this.upload_path + " (expected /PATH/)");
+        this.upload_directory = properties.getProperty("upload.directory",
+                this.public_directory + HTTPServerInformation.UPLOAD_DIRECTORY.substring(HTTPServerInformation.PUBLIC_DIRECTORY.length())).trim();
+        this.upload_max_size = getLong(properties, "upload.max_size", HTTPServerInformation.UPLOAD_MAX_SIZE, 0, Long.MAX_VALUE);
+        this.upload_loopback_only = getBoolean(properties, "upload.loopback_only", HTTPServerInformation.UPLOAD_LOOPBACK_ONLY);
+        //Rate limiting.
+        this.rate_limit_enabled = getBoolean(properties, "rate_limit.enabled", HTTPServerInformation.RATE_LIMIT_ENABLED);
+        this.rate_limit_requests_per_second = getInteger(properties, "rate_limit.requests_per_second",
+                HTTPServerInformation.RATE_LIMIT_REQUESTS_PER_SECOND, 0, 1000000000);
+        this.rate_limit_burst = getInteger(properties, "rate_limit.burst", HTTPServerInformation.RATE_LIMIT_BURST, 1, Integer.MAX_VALUE);
+        this.rate_limit_max_clients = getInteger(properties, "rate_limit.max_clients", HTTPServerInformation.RATE_LIMIT_MAX_CLIENTS, 1, Integer.MAX_VALUE);
+        //Static files cache, warm-up and readiness.
+        this.static_cache_enabled = getBoolean(properties, "static_cache.enabled", HTTPServerInformation.STATIC_CACHE_ENABLED);
+        this.static_cache_max_bytes = getInteger(properties, "static_cache.max_bytes", HTTPServerInformation.STATIC_CACHE_MAX_BYTES, 0, Integer.MAX_VALUE);
+        this.static_cache_max_file_size = getInteger(properties, "static_cache.max_file_size",
+                Math.min(HTTPServerInformation.STATIC_CACHE_MAX_FILE_SIZE, this.static_cache_max_bytes), 0, this.static_cache_max_bytes);
+        this.static_cache_preload = getBoolean(properties, "static_cache.preload", HTTPServerInformation.STATIC_CACHE_PRELOAD);
+        this.bundle_file = properties.getProperty("bundle_file", HTTPServerInformation.BUNDLE_FILE).trim();
+        this.warmup_requests = getInteger(properties, "warmup.requests", HTTPServerInformation.WARMUP_REQUESTS, 0, Integer.MAX_VALUE);
+        this.warmup_exit = getBoolean(properties, "warmup.exit", HTTPServerInformation.WARMUP_EXIT);
+        this.readiness_path = properties.getProperty("readiness_path", HTTPServerInformation.READINESS_PATH).trim();
+        if(!this.readiness_path.isEmpty() && !this.readiness_path.startsWith("/"))
+            throw new IllegalArgumentException("Invalid value for readiness_path: " + this.readiness_path + " (expected /PATH)");
+        //Virtual hosts, and their host lookup tables.
+        ArrayList<VirtualHost> hosts = new ArrayList<>();
+        hosts.add(new VirtualHost(VirtualHost.DEFAULT_NAME, Collections.emptyList(), this.public_directory, this.error_pages,
+                new ErrorPages(this.error_pages, relative_template.isEmpty() ? null : this.public_directory + relative_template, this.http_status),
+                this.forbidden_directories, this.getBundle("bundle_file", this.bundle_file, this.public_directory, this.forbidden_directories),
+                this.static_cache_max_bytes));
+        HashMap<String, VirtualHost> exact_hosts = new HashMap<>();
+        HashMap<String, VirtualHost> wildcard_hosts = new HashMap<>();
+        for(Map.Entry<String, Properties> entry : vhost_properties.entrySet()){
+            VirtualHost host = this.getVirtualHost(entry.getKey(), entry.getValue(), relative_pages, relative_template);
+            for(String host_name : host.getHost_names()){
+                boolean is_wildcard = host_name.startsWith("*.");
+                VirtualHost previous = (is_wildcard ? wildcard_hosts : exact_hosts).put(is_wildcard ? host_name.substring(2) : host_name, host);
+                if(previous != null)
+                    throw new IllegalArgumentException("The host name " + host_name + " is served by both virtual hosts "
+                            + previous.getName() + " and " + host.getName());
+            }
+            hosts.add(host);
+        }
+        this.virtual_hosts = Collections.unmodifiableList(hosts);
+        this.exact_hosts = exact_hosts;
+        this.wildcard_hosts = wildcard_hosts;
+        //Tracing.
+        this.tracing_enabled = getBoolean(properties, "tracing.enabled", HTTPServerInformation.TRACING_ENABLED);
+        this.tracing_server_timing = getBoolean(properties, "tracing.server_timing", HTTPServerInformation.TRACING_SERVER_TIMING);
+        this.tracing_slow_request_threshold = getInteger(properties, "tracing.slow_request_threshold",
+                HTTPServerInformation.TRACING_SLOW_REQUEST_THRESHOLD, 0, Integer.MAX_VALUE);
+        //Admin console.
+        this.admin_enabled = getBoolean(properties, "admin.enabled", HTTPServerInformation.ADMIN_ENABLED);
+        this.admin_address = properties.getProperty("admin.address", HTTPServerInformation.ADMIN_ADDRESS).trim();
+        this.admin_port = getInteger(properties, "admin.port", HTTPServerInformation.ADMIN_PORT, 0, 65535);
+        //Directory listings.
+        this.directory_listing_enabled = getBoolean(properties, "directory_listing.enabled", HTTPServerInformation.DIRECTORY_LISTING_ENABLED);
+        this.directory_listing_max_page_size = getInteger(properties, "directory_listing.max_page_size",
+                HTTPServerInformation.DIRECTORY_LISTING_MAX_PAGE_SIZE, 1, Integer.MAX_VALUE);
+        this.directory_listing_page_size = getInteger(properties, "directory_listing.page_size",
+                Math.min(HTTPServerInformation.DIRECTORY_LISTING_PAGE_SIZE, this.directory_listing_max_page_size), 1, this.directory_listing_max_page_size);
+        this.directory_listing_max_cached_directories = getInteger(properties, "directory_listing.max_cached_directories",
+                HTTPServerInformation.DIRECTORY_LISTING_MAX_CACHED_DIRECTORIES, 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Load a configuration from a properties file, with command line overrides applied on top of it.
+     * @param file The path of the properties file, or null to only use the overrides.
+     * @param overrides Properties taking precedence over the ones in the file.
+     * @return A new HTTPServerConfiguration.
+     * @throws IOException If the file can't be read.
+     * @throws IllegalArgumentException If a property has an invalid value.
+     */
+    public static HTTPServerConfiguration load(Path file, Properties overrides) throws IOException {
+        Properties properties = new Properties();
+        if(file != null && Files.exists(file)){
+            try(Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)){
+                properties.load(reader);
+            }
+        }
+        properties.putAll(overrides);
+        return new HTTPServerConfiguration(properties);
+    }
+
+    /**
+     * Parse command line arguments in the form of --key=value (or --key value) into configuration properties.<br>
+     * The "--config" argument is not a configuration property: it's returned under the "config" key.
+     * @param args The command line arguments.
+     * @return The parsed properties.
+     * @throws IllegalArgumentException If an argument isn't in the form of --key=value.
+     */
+    public static Properties parseArguments(String[] args) {
+        Properties properties = new Properties();
+        for(int i = 0; i < args.length; i++){
+            if(!args[i].startsWith("--") || args[i].length() == 2)
+                throw new IllegalArgumentException("Invalid argument: " + args[i] + " (expected --key=value)");
+            String argument = args[i].substring(2);
+            int equals = argument.indexOf('=');
+            if(equals != -1)
+                properties.setProperty(argument.substring(0, equals), argument.substring(equals + 1));
+            else if(i + 1 < args.length)
+                properties.setProperty(argument, args[++i]);
+            else
+                throw new IllegalArgumentException("Missing value for argument: " + args[i]);
+        }
+        return properties;
+    }
+
+    /**
+     * Create a virtual host from its vhost.NAME.* settings. Its missing settings fall back to the server's, relative
+     * to its own public directory for the error pages.
+     * @param name The host's name.
+     * @param settings The host's settings, without the vhost.NAME. prefix.
+     * @param relative_pages The server's error pages, relative to the public directory.
+     * @param relative_template The server's error page template, relative to the public directory (or empty).
+     * @return A new VirtualHost.
+     * @throws IllegalArgumentException If a setting is missing or has an invalid value.
+     */
+    private VirtualHost getVirtualHost(String name, Properties settings, Map<Integer, String> relative_pages, String relative_template) {
+        String prefix = "vhost." + name + ".";
+        //Host names, comma separated and lowercase. A wildcard matches the subdomains of a domain.
+        ArrayList<String> host_names = new ArrayList<>();
+        for(String host_name : settings.getProperty("hosts", "").split(",")){
+            host_name = host_name.trim().toLowerCase(Locale.ROOT);
+            if(host_name.isEmpty())
+                continue;
+            if(!host_name.matches("(\\*\\.)?[a-z0-9_-]+(\\.[a-z0-9_-]+)*"))
+                throw new IllegalArgumentException("Invalid host name for " + prefix + "hosts: " + host_name
+                        + " (expected a domain name, or *.DOMAIN for its subdomains)");
+            host_names.add(host_name);
+        }
+        if(host_names.isEmpty())
+            throw new IllegalArgumentException("Missing value for " + prefix + "hosts");
+        String public_directory = settings.getProperty("public_directory");
+        if(public_directory == null || public_directory.isEmpty())
+            throw new IllegalArgumentException("Missing value for " + prefix + "public_directory");
+        //Forbidden directories, comma separated.
+        List<String> forbidden_directories = this.forbidden_directories;
+        if(settings.getProperty("forbidden_directories") != null){
+            ArrayList<String> directories = new ArrayList<>();
+            for(String directory : settings.getProperty("forbidden_directories").split(","))
+                if(!directory.isBlank())
+                    directories.add(directory.trim());
+            forbidden_directories = Collections.unmodifiableList(directories);
+        }
+        HashMap<Integer, String> pages = new HashMap<>();
+        relative_pages.forEach((code, page) -> pages.put(code, public_directory + page));
+        int static_cache_max_bytes = this.static_cache_max_bytes;
+        for(String key : settings.stringPropertyNames()){
+            if(key.startsWith("error_page."))
+                pages.put(getStatusCode(key), public_directory + settings.getProperty(key));
+            else if(key.equals("static_cache.max_bytes"))
+                static_cache_max_bytes = getInteger(settings, key, this.static_cache_max_bytes, 0, Integer.MAX_VALUE);
+            else if(!key.equals("hosts") && !key.equals("public_directory") && !key.equals("forbidden_directories")
+                    && !key.equals("error_page_template") && !key.equals("bundle_file"))
+                throw new IllegalArgumentException("Unknown virtual host setting: " + prefix + key);
+        }
+        String template = settings.getProperty("error_page_template", relative_template);
+        return new VirtualHost(name, Collections.unmodifiableList(host_names), public_directory, Collections.unmodifiableMap(pages),
+                new ErrorPages(pages, template.isEmpty() ? null : public_directory + template, this.http_status),
+                forbidden_directories, this.getBundle(prefix + "bundle_file", settings.getProperty("bundle_file", ""), public_directory, forbidden_directories),
+                static_cache_max_bytes);
+    }
+
+    /**
+     * Map the bundle of a host, building it from the host's public directory first if it doesn't exist.
+     * @param key The key of the bundle's setting.
+     * @param bundle_file The path of the bundle, or an empty string if the host isn't bundled.
+     * @param public_directory The host's public directory.
+     * @param forbidden_directories The host's forbidden directories.
+     * @return The mapped SiteBundle, or null if the host isn't bundled.
+     * @throws IllegalArgumentException If the bundle can't be built or mapped.
+     */
+    private SiteBundle getBundle(String key, String bundle_file, String public_directory, List<String> forbidden_directories) {
+        if(bundle_file.isEmpty())
+            return null;
+        try {
+            return SiteBundle.open(Paths.get(bundle_file), public_directory, forbidden_directories, this.index_page);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException("Invalid value for " + key + ": " + ex.getMessage());
+        }
+    }
+
+    //Parse a comma separated list of upstream URLs, in the form of http://host:port.
+    private static List<String> getUpstreamURLs(String key, String value) {
+        ArrayList<String> urls = new ArrayList<>();
+        for(String url : value.split(",")){
+            if(url.isBlank())
+                continue;
+            try {
+                URI uri = URI.create(url.trim());
+                if("http".equals(uri.getScheme()) && uri.getHost() != null){
+                    urls.add(url.trim());
+                    continue;
+                }
+            } catch (IllegalArgumentException ex) {}
+            throw new IllegalArgumentException("Invalid upstream URL for " + key + ": " + url + " (expected http://host:port)");
+        }
+        if(urls.isEmpty())
+            throw new IllegalArgumentException("No upstream URL for " + key);
+        return Collections.unmodifiableList(urls);
+    }
+
+    //Validate a rate limit in the form of RATE/BURST: requests per second, and requests at once.
+    private static String getRateLimit(String key, String value) {
+        String[] rate_and_burst = value.split("/");
+        try {
+            if(rate_and_burst.length == 2 && Integer.parseInt(rate_and_burst[0].trim()) >= 1
+                    && Integer.parseInt(rate_and_burst[0].trim()) <= 1000000000 && Integer.parseInt(rate_and_burst[1].trim()) >= 1)
+                return value;
+        } catch (NumberFormatException ex) {}
+        throw new IllegalArgumentException("Invalid rate limit for " + key + ": " + value + " (expected RATE/BURST, such as 10/20)");
+    }
+
+    //Parse the status code at the end of a key, such as "error_page.404".
+    private static int getStatusCode(String key) {
+        String code = key.substring(key.indexOf('.') + 1);
+        try {
+            int status_code = Integer.parseInt(code);
+            if(status_code >= 100 && status_code <= 599)
+                return status_code;
+        } catch (NumberFormatException ex) {}
+        throw new IllegalArgumentException("Invalid HTTP status code in configuration key: " + key);
+    }
+
+    //Read an integer property in the range [minimum, maximum], or its default value if it's missing.
+    private static int getInteger(Properties properties, String key, int default_value, int minimum, int maximum) {
+        String value = properties.getProperty(key);
+        if(value == null)
+            return default_value;
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if(parsed >= minimum && parsed <= maximum)
+                return parsed;
+        } catch (NumberFormatException ex) {}
+        throw new IllegalArgumentException("Invalid value for " + key + ": " + value + " (expected an integer between "
+                + minimum + " and " + maximum + ")");
+    }
+
+    //Read a long property in the range [minimum, maximum], or its default value if it's missing.
+    private static long getLong(Properties properties, String key, long default_value, long minimum, long maximum) {
+        String value = properties.getProperty(key);
+        if(value == null)
+            return default_value;
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if(parsed >= minimum && parsed <= maximum)
+                return parsed;
+        } catch (NumberFormatException ex) {}
+        throw new IllegalArgumentException("Invalid value for " + key + ": " + value + " (expected an integer between "
+                + minimum + " and " + maximum + ")");
+    }
+
+    //Read a boolean property, or its default value if it's missing.
+    private static boolean getBoolean(Properties properties, String key, boolean default_value) {
+        String value = properties.getProperty(key);
+        if(value == null)
+            return default_value;
+        if(Arrays.asList("true", "false").contains(value.trim().toLowerCase()))
+            return Boolean.parseBoolean(value.trim());
+        throw new IllegalArgumentException("Invalid value for " + key + ": " + value + " (expected true or false)");
+    }
+
+
+    //Getters.
+
+    /**
+     * @return The port number the server listens on.
+     */
+    public int getPort() {
+        return this.port;
+    }
+
+    /**
+     * @return The public directory of resources in the server.
+     */
+    public String getPublic_directory() {
+        return this.public_directory;
+    }
+
+    /**
+     * @return The name of the index page of a directory.
+     */
+    public String getIndex_page() {
+        return this.index_page;
+    }
+
+    /**
+     * @return The server name, sent in the Server response header.
+     */
+    public String getServer_name() {
+        return this.server_name;
+    }
+
+    /**
+     * @return An unmodifiable list of the directories that can't be requested.
+     */
+    public List<String> getForbidden_directories() {
+        return this.forbidden_directories;
+    }
+
+    /**
+     * @return An unmodifiable map of the error pages' paths, keyed by HTTP status code.
+     */
+    public Map<Integer, String> getError_pages() {
+        return this.error_pages;
+    }
+
+    /**
+     * @return An unmodifiable map of the HTTP status texts, keyed by HTTP status code.
+     */
+    public Map<Integer, String> getHttp_status() {
+        return this.http_status;
+    }
+
+    /**
+     * @return An unmodifiable map of routes: requested paths rewritten to other resources.
+     */
+    public Map<String, String> getRoutes() {
+        return this.routes;
+    }
+
+    /**
+     * @return The number of threads kept in the request handling thread pool.
+     */
+    public int getThread_pool_core_size() {
+        return this.thread_pool_core_size;
+    }
+
+    /**
+     * @return The maximum number of threads of the request handling thread pool.
+     */
+    public int getThread_pool_max_size() {
+        return this.thread_pool_max_size;
+    }
+
+    /**
+     * @return The maximum number of accepted connections waiting for a thread.
+     */
+    public int getThread_pool_queue_size() {
+        return this.thread_pool_queue_size;
+    }
+
+    /**
+     * @return The size in bytes of the buffer used to write resources to clients.
+     */
+    public int getBuffer_size() {
+        return this.buffer_size;
+    }
+
+    /**
+     * @return The timeout in milliseconds of blocking reads on a client's socket (0 for no timeout).
+     */
+    public int getSocket_timeout() {
+        return this.socket_timeout;
+    }
+
+    /**
+     * @return The maximum number of pending connections in the server socket's backlog.
+     */
+    public int getAccept_backlog() {
+        return this.accept_backlog;
+    }
+
+    /**
+     * @return The maximum time in milliseconds to wait for the requests in progress when the server is stopped.
+     */
+    public int getShutdown_timeout() {
+        return this.shutdown_timeout;
+    }
+
+    /**
+     * @return A boolean denoting if the server socket is bound with SO_REUSEPORT.
+     */
+    public boolean isReuse_port() {
+        return this.reuse_port;
+    }
+
+    /**
+     * @return A boolean denoting if the server socket is inherited from the parent process.
+     */
+    public boolean isInherit_channel() {
+        return this.inherit_channel;
+    }
+
+    /**
+     * @return A boolean denoting if the requests' heads are parsed strictly.
+     */
+    public boolean isStrict_parsing() {
+        return this.strict_parsing;
+    }
+
+    /**
+     * @return The maximum length in bytes of a request line, in strict parsing mode.
+     */
+    public int getMax_request_line_length() {
+        return this.max_request_line_length;
+    }
+
+    /**
+     * @return The maximum size in bytes of a request's header lines, in strict parsing mode.
+     */
+    public int getMax_header_size() {
+        return this.max_header_size;
+    }
+
+    /**
+     * @return The maximum number of headers of a request, in strict parsing mode.
+     */
+    public int getMax_header_count() {
+        return this.max_header_count;
+    }
+
+    /**
+     * @return The maximum size in bytes of a request's content read in memory (uploads are streamed instead).
+     */
+    public int getMax_content_size() {
+        return this.max_content_size;
+    }
+
+    /**
+     * @return A boolean denoting if listings are generated for directories without an index page.
+     */
+    public boolean isDirectory_listing_enabled() {
+        return this.directory_listing_enabled;
+    }
+
+    /**
+     * @return The default number of entries per page of a directory listing.
+     */
+    public int getDirectory_listing_page_size() {
+        return this.directory_listing_page_size;
+    }
+
+    /**
+     * @return The maximum number of entries per page a client can request for a directory listing.
+     */
+    public int getDirectory_listing_max_page_size() {
+        return this.directory_listing_max_page_size;
+    }
+
+    /**
+     * @return The maximum number of directory snapshots kept in memory.
+     */
+    public int getDirectory_listing_max_cached_directories() {
+        return this.directory_listing_max_cached_directories;
+    }
+
+    /**
+     * @return An unmodifiable map of the reverse proxy's routes: path prefixes and the URLs of their upstream servers.
+     */
+    public Map<String, List<String>> getProxy_routes() {
+        return this.proxy_routes;
+    }
+
+    /**
+     * @return The load balancing strategy of the reverse proxy: "round_robin" or "least_connections".
+     */
+    public String getProxy_balancing() {
+        return this.proxy_balancing;
+    }
+
+    /**
+     * @return The timeout in milliseconds of opening a connection to an upstream server.
+     */
+    public int getProxy_connect_timeout() {
+        return this.proxy_connect_timeout;
+    }
+
+    /**
+     * @return The timeout in milliseconds of reads on a connection to an upstream server.
+     */
+    public int getProxy_read_timeout() {
+        return this.proxy_read_timeout;
+    }
+
+    /**
+     * @return The maximum number of idle keep-alive connections kept per upstream server.
+     */
+    public int getProxy_max_idle_connections() {
+        return this.proxy_max_idle_connections;
+    }
+
+    /**
+     * @return The interval in milliseconds between two health checks of the upstream servers (0 if disabled).
+     */
+    public int getProxy_health_check_interval() {
+        return this.proxy_health_check_interval;
+    }
+
+    /**
+     * @return The path requested on the upstream servers to check their health.
+     */
+    public String getProxy_health_check_path() {
+        return this.proxy_health_check_path;
+    }
+
+    /**
+     * @return A boolean denoting if cacheable proxied responses are kept in the shared response cache.
+     */
+    public boolean isResponse_cache_enabled() {
+        return this.response_cache_enabled;
+    }
+
+    /**
+     * @return The maximum size in bytes of the shared response cache.
+     */
+    public int getResponse_cache_max_bytes() {
+        return this.response_cache_max_bytes;
+    }
+
+    /**
+     * @return The maximum size in bytes of a response kept in the shared response cache.
+     */
+    public int getResponse_cache_max_entry_bytes() {
+        return this.response_cache_max_entry_bytes;
+    }
+
+    /**
+     * @return The maximum time in milliseconds a request waits for the response of an identical request in progress.
+     */
+    public int getResponse_cache_coalescing_timeout() {
+        return this.response_cache_coalescing_timeout;
+    }
+
+    /**
+     * @return An unmodifiable map of the event stream paths and the channels they subscribe to.
+     */
+    public Map<String, String> getSse_routes() {
+        return this.sse_routes;
+    }
+
+    /**
+     * @return The interval in milliseconds between two flushes of the events published to the event streams.
+     */
+    public int getSse_flush_interval() {
+        return this.sse_flush_interval;
+    }
+
+    /**
+     * @return The interval in milliseconds between two heartbeats sent to an idle event stream (0 if disabled).
+     */
+    public int getSse_heartbeat_interval() {
+        return this.sse_heartbeat_interval;
+    }
+
+    /**
+     * @return The time in milliseconds an event stream's client waits before reconnecting.
+     */
+    public int getSse_retry() {
+        return this.sse_retry;
+    }
+
+    /**
+     * @return The maximum number of bytes queued for an event stream's client before it's disconnected.
+     */
+    public int getSse_max_queued_bytes() {
+        return this.sse_max_queued_bytes;
+    }
+
+    /**
+     * @return An unmodifiable map of the WebSocket paths and the channels their connections belong to.
+     */
+    public Map<String, String> getWebsocket_routes() {
+        return this.websocket_routes;
+    }
+
+    /**
+     * @return The maximum size in bytes of a message received from a WebSocket client.
+     */
+    public int getWebsocket_max_message_size() {
+        return this.websocket_max_message_size;
+    }
+
+    /**
+     * @return The maximum number of bytes queued for a WebSocket client before it's disconnected.
+     */
+    public int getWebsocket_max_queued_bytes() {
+        return this.websocket_max_queued_bytes;
+    }
+
+    /**
+     * @return The interval in milliseconds between two pings of the WebSocket clients (0 if disabled).
+     */
+    public int getWebsocket_ping_interval() {
+        return this.websocket_ping_interval;
+    }
+
+    /**
+     * @return A boolean denoting if files can be uploaded and deleted in the upload path.
+     */
+    public boolean isUpload_enabled() {
+        return this.upload_enabled;
+    }
+
+    /**
+     * @return The path prefix of the requests uploading files.
+     */
+    public String getUpload_path() {
+        return this.upload_path;
+    }
+
+    /**
+     * @return The directory uploaded files are stored in.
+     */
+    public String getUpload_directory() {
+        return this.upload_directory;
+    }
+
+    /**
+     * @return The maximum size in bytes of an upload request's content.
+     */
+    public long getUpload_max_size() {
+        return this.upload_max_size;
+    }
+
+    /**
+     * @return A boolean denoting if only the clients on the server's host can upload and delete files.
+     */
+    public boolean isUpload_loopback_only() {
+        return this.upload_loopback_only;
+    }
+
+    /**
+     * @return A boolean denoting if the clients' requests are rate limited.
+     */
+    public boolean isRate_limit_enabled() {
+        return this.rate_limit_enabled;
+    }
+
+    /**
+     * @return The sustained number of requests per second allowed per client (0 if only path prefixes are limited).
+     */
+    public int getRate_limit_requests_per_second() {
+        return this.rate_limit_requests_per_second;
+    }
+
+    /**
+     * @return The number of requests a client can make at once, above its sustained rate.
+     */
+    public int getRate_limit_burst() {
+        return this.rate_limit_burst;
+    }
+
+    /**
+     * @return The maximum number of clients tracked by the rate limiter.
+     */
+    public int getRate_limit_max_clients() {
+        return this.rate_limit_max_clients;
+    }
+
+    /**
+     * @return An unmodifiable map of the rate limited path prefixes and their limits, in the form of RATE/BURST.
+     */
+    public Map<String, String> getRate_limit_routes() {
+        return this.rate_limit_routes;
+    }
+
+    /**
+     * @return A boolean denoting if small static files are served from memory.
+     */
+    public boolean isStatic_cache_enabled() {
+        return this.static_cache_enabled;
+    }
+
+    /**
+     * @return The maximum size in bytes of the static files kept in memory.
+     */
+    public int getStatic_cache_max_bytes() {
+        return this.static_cache_max_bytes;
+    }
+
+    /**
+     * @return The maximum size in bytes of a static file kept in memory.
+     */
+    public int getStatic_cache_max_file_size() {
+        return this.static_cache_max_file_size;
+    }
+
+    /**
+     * @return A boolean denoting if the static files are loaded in memory when the server starts.
+     */
+    public boolean isStatic_cache_preload() {
+        return this.static_cache_preload;
+    }
+
+    /**
+     * @return The path of the default host's bundle, or an empty string if it's served from the public directory.
+     */
+    public String getBundle_file() {
+        return this.bundle_file;
+    }
+
+    /**
+     * @return The number of rounds of synthetic requests handled when the server starts.
+     */
+    public int getWarmup_requests() {
+        return this.warmup_requests;
+    }
+
+    /**
+     * @return A boolean denoting if the server exits once it's warmed up.
+     */
+    public boolean isWarmup_exit() {
+        return this.warmup_exit;
+    }
+
+    /**
+     * @return The path answering the readiness of the server, or an empty string if it's disabled.
+     */
+    public String getReadiness_path() {
+        return this.readiness_path;
+    }
+
+    /**
+     * @return The virtual hosts, the default host first.
+     */
+    public List<VirtualHost> getVirtual_hosts() {
+        return this.virtual_hosts;
+    }
+
+    /**
+     * Get the virtual host serving a request, from its Host header.<br>
+     * The host name (without its port) is looked up in the exact host names, then its parent domains in the
+     * wildcard host names, the most specific first. A request matching no virtual host, or without a Host header,
+     * is served by the default host. Without virtual hosts, the default host is returned without any lookup.
+     * @param host The value of the request's Host header, or null if it wasn't sent.
+     * @return The VirtualHost serving the request.
+     */
+    public VirtualHost getVirtual_host(String host) {
+        if(host == null || this.virtual_hosts.size() == 1)
+            return this.virtual_hosts.get(0);
+        //Remove the port (after an IPv6 address' closing bracket) and the trailing dot of a fully qualified name.
+        host = host.trim().toLowerCase(Locale.ROOT);
+        int colon = host.lastIndexOf(':');
+        if(colon != -1 && colon > host.lastIndexOf(']'))
+            host = host.substring(0, colon);
+        if(host.endsWith("."))
+            host = host.substring(0, host.length() - 1);
+        VirtualHost virtual_host = this.exact_hosts.get(host);
+        for(int dot = host.indexOf('.'); virtual_host == null && dot != -1; dot = host.indexOf('.', dot + 1))
+            virtual_host = this.wildcard_hosts.get(host.substring(dot + 1));
+        return virtual_host != null ? virtual_host : this.virtual_hosts.get(0);
+    }
+
+    /**
+     * @return A boolean denoting if the phases of the requests are timed.
+     */
+    public boolean isTracing_enabled() {
+        return this.tracing_enabled;
+    }
+
+    /**
+     * @return A boolean denoting if the responses include a Server-Timing header.
+     */
+    public boolean isTracing_server_timing() {
+        return this.tracing_server_timing;
+    }
+
+    /**
+     * @return The duration in milliseconds above which a request's phases are logged.
+     */
+    public int getTracing_slow_request_threshold() {
+        return this.tracing_slow_request_threshold;
+    }
+
+    /**
+     * @return A boolean denoting if the admin console is started with the server.
+     */
+    public boolean isAdmin_enabled() {
+        return this.admin_enabled;
+    }
+
+    /**
+     * @return The address the admin console is bound to.
+     */
+    public String getAdmin_address() {
+        return this.admin_address;
+    }
+
+    /**
+     * @return The port number of the admin console.
+     */
+    public int getAdmin_port() {
+        return this.admin_port;
+    }
+
+    /**
+     * Get a copy of the properties this configuration was created from.
+     * @return The configuration properties.
+     */
+    public Properties getProperties() {
+        Properties copy = new Properties();
+        copy.putAll(this.properties);
+        return copy;
+    }
+}
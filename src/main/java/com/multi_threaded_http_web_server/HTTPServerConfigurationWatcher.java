@@ -0,0 +1,91 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Properties;
+
+/**
+ * This class watches the server's configuration file and reloads the configuration when the file changes.<br>
+ * The new configuration is built entirely before replacing the current one, so requests never see a half-applied
+ * configuration. If the file is invalid, the current configuration is kept and the error is reported.
+ * @author Hodaifa98
+ */
+public class HTTPServerConfigurationWatcher implements Runnable {
+
+    //The watched configuration file, and the command line overrides applied on top of it.
+    private final Path configuration_file;
+    private final Properties overrides;
+
+    /**
+     * The HTTPServerConfigurationWatcher class's main constructor.
+     * @param configuration_file The path of the configuration file.
+     * @param overrides Properties taking precedence over the ones in the file (from the command line).
+     */
+    public HTTPServerConfigurationWatcher(Path configuration_file, Properties overrides) {
+        this.configuration_file = configuration_file.toAbsolutePath().normalize();
+        this.overrides = overrides;
+    }
+
+    /**
+     * Start watching the configuration file in a daemon thread.
+     * @return The watcher thread.
+     */
+    public Thread start() {
+        Thread watcher = new Thread(this, "configuration-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        return watcher;
+    }
+
+    /**
+     * Watch the directory of the configuration file and reload the configuration every time the file is modified.
+     */
+    @Override
+    public void run() {
+        //Watching the parent directory (files can't be watched), which also catches files replaced by a rename.
+        try(WatchService watch_service = FileSystems.getDefault().newWatchService()){
+            this.configuration_file.getParent().register(watch_service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            while(true){
+                WatchKey key = watch_service.take();
+                boolean changed = false;
+                for(WatchEvent<?> event : key.pollEvents())
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || this.configuration_file.getFileName().equals(event.context()))
+                        changed = true;
+                if(changed)
+                    this.reload();
+                if(!key.reset()){
+                    System.err.println("Configuration directory is no longer accessible: " + this.configuration_file.getParent());
+                    return;
+                }
+            }
+        } catch (IOException | InterruptedException | ClosedWatchServiceException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * Load the configuration file and replace the server's current configuration with it.
+     * @return A boolean denoting if the configuration was reloaded.
+     */
+    public boolean reload() {
+        try {
+            HTTPServerConfiguration configuration = HTTPServerConfiguration.load(this.configuration_file, this.overrides);
+            HTTPServerInformation.setConfiguration(configuration);
+            System.out.println("Configuration reloaded from: " + this.configuration_file);
+            return true;
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println("Keeping the current configuration, the configuration file is invalid: " + ex.getMessage());
+            return false;
+        }
+    }
+}
@@ -2,12 +2,18 @@ package com.multi_threaded_http_web_server;
 
 
 //Imports.
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * This class contains all HTTP information about the server.<br>
- * Such as: Supported HTTP methods, forbidden directories...
+ * Such as: Supported HTTP methods, forbidden directories...<br>
+ * The configurable values defined here are the defaults of the server's configuration. The current configuration
+ * (read from the configuration file and the command line) is available from getConfiguration().
  * @author Hodaifa98
  */
 public class HTTPServerInformation {
@@ -22,13 +28,9 @@ public class HTTPServerInformation {
     public static final String ALL_HTTP_VERSIONS[] = new String[] {"HTTP/0.9", "HTTP/1.0", "HTTP/1.1", "HTTP/2.0"};
     
     /**
-     * An ArrayList of forbidden directories by the server. Such as configuration directories, or error_pages.
+     * An unmodifiable list of forbidden directories by the server. Such as configuration directories, or error_pages.
      */
-    private static final ArrayList<String> FORBIDDEN_DIRECTORIES = new ArrayList<>();
-    static{
-        FORBIDDEN_DIRECTORIES.add("/config/");
-        FORBIDDEN_DIRECTORIES.add("/error_pages/");
-    }
+    private static final List<String> FORBIDDEN_DIRECTORIES = Collections.unmodifiableList(Arrays.asList("/config/", "/error_pages/"));
     
     /**
      * The public directory of resources in the server.
@@ -44,6 +46,11 @@ public class HTTPServerInformation {
         ERROR_PAGES.put(404, PUBLIC_DIRECTORY + "/error_pages/404.html");
     }
     
+    /**
+     * The path of the error page template, used for the status codes without their own error page.
+     */
+    public static final String ERROR_PAGE_TEMPLATE = PUBLIC_DIRECTORY + "/error_pages/error.html";
+    
     /**
      * A string denoting the supported HTTP version by the server
      */
@@ -60,14 +67,31 @@ public class HTTPServerInformation {
      */
     public static final HashMap<Integer, String> SUPPORTED_HTTP_STATUS = new HashMap<>();
     static{
+        SUPPORTED_HTTP_STATUS.put(100, "Continue");
+        SUPPORTED_HTTP_STATUS.put(101, "Switching Protocols");
         SUPPORTED_HTTP_STATUS.put(200, "OK");
+        SUPPORTED_HTTP_STATUS.put(201, "Created");
+        SUPPORTED_HTTP_STATUS.put(202, "Accepted");
         SUPPORTED_HTTP_STATUS.put(204, "No Content");
+        SUPPORTED_HTTP_STATUS.put(301, "Moved Permanently");
+        SUPPORTED_HTTP_STATUS.put(304, "Not Modified");
         SUPPORTED_HTTP_STATUS.put(400, "Bad Request");
         SUPPORTED_HTTP_STATUS.put(403, "Forbidden");
         SUPPORTED_HTTP_STATUS.put(404, "Not Found");
+        SUPPORTED_HTTP_STATUS.put(405, "Method Not Allowed");
+        SUPPORTED_HTTP_STATUS.put(411, "Length Required");
+        SUPPORTED_HTTP_STATUS.put(413, "Payload Too Large");
+        SUPPORTED_HTTP_STATUS.put(414, "URI Too Long");
         SUPPORTED_HTTP_STATUS.put(415, "Unsupported Media Type");
+        SUPPORTED_HTTP_STATUS.put(417, "Expectation Failed");
+        SUPPORTED_HTTP_STATUS.put(426, "Upgrade Required");
+        SUPPORTED_HTTP_STATUS.put(429, "Too Many Requests");
+        SUPPORTED_HTTP_STATUS.put(431, "Request Header Fields Too Large");
         SUPPORTED_HTTP_STATUS.put(500, "Internal Server Error");
         SUPPORTED_HTTP_STATUS.put(501, "Not Implemented");
+        SUPPORTED_HTTP_STATUS.put(502, "Bad Gateway");
+        SUPPORTED_HTTP_STATUS.put(503, "Service Unavailable");
+        SUPPORTED_HTTP_STATUS.put(504, "Gateway Timeout");
         SUPPORTED_HTTP_STATUS.put(505, "HTTP Version Not Supported");
     }
     
@@ -76,14 +100,359 @@ public class HTTPServerInformation {
      */
     public static final String INDEX_PAGE = "index.html";
     
+    /**
+     * A boolean denoting if the server generates a listing for requested directories that don't contain an index page.<br>
+     * If disabled, requesting such a directory results in a 403 (Forbidden) response.
+     */
+    public static final boolean DIRECTORY_LISTING_ENABLED = true;
+    
+    /**
+     * The default number of entries per page of a directory listing.
+     */
+    public static final int DIRECTORY_LISTING_PAGE_SIZE = 100;
+    
+    /**
+     * The maximum number of entries per page a client can request for a directory listing.
+     */
+    public static final int DIRECTORY_LISTING_MAX_PAGE_SIZE = 1000;
+    
+    /**
+     * The maximum number of directory snapshots kept in memory for directory listings.
+     */
+    public static final int DIRECTORY_LISTING_MAX_CACHED_DIRECTORIES = 1024;
+    
+    /**
+     * The number of threads kept in the thread pool handling clients' requests.
+     */
+    public static final int THREAD_POOL_CORE_SIZE = 50;
+    
+    /**
+     * The maximum number of threads of the thread pool handling clients' requests.
+     */
+    public static final int THREAD_POOL_MAX_SIZE = 200;
+    
+    /**
+     * The maximum number of accepted connections waiting for a thread of the thread pool.
+     */
+    public static final int THREAD_POOL_QUEUE_SIZE = 1000;
+    
+    /**
+     * The size in bytes of the buffer used to write resources to clients' output streams.
+     */
+    public static final int BUFFER_SIZE = 8192;
+    
+    /**
+     * The timeout in milliseconds of blocking reads on a client's socket.
+     */
+    public static final int SOCKET_TIMEOUT = 30000;
+    
+    /**
+     * The maximum number of pending connections in the server socket's backlog.
+     */
+    public static final int ACCEPT_BACKLOG = 1024;
+    
+    /**
+     * The maximum time in milliseconds to wait for the requests in progress when the server is stopped.
+     */
+    public static final int SHUTDOWN_TIMEOUT = 30000;
+    
+    /**
+     * A boolean denoting if the server socket is bound with SO_REUSEPORT, allowing another server process to listen
+     * on the same port (for rolling restarts).
+     */
+    public static final boolean REUSE_PORT = false;
+    
+    /**
+     * A boolean denoting if the server socket is inherited from the parent process (System.inheritedChannel())
+     * instead of being bound by the server.
+     */
+    public static final boolean INHERIT_CHANNEL = false;
+    
+    /**
+     * A boolean denoting if the requests' heads are parsed strictly: malformed request lines and header lines, and
+     * ambiguous content framing, are rejected before the request is handled. Off by default, as it refuses requests
+     * that lenient parsing accepts.
+     */
+    public static final boolean STRICT_PARSING = false;
+    
+    /**
+     * The maximum length in bytes of a request line, in strict parsing mode (longer ones get a 414 (URI Too Long)).
+     */
+    public static final int MAX_REQUEST_LINE_LENGTH = 8 * 1024;
+    
+    /**
+     * The maximum size in bytes of a request's header lines, in strict parsing mode (larger ones get a 431 (Request
+     * Header Fields Too Large)).
+     */
+    public static final int MAX_HEADER_SIZE = 32 * 1024;
+    
+    /**
+     * The maximum number of headers of a request, in strict parsing mode (more get a 431 (Request Header Fields Too Large)).
+     */
+    public static final int MAX_HEADER_COUNT = 100;
+    
+    /**
+     * The maximum size in bytes of a request's content read in memory, for requests other than uploads (larger ones get
+     * a 413 (Payload Too Large)).
+     */
+    public static final int MAX_CONTENT_SIZE = 1024 * 1024;
+    
+    /**
+     * The load balancing strategy of the reverse proxy between the upstream servers of a route:
+     * "round_robin" or "least_connections".
+     */
+    public static final String PROXY_BALANCING = "round_robin";
+    
+    /**
+     * The timeout in milliseconds of opening a connection to an upstream server.
+     */
+    public static final int PROXY_CONNECT_TIMEOUT = 5000;
+    
+    /**
+     * The timeout in milliseconds of reads on a connection to an upstream server.
+     */
+    public static final int PROXY_READ_TIMEOUT = 30000;
+    
+    /**
+     * The maximum number of idle keep-alive connections kept per upstream server.
+     */
+    public static final int PROXY_MAX_IDLE_CONNECTIONS = 32;
+    
+    /**
+     * The interval in milliseconds between two health checks of the upstream servers (0 to disable health checks).
+     */
+    public static final int PROXY_HEALTH_CHECK_INTERVAL = 10000;
+    
+    /**
+     * The path requested on the upstream servers to check their health.
+     */
+    public static final String PROXY_HEALTH_CHECK_PATH = "/";
+    
+    /**
+     * A boolean denoting if cacheable proxied responses are kept in the shared response cache.
+     */
+    public static final boolean RESPONSE_CACHE_ENABLED = true;
+    
+    /**
+     * The maximum size in bytes of the shared response cache.
+     */
+    public static final int RESPONSE_CACHE_MAX_BYTES = 64 * 1024 * 1024;
+    
+    /**
+     * The maximum size in bytes of a response kept in the shared response cache.
+     */
+    public static final int RESPONSE_CACHE_MAX_ENTRY_BYTES = 1024 * 1024;
+    
+    /**
+     * The maximum time in milliseconds a request waits for the response of an identical request in progress.
+     */
+    public static final int RESPONSE_CACHE_COALESCING_TIMEOUT = 30000;
+    
+    /**
+     * The interval in milliseconds between two flushes of the events published to the event streams.
+     */
+    public static final int SSE_FLUSH_INTERVAL = 50;
+    
+    /**
+     * The interval in milliseconds between two heartbeats sent to an idle event stream (0 to disable heartbeats).
+     */
+    public static final int SSE_HEARTBEAT_INTERVAL = 15000;
+    
+    /**
+     * The time in milliseconds an event stream's client waits before reconnecting.
+     */
+    public static final int SSE_RETRY = 3000;
+    
+    /**
+     * The maximum number of bytes queued for an event stream's client before it's disconnected.
+     */
+    public static final int SSE_MAX_QUEUED_BYTES = 1024 * 1024;
+    
+    /**
+     * The maximum size in bytes of a message received from a WebSocket client.
+     */
+    public static final int WEBSOCKET_MAX_MESSAGE_SIZE = 1024 * 1024;
+    
+    /**
+     * The maximum number of bytes queued for a WebSocket client before it's disconnected.
+     */
+    public static final int WEBSOCKET_MAX_QUEUED_BYTES = 1024 * 1024;
+    
+    /**
+     * The interval in milliseconds between two pings of the WebSocket clients (0 to disable pings).
+     */
+    public static final int WEBSOCKET_PING_INTERVAL = 30000;
+    
+    /**
+     * A boolean denoting if files can be uploaded (PUT, multipart/form-data POST) and deleted (DELETE) in the upload path.
+     */
+    public static final boolean UPLOAD_ENABLED = false;
+    
+    /**
+     * The path prefix of the requests uploading files.
+     */
+    public static final String UPLOAD_PATH = "/uploads/";
+    
+    /**
+     * The directory uploaded files are stored in.
+     */
+    public static final String UPLOAD_DIRECTORY = PUBLIC_DIRECTORY + "/uploads";
+    
+    /**
+     * The maximum size in bytes of an upload request's content.
+     */
+    public static final long UPLOAD_MAX_SIZE = 100L * 1024 * 1024;
+    
+    /**
+     * A boolean denoting if only the clients on the server's host can upload and delete files.
+     */
+    public static final boolean UPLOAD_LOOPBACK_ONLY = true;
+    
+    /**
+     * A boolean denoting if the clients' requests are rate limited.
+     */
+    public static final boolean RATE_LIMIT_ENABLED = false;
+    
+    /**
+     * The sustained number of requests per second allowed per client (0 to only limit the configured path prefixes).
+     */
+    public static final int RATE_LIMIT_REQUESTS_PER_SECOND = 100;
+    
+    /**
+     * The number of requests a client can make at once, above its sustained rate.
+     */
+    public static final int RATE_LIMIT_BURST = 200;
+    
+    /**
+     * The maximum number of clients tracked by the rate limiter.
+     */
+    public static final int RATE_LIMIT_MAX_CLIENTS = 100000;
+    
+    /**
+     * A boolean denoting if small static files are served from memory, with their ETag and compressed variant.
+     */
+    public static final boolean STATIC_CACHE_ENABLED = true;
+    
+    /**
+     * The maximum size in bytes of the static files kept in memory.
+     */
+    public static final int STATIC_CACHE_MAX_BYTES = 64 * 1024 * 1024;
+    
+    /**
+     * The maximum size in bytes of a static file kept in memory.
+     */
+    public static final int STATIC_CACHE_MAX_FILE_SIZE = 1024 * 1024;
+    
+    /**
+     * A boolean denoting if the static files are loaded in memory when the server starts.
+     */
+    public static final boolean STATIC_CACHE_PRELOAD = true;
+    
+    /**
+     * The path of the bundle the public directory is served from, built when it doesn't exist (empty to serve the
+     * public directory's files).
+     */
+    public static final String BUNDLE_FILE = "";
+    
+    /**
+     * The number of rounds of synthetic requests handled when the server starts, to warm up the JIT (0 to disable).
+     */
+    public static final int WARMUP_REQUESTS = 0;
+    
+    /**
+     * A boolean denoting if the server exits once it's warmed up (the training run of an AppCDS archive).
+     */
+    public static final boolean WARMUP_EXIT = false;
+    
+    /**
+     * The path answering 200 (OK) once the server is warmed up, and 503 (Service Unavailable) before (empty to disable).
+     */
+    public static final String READINESS_PATH = "/ready";
+    
+    /**
+     * A boolean denoting if the phases of the requests are timed, and their trace context propagated to upstream servers.
+     */
+    public static final boolean TRACING_ENABLED = false;
+    
+    /**
+     * A boolean denoting if the responses include a Server-Timing header with the timing of the request's phases.
+     */
+    public static final boolean TRACING_SERVER_TIMING = false;
+    
+    /**
+     * The duration in milliseconds above which a request's phases are logged (0 to log every request).
+     */
+    public static final int TRACING_SLOW_REQUEST_THRESHOLD = 1000;
+    
+    /**
+     * A boolean denoting if the admin console is started with the server.
+     */
+    public static final boolean ADMIN_ENABLED = false;
+    
+    /**
+     * The address the admin console is bound to. The loopback address keeps it private to the server's host.
+     */
+    public static final String ADMIN_ADDRESS = "127.0.0.1";
+    
+    /**
+     * The port number of the admin console.
+     */
+    public static final int ADMIN_PORT = 8081;
+    
+    /**
+     * The default path of the server's configuration file.
+     */
+    public static final String CONFIGURATION_FILE = PUBLIC_DIRECTORY + "/config/server.properties";
+    
+    //The listeners notified when the configuration is replaced.
+    private static final CopyOnWriteArrayList<Consumer<HTTPServerConfiguration>> CONFIGURATION_LISTENERS = new CopyOnWriteArrayList<>();
+    
+    //The current configuration of the server. Replaced as a whole, never modified.
+    private static volatile HTTPServerConfiguration configuration = new HTTPServerConfiguration();
+    
     //Private empty constructor to prevent this class from being instantiated.
     private HTTPServerInformation(){}
     
     /**
      * A getter of the server's forbidden directories such as configuration directories, or error_pages.
-     * @return An ArrayList of the forbidden directories by the server.
+     * @return An unmodifiable list of the forbidden directories by the server.
      */
-    public static ArrayList<String> getFORBIDDEN_DIRECTORIES() {
+    public static List<String> getFORBIDDEN_DIRECTORIES() {
         return FORBIDDEN_DIRECTORIES;
     }
+    
+    /**
+     * Get the current configuration of the server.<br>
+     * A request should get the configuration once and use that same snapshot until it's done.
+     * @return The current HTTPServerConfiguration.
+     */
+    public static HTTPServerConfiguration getConfiguration() {
+        return configuration;
+    }
+    
+    /**
+     * Replace the current configuration of the server, and notify the configuration listeners.
+     * @param new_configuration The new HTTPServerConfiguration.
+     */
+    public static void setConfiguration(HTTPServerConfiguration new_configuration) {
+        configuration = new_configuration;
+        for(Consumer<HTTPServerConfiguration> listener : CONFIGURATION_LISTENERS)
+            listener.accept(new_configuration);
+    }
+    
+    /**
+     * Add a listener notified every time the configuration of the server is replaced.
+     * @param listener A consumer of the new configuration.
+     */
+    public static void addConfigurationListener(Consumer<HTTPServerConfiguration> listener) {
+        CONFIGURATION_LISTENERS.add(listener);
+    }
+    
+    /**
+     * Remove a configuration listener.
+     * @param listener The listener to remove.
+     */
+    public static void removeConfigurationListener(Consumer<HTTPServerConfiguration> listener) {
+        CONFIGURATION_LISTENERS.remove(listener);
+    }
 }
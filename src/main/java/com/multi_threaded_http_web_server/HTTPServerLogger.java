@@ -3,7 +3,9 @@ package com.multi_threaded_http_web_server;
 
 /**
  * This class logs all information regarding the server:<br>
- * Errors, HTTP requests and responses...
+ * Errors, HTTP requests and responses...<br>
+ * Debug logging (such as the information of every client) is disabled by default, and can be toggled at runtime
+ * from the admin console.
  * @author Hodaifa98
  */
 public class HTTPServerLogger {
@@ -17,6 +19,34 @@ public class HTTPServerLogger {
      */
     public static final String ERROR_DIRECTORY = "";
     
+    //A boolean denoting if debug messages are logged.
+    private static volatile boolean is_debug_enabled = false;
+    
     //Private empty constructor to prevent this class from being instantiated.
     private HTTPServerLogger(){}
+    
+    /**
+     * @return A boolean denoting if debug messages are logged.
+     */
+    public static boolean isIs_debug_enabled() {
+        return is_debug_enabled;
+    }
+    
+    /**
+     * Enable or disable the logging of debug messages.
+     * @param enabled A boolean denoting if debug messages are logged.
+     */
+    public static void setIs_debug_enabled(boolean enabled) {
+        is_debug_enabled = enabled;
+    }
+    
+    /**
+     * Log a debug message to the console output, if debug logging is enabled.<br>
+     * Callers building an expensive message should check isIs_debug_enabled() first.
+     * @param message The message to log.
+     */
+    public static void debug(String message) {
+        if(is_debug_enabled)
+            System.out.println(message);
+    }
 }
@@ -8,6 +8,8 @@ package com.multi_threaded_http_web_server;
 public enum HTTP_Method {
     GET,
     POST,
+    PUT,
+    DELETE,
     HEAD,
     OPTIONS,
     UNSOPPORTED
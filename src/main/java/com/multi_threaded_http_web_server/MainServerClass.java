@@ -1,5 +1,11 @@
 package com.multi_threaded_http_web_server;
 
+
+//Imports.
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
 /**
  * Main class for the Multi Threaded HTTP Web Server.
  * @author Hodaifa98
@@ -9,12 +15,35 @@ package com.multi_threaded_http_web_server;
 public class MainServerClass {
 
     /**
-     * @param args the command line arguments
+     * @param args the command line arguments, in the form of --key=value.<br>
+     * --config=PATH sets the configuration file (default: www/config/server.properties). Any other argument
+     * overrides the configuration property of the same name, for example: --port=9090 --thread_pool.max_size=400
      */
     public static void main(String[] args) {
         System.out.println("STARTING...");
+        try {
+            //Load the configuration file, with the command line arguments overriding its properties.
+            Properties overrides = HTTPServerConfiguration.parseArguments(args);
+            String configuration_path = (String) overrides.remove("config");
+            Path configuration_file = Paths.get(configuration_path != null ? configuration_path : HTTPServerInformation.CONFIGURATION_FILE);
+            HTTPServerInformation.setConfiguration(HTTPServerConfiguration.load(configuration_file, overrides));
+            //Reload the configuration whenever its file changes.
+            new HTTPServerConfigurationWatcher(configuration_file, overrides).start();
+        } catch (Exception ex) {
+            System.err.println("Invalid configuration: " + ex.getMessage());
+            System.exit(1);
+        }
         HTTPServer server = new HTTPServer();
+        //Stop the server gracefully when the process is terminated (SIGTERM, Ctrl+C): stop accepting connections,
+        //and let the requests in progress complete, up to the configured shutdown timeout.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.stop(HTTPServerInformation.getConfiguration().getShutdown_timeout());
+            } catch (InterruptedException ex) {
+                System.err.println(ex.getMessage());
+            }
+        }, "http-shutdown"));
         server.startServer();
     }
-    
+
 }
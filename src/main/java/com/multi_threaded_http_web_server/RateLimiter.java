@@ -0,0 +1,215 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A per-client rate limiter: every client address gets a token bucket of a number of requests per second with
+ * a burst, for all requests and optionally for the requests of path prefixes (rate_limit_route./PREFIX in the
+ * configuration).<br>
+ * A bucket is a single AtomicLong updated without locks, using the generic cell rate algorithm: it holds the
+ * theoretical arrival time of the next request, and a request is allowed if it's no earlier than that time minus
+ * the burst's tolerance. The buckets are kept in a concurrent table bounded to a maximum number of clients, and the
+ * buckets of idle clients (whose bucket is full again) are evicted periodically. While the table is full, a new
+ * client shares the bucket of its network prefix (/24 for IPv4, /64 for IPv6) instead, and once the prefixes' table is
+ * full too, a single bucket shared by all the other new clients.<br>
+ * The rate limiter is rebuilt when its configuration changes.
+ * @author Hodaifa98
+ */
+public class RateLimiter {
+
+    //The interval in milliseconds between two evictions of the idle clients' buckets.
+    private static final long EVICTION_INTERVAL = 10000;
+
+    //The current rate limiter, built from the current configuration.
+    private static volatile RateLimiter instance;
+
+    //The thread evicting the idle clients' buckets of the current rate limiter.
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor((r) -> {
+        Thread t = new Thread(r, "rate-limit-evictor");
+        t.setDaemon(true);
+        return t;
+    });
+    static{
+        EVICTOR.scheduleWithFixedDelay(() -> {
+            RateLimiter current = instance;
+            if(current != null)
+                current.evictIdleClients();
+        }, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A rate limit applying to the requests whose resource starts with a prefix, and the buckets of its clients.
+     */
+    private static final class Limit {
+        private final String prefix;
+        //The time in nanoseconds between two requests at the sustained rate, and the burst's tolerance.
+        private final long emission_interval;
+        private final long tolerance;
+        private final ConcurrentHashMap<InetAddress, AtomicLong> buckets = new ConcurrentHashMap<>();
+        //The buckets of the network prefixes of the new clients while the table is full, and the bucket shared by the
+        //new clients once the prefixes' table is full too.
+        private final ConcurrentHashMap<InetAddress, AtomicLong> prefix_buckets = new ConcurrentHashMap<>();
+        private final AtomicLong overflow_bucket = new AtomicLong(System.nanoTime());
+
+        private Limit(String prefix, int requests_per_second, int burst) {
+            this.prefix = prefix;
+            this.emission_interval = TimeUnit.SECONDS.toNanos(1) / requests_per_second;
+            this.tolerance = this.emission_interval * burst;
+        }
+    }
+
+    //The configuration the rate limiter was built from (or a later one with the same rate limiting settings).
+    private volatile HTTPServerConfiguration configuration;
+
+    //The limits of the path prefixes (the longest prefix first), and the limit of all requests (or null).
+    private final List<Limit> route_limits = new ArrayList<>();
+    private final Limit global_limit;
+    private final int max_clients;
+
+    /**
+     * Build a rate limiter from the settings of a configuration.
+     * @param configuration The server's configuration.
+     */
+    public RateLimiter(HTTPServerConfiguration configuration) {
+        this.configuration = configuration;
+        this.max_clients = configuration.getRate_limit_max_clients();
+        this.global_limit = configuration.getRate_limit_requests_per_second() > 0
+                ? new Limit("/", configuration.getRate_limit_requests_per_second(), configuration.getRate_limit_burst()) : null;
+        for(Map.Entry<String, String> route : configuration.getRate_limit_routes().entrySet()){
+            String[] rate_and_burst = route.getValue().split("/");
+            this.route_limits.add(new Limit(route.getKey(), Integer.parseInt(rate_and_burst[0].trim()), Integer.parseInt(rate_and_burst[1].trim())));
+        }
+        this.route_limits.sort(Comparator.comparingInt((Limit l) -> l.prefix.length()).reversed());
+    }
+
+    /**
+     * Get the rate limiter of the current configuration, or null if rate limiting is disabled. The rate limiter is
+     * rebuilt (and its buckets reset) when the rate limiting settings of the configuration change.
+     * @return The current RateLimiter, or null.
+     */
+    public static RateLimiter getInstance() {
+        HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+        RateLimiter current = instance;
+        //Most of the time, the configuration hasn't changed since the rate limiter was built.
+        if(current != null && current.configuration == configuration)
+            return configuration.isRate_limit_enabled() ? current : null;
+        synchronized(RateLimiter.class){
+            current = instance;
+            if(current == null || !current.hasSameSettings(configuration))
+                instance = new RateLimiter(configuration);
+            else
+                current.configuration = configuration;
+            return configuration.isRate_limit_enabled() ? instance : null;
+        }
+    }
+
+    /**
+     * Count a request of a client, and check if it's within the client's rate limits.
+     * @param client The address of the client.
+     * @param resource The requested resource.
+     * @return 0 if the request is allowed, otherwise the time in nanoseconds until the client can make
+     * another request.
+     */
+    public long acquire(InetAddress client, String resource) {
+        long now = System.nanoTime();
+        //The first matching route's limit applies in addition to the limit of all requests.
+        if(resource != null){
+            for(Limit limit : this.route_limits){
+                if(resource.startsWith(limit.prefix)){
+                    long wait = this.acquire(limit, client, now);
+                    if(wait > 0)
+                        return wait;
+                    break;
+                }
+            }
+        }
+        return this.global_limit != null ? this.acquire(this.global_limit, client, now) : 0;
+    }
+
+    /**
+     * Take a token from the bucket of a client, with a compare and set loop on its theoretical arrival time.
+     * @return 0 if the request is allowed, otherwise the time in nanoseconds until the next token.
+     */
+    private long acquire(Limit limit, InetAddress client, long now) {
+        AtomicLong bucket = limit.buckets.get(client);
+        if(bucket == null){
+            //Keep the tables bounded: while the clients' table is full (until the next eviction), a new client is
+            //limited by the bucket of its network prefix.
+            if(limit.buckets.size() < this.max_clients)
+                bucket = limit.buckets.computeIfAbsent(client, (address) -> new AtomicLong(now));
+            else{
+                InetAddress prefix = getPrefix(client);
+                bucket = limit.prefix_buckets.get(prefix);
+                if(bucket == null)
+                    bucket = limit.prefix_buckets.size() < this.max_clients
+                            ? limit.prefix_buckets.computeIfAbsent(prefix, (address) -> new AtomicLong(now)) : limit.overflow_bucket;
+            }
+        }
+        while(true){
+            long arrival_time = bucket.get();
+            long next_arrival_time = Math.max(arrival_time, now) + limit.emission_interval;
+            if(next_arrival_time - now > limit.tolerance)
+                return next_arrival_time - now - limit.tolerance;
+            if(bucket.compareAndSet(arrival_time, next_arrival_time))
+                return 0;
+        }
+    }
+
+    //Evict the buckets of the idle clients of every limit.
+    private void evictIdleClients() {
+        long now = System.nanoTime();
+        if(this.global_limit != null)
+            this.evictIdleClients(this.global_limit, now);
+        for(Limit limit : this.route_limits)
+            this.evictIdleClients(limit, now);
+    }
+
+    //Evict the buckets that are full again: a new bucket would behave the same.
+    private void evictIdleClients(Limit limit, long now) {
+        limit.buckets.values().removeIf((bucket) -> bucket.get() - now <= 0);
+        limit.prefix_buckets.values().removeIf((bucket) -> bucket.get() - now <= 0);
+    }
+
+    //Get the network prefix of a client's address: its /24 for IPv4, or its /64 for IPv6.
+    private static InetAddress getPrefix(InetAddress client) {
+        byte[] address = client.getAddress();
+        for(int i = address.length == 4 ? 3 : 8; i < address.length; i++)
+            address[i] = 0;
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (UnknownHostException ex) {
+            //Only thrown for an address of an invalid length.
+            return client;
+        }
+    }
+
+    /**
+     * @return The number of clients tracked by the rate limiter.
+     */
+    public int getClient_count() {
+        int count = this.global_limit != null ? this.global_limit.buckets.size() : 0;
+        for(Limit limit : this.route_limits)
+            count = Math.max(count, limit.buckets.size());
+        return count;
+    }
+
+    //Check if a configuration has the same rate limiting settings as this rate limiter's configuration.
+    private boolean hasSameSettings(HTTPServerConfiguration other) {
+        return this.configuration.getRate_limit_requests_per_second() == other.getRate_limit_requests_per_second()
+                && this.configuration.getRate_limit_burst() == other.getRate_limit_burst()
+                && this.configuration.getRate_limit_max_clients() == other.getRate_limit_max_clients()
+                && this.configuration.getRate_limit_routes().equals(other.getRate_limit_routes());
+    }
+}
@@ -0,0 +1,172 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The timing of a request's phases, and its W3C trace context.<br>
+ * A trace is only created when tracing is enabled: the request handling code checks for a null trace, so that
+ * tracing costs nothing more than that check when it's disabled. The time between two calls to end() is added to
+ * the ended phase, so the phases add up to the request's total time.<br>
+ * The trace id is taken from the request's traceparent header (or generated), and the request gets its own span id,
+ * which is propagated to upstream servers as the parent of their spans. Per the specification: <b>W3C Trace Context</b>.
+ * @author Hodaifa98
+ */
+public final class RequestTrace {
+
+    /**
+     * The phases of a request.
+     */
+    public enum Phase {
+        /** Waiting in the thread pool's queue, from the connection's accept to its handling. */
+        QUEUE,
+        /** Reading and parsing the request's line, headers and content. */
+        READ,
+        /** Rate limiting, and finding the request's handler. */
+        ROUTE,
+        /** Resolving the requested resource and its status (the file system calls). */
+        STATUS,
+        /** Writing the response's status line and headers. */
+        HEADERS,
+        /** Writing the response's content. */
+        CONTENT,
+        /** Forwarding the request to an upstream server and relaying its response (or serving it from the cache). */
+        PROXY;
+
+        //The name of the phase in the Server-Timing header and the slow request log.
+        private final String metric_name = this.name().toLowerCase();
+    }
+
+    //The phases' durations in nanoseconds, the start of the request (its accept) and the end of the last phase.
+    private final long[] durations = new long[Phase.values().length];
+    private final long start;
+    private long mark;
+
+    //The trace context: the trace id, the parent's span id (or null), this request's span id and the trace flags.
+    private String trace_id;
+    private String parent_id = null;
+    private final String span_id = randomHex(8);
+    private String flags = "01";
+
+    private RequestTrace(long start) {
+        this.start = start;
+        this.mark = start;
+        this.trace_id = randomHex(16);
+    }
+
+    /**
+     * Start the trace of a request, if tracing is enabled.
+     * @param accepted_at The time the request's connection was accepted, from System.nanoTime().
+     * @return A new RequestTrace, or null if tracing is disabled.
+     */
+    public static RequestTrace start(long accepted_at) {
+        if(!HTTPServerInformation.getConfiguration().isTracing_enabled())
+            return null;
+        return new RequestTrace(accepted_at);
+    }
+
+    /**
+     * Join the trace of the request's traceparent header, once the request is read. An invalid traceparent header
+     * is ignored, and the request starts a new trace.
+     * @param request The client's HTTPRequest.
+     */
+    public void continueTrace(HTTPRequest request) {
+        String traceparent = request.getRequest_header(HTTPHeaders.TRACEPARENT);
+        if(traceparent == null)
+            return;
+        traceparent = traceparent.trim();
+        //A traceparent header is version-trace_id-parent_id-flags, in lowercase hexadecimal. Version ff and
+        //all-zero ids are invalid.
+        if(!traceparent.matches("[0-9a-f]{2}-[0-9a-f]{32}-[0-9a-f]{16}-[0-9a-f]{2}.*") || traceparent.startsWith("ff")
+                || traceparent.contains("-00000000000000000000000000000000-") || traceparent.contains("-0000000000000000-"))
+            return;
+        String[] fields = traceparent.split("-");
+        this.trace_id = fields[1];
+        this.parent_id = fields[2];
+        this.flags = fields[3].substring(0, 2);
+    }
+
+    /**
+     * End a phase: the time since the end of the previous phase is added to it.
+     * @param phase The ended phase.
+     */
+    public void end(Phase phase) {
+        long now = System.nanoTime();
+        this.durations[phase.ordinal()] += now - this.mark;
+        this.mark = now;
+    }
+
+    /**
+     * @return The traceparent header value propagated to upstream servers: this request's span is their parent.
+     */
+    public String getTraceparent() {
+        return "00-" + this.trace_id + "-" + this.span_id + "-" + this.flags;
+    }
+
+    /**
+     * @return The trace id of the request.
+     */
+    public String getTrace_id() {
+        return this.trace_id;
+    }
+
+    /**
+     * Get the Server-Timing header value of the phases ended so far, in milliseconds.
+     * Per the specification: <b>W3C Server Timing</b>.
+     * @return A string denoting the Server-Timing header value.
+     */
+    public String getServer_timing() {
+        StringBuilder server_timing = new StringBuilder(128);
+        for(Phase phase : Phase.values()){
+            if(this.durations[phase.ordinal()] == 0)
+                continue;
+            if(server_timing.length() > 0)
+                server_timing.append(", ");
+            server_timing.append(phase.metric_name).append(";dur=").append(toMilliseconds(this.durations[phase.ordinal()]));
+        }
+        return server_timing.toString();
+    }
+
+    /**
+     * Finish the trace of a request, and log its phases if it took longer than the slow request threshold.
+     * @param request The client's HTTPRequest, or null if it couldn't be read.
+     * @param status The response's status code, or 0 if it's unknown (such as a proxied response).
+     */
+    public void finish(HTTPRequest request, int status) {
+        long total = System.nanoTime() - this.start;
+        if(total < HTTPServerInformation.getConfiguration().getTracing_slow_request_threshold() * 1000000L)
+            return;
+        StringBuilder log = new StringBuilder(256);
+        log.append("Slow request: ").append(request != null ? request.getRequest_line() : "(unreadable)");
+        log.append(" -> ").append(status != 0 ? Integer.toString(status) : "-");
+        log.append(" in ").append(toMilliseconds(total)).append(" ms (");
+        for(Phase phase : Phase.values())
+            if(this.durations[phase.ordinal()] != 0)
+                log.append(phase.metric_name).append(' ').append(toMilliseconds(this.durations[phase.ordinal()])).append(", ");
+        log.append("trace ").append(this.trace_id);
+        if(this.parent_id != null)
+            log.append(", parent ").append(this.parent_id);
+        log.append(", span ").append(this.span_id).append(')');
+        System.err.println(log);
+    }
+
+    //Format a duration in nanoseconds as milliseconds, with 3 decimals.
+    private static String toMilliseconds(long nanoseconds) {
+        long microseconds = nanoseconds / 1000;
+        String decimals = Long.toString(1000 + microseconds % 1000).substring(1);
+        return microseconds / 1000 + "." + decimals;
+    }
+
+    //Generate a random, non-zero id of a number of bytes, in lowercase hexadecimal.
+    private static String randomHex(int bytes) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder id = new StringBuilder(bytes * 2);
+        for(int i = 0; i < bytes * 2; i++)
+            id.append(Character.forDigit(random.nextInt(16), 16));
+        //An all-zero id is invalid.
+        if(id.toString().matches("0+"))
+            id.setCharAt(id.length() - 1, '1');
+        return id.toString();
+    }
+}
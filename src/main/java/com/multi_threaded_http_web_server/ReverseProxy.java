@@ -0,0 +1,572 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The reverse proxy forwards the requests whose resource starts with one of the configured path prefixes
+ * (proxy_route./PREFIX/ in the configuration) to upstream HTTP/1.1 servers, and streams their responses back
+ * to the client without buffering them.<br>
+ * Requests are balanced between the healthy upstream servers of a route (round robin or least connections),
+ * using pooled keep-alive connections. The upstream servers are health checked periodically.<br>
+ * The reverse proxy is rebuilt when its configuration changes.
+ * @author Hodaifa98
+ */
+public class ReverseProxy {
+
+    //Hop-by-hop headers, which apply to a single connection and are not forwarded. Per <b>RFC 7230, section 6.1</b>.
+    private static final Set<String> HOP_BY_HOP_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "keep-alive", "proxy-connection", "te", "trailer", "transfer-encoding", "upgrade", "expect"));
+
+    //The idempotent methods, whose requests can be sent again if they may have been processed. Per <b>RFC 9110,
+    //section 9.2.2</b>.
+    private static final Set<String> IDEMPOTENT_METHODS = new HashSet<>(Arrays.asList(
+            "GET", "HEAD", "PUT", "DELETE", "OPTIONS", "TRACE"));
+
+    //The maximum length of a status line or header line read from an upstream server.
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    //The current reverse proxy, built from the current configuration.
+    private static volatile ReverseProxy instance;
+
+    /**
+     * A path prefix and the upstream servers its requests are balanced between.
+     */
+    private static final class Route {
+        private final String prefix;
+        private final UpstreamServer[] upstreams;
+        private final AtomicInteger next = new AtomicInteger();
+
+        private Route(String prefix, UpstreamServer[] upstreams){
+            this.prefix = prefix;
+            this.upstreams = upstreams;
+        }
+    }
+
+    //The configuration the reverse proxy was built from (or a later one with the same proxy settings).
+    private volatile HTTPServerConfiguration configuration;
+
+    //The routes, the longest prefix first, and all the upstream servers (shared by the routes using the same URL).
+    private final List<Route> routes = new ArrayList<>();
+    private final Map<String, UpstreamServer> upstream_servers = new HashMap<>();
+
+    //The health checks' thread, or null if there is nothing to check.
+    private final ScheduledExecutorService health_checker;
+
+    /**
+     * Build a reverse proxy from the routes and settings of a configuration.
+     * @param configuration The server's configuration.
+     */
+    public ReverseProxy(HTTPServerConfiguration configuration) {
+        this.configuration = configuration;
+        for(Map.Entry<String, List<String>> route : configuration.getProxy_routes().entrySet()){
+            UpstreamServer[] upstreams = new UpstreamServer[route.getValue().size()];
+            for(int i = 0; i < upstreams.length; i++)
+                upstreams[i] = this.upstream_servers.computeIfAbsent(route.getValue().get(i),
+                        (url) -> new UpstreamServer(url, configuration.getProxy_max_idle_connections()));
+            this.routes.add(new Route(route.getKey(), upstreams));
+        }
+        this.routes.sort(Comparator.comparingInt((Route r) -> r.prefix.length()).reversed());
+        if(!this.upstream_servers.isEmpty() && configuration.getProxy_health_check_interval() > 0){
+            this.health_checker = Executors.newSingleThreadScheduledExecutor((r) -> {
+                Thread t = new Thread(r, "proxy-health-checker");
+                t.setDaemon(true);
+                return t;
+            });
+            this.health_checker.scheduleWithFixedDelay(this::checkUpstreamServers, 0,
+                    configuration.getProxy_health_check_interval(), TimeUnit.MILLISECONDS);
+        }
+        else
+            this.health_checker = null;
+    }
+
+    /**
+     * Get the reverse proxy of the current configuration. The reverse proxy is rebuilt (and the previous one
+     * closed) when the proxy settings of the configuration change.
+     * @return The current ReverseProxy.
+     */
+    public static ReverseProxy getInstance() {
+        HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+        ReverseProxy current = instance;
+        //Most of the time, the configuration hasn't changed since the reverse proxy was built.
+        if(current != null && current.configuration == configuration)
+            return current;
+        synchronized(ReverseProxy.class){
+            current = instance;
+            if(current == null)
+                instance = new ReverseProxy(configuration);
+            else if(current.configuration != configuration){
+                if(current.hasSameSettings(configuration))
+                    current.configuration = configuration;
+                else{
+                    current.close();
+                    instance = new ReverseProxy(configuration);
+                }
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * @return The upstream servers of the reverse proxy, keyed by their URL.
+     */
+    public Map<String, UpstreamServer> getUpstream_servers() {
+        return this.upstream_servers;
+    }
+
+    /**
+     * Check if a request is forwarded to upstream servers by the reverse proxy.
+     * @param request The client's HTTP request.
+     * @return A boolean denoting if the request's resource matches one of the reverse proxy's routes.
+     */
+    public boolean isProxied(HTTPRequest request) {
+        return !this.routes.isEmpty() && request.getRequested_resource() != null && request.getHttp_version() != null
+                && this.findRoute(request.getRequested_resource()) != null;
+    }
+
+    /**
+     * Forward a request to one of the upstream servers of its route, and stream the upstream server's response
+     * to the client. If the upstream server can't be reached, or doesn't respond in time, the client receives
+     * a 502 (Bad Gateway), 503 (Service Unavailable) or 504 (Gateway Timeout) response.
+     * @param request The client's HTTP request.
+     * @param client The client's socket.
+     * @param dos The DataOutputStream of the client's socket.
+     * @param trace The request's RequestTrace, whose span becomes the parent of the upstream server's span
+     * (or null if tracing is disabled, in which case the request's traceparent header is forwarded as is).
+     * @throws IOException If the response can't be written to the client, or if the upstream server fails once its
+     * response has started (the client's response is then incomplete).
+     */
+    public void forward(HTTPRequest request, Socket client, DataOutputStream dos, RequestTrace trace) throws IOException {
+        Route route = this.findRoute(request.getRequested_resource());
+        UpstreamServer upstream = this.selectUpstreamServer(route);
+        if(upstream == null){
+            HTTPResponse.writeStatusResponse(dos, 503, "");
+            return;
+        }
+        String method = request.getRequest_line().split("\\s")[0];
+        byte[] content = request.getRequest_content_bytes();
+        byte[] request_head = this.composeRequestHead(request, method, content.length, client, upstream, trace);
+        //A pooled connection may have been closed by the upstream server while it was idle. In that case, the request
+        //is sent again once, on a new connection: unless it was sent completely and isn't idempotent, as the upstream
+        //server may have processed it.
+        boolean allow_idle_connection = true;
+        while(true){
+            UpstreamServer.Connection connection;
+            try {
+                connection = upstream.acquire(this.configuration.getProxy_connect_timeout(),
+                        this.configuration.getProxy_read_timeout(), allow_idle_connection);
+            } catch (IOException ex) {
+                System.err.println("Upstream server " + upstream.getAddress() + " unreachable: " + ex.getMessage());
+                //Let the health checks decide when the upstream server is back.
+                if(ex instanceof ConnectException && this.health_checker != null)
+                    upstream.setIs_healthy(false);
+                HTTPResponse.writeStatusResponse(dos, ex instanceof SocketTimeoutException ? 504 : 502, "");
+                return;
+            }
+            boolean is_reusable = false;
+            boolean is_request_sent = false;
+            boolean is_response_started = false;
+            try {
+                OutputStream upstream_output = connection.getOutput();
+                upstream_output.write(request_head);
+                upstream_output.write(content);
+                upstream_output.flush();
+                is_request_sent = true;
+                ArrayList<String> response_head = this.readResponseHead(connection.getInput());
+                is_response_started = true;
+                is_reusable = this.relayResponse(response_head, connection.getInput(), dos, method.equals("HEAD"),
+                        HTTPServerInformation.SUPPORTED_HTTP_VERSION.equals(request.getHttp_version()));
+                return;
+            } catch (IOException ex) {
+                if(!is_response_started && connection.isIs_reused() && !(ex instanceof SocketTimeoutException)
+                        && (!is_request_sent || IDEMPOTENT_METHODS.contains(method))){
+                    allow_idle_connection = false;
+                    continue;
+                }
+                System.err.println("Upstream server " + upstream.getAddress() + " failed: " + ex.getMessage());
+                //Once the response has started, the client can only learn about the error by the connection closing,
+                //and the incomplete response must not be cached.
+                if(is_response_started)
+                    throw ex;
+                HTTPResponse.writeStatusResponse(dos, ex instanceof SocketTimeoutException ? 504 : 502, "");
+                return;
+            } finally {
+                upstream.release(connection, is_reusable);
+            }
+        }
+    }
+
+    /**
+     * Find the route of a resource: the route with the longest prefix the resource starts with.
+     * @param resource The requested resource.
+     * @return The route of the resource, or null if the resource isn't proxied.
+     */
+    private Route findRoute(String resource) {
+        for(Route route : this.routes)
+            if(resource.startsWith(route.prefix))
+                return route;
+        return null;
+    }
+
+    /**
+     * Select the upstream server to forward a request to, among the healthy upstream servers of a route.
+     * @param route The route of the request.
+     * @return An upstream server, or null if none of the route's upstream servers is healthy.
+     */
+    private UpstreamServer selectUpstreamServer(Route route) {
+        int count = route.upstreams.length;
+        int start = Math.floorMod(route.next.getAndIncrement(), count);
+        UpstreamServer selected = null;
+        for(int i = 0; i < count; i++){
+            UpstreamServer upstream = route.upstreams[(start + i) % count];
+            if(!upstream.isIs_healthy())
+                continue;
+            //Round robin: the first healthy upstream server after the previous one.
+            if(this.configuration.getProxy_balancing().equals("round_robin"))
+                return upstream;
+            //Least connections: the upstream server with the fewest requests in progress.
+            if(selected == null || upstream.getActive_requests() < selected.getActive_requests())
+                selected = upstream;
+        }
+        return selected;
+    }
+
+    /**
+     * Compose the request line and headers forwarded to an upstream server.<br>
+     * Hop-by-hop headers are removed, X-Forwarded-* headers are added, and the connection is kept alive.
+     * @param request The client's HTTP request.
+     * @param method The request's HTTP method.
+     * @param content_length The length of the request's content in bytes.
+     * @param client The client's socket.
+     * @param upstream The upstream server.
+     * @param trace The request's RequestTrace, or null.
+     * @return The request line and headers, terminated by an empty line.
+     */
+    private byte[] composeRequestHead(HTTPRequest request, String method, int content_length, Socket client, UpstreamServer upstream, RequestTrace trace) {
+        String query = request.getGET_query_string();
+        StringBuilder head = new StringBuilder(512);
+        head.append(method).append(' ').append(request.getRequested_resource());
+        if(!query.isEmpty())
+            head.append('?').append(query);
+        head.append(" HTTP/1.1");
+        //Headers listed in the Connection header are hop-by-hop headers too.
+        HTTPHeaders headers = request.getRequest_headers();
+        HashSet<String> excluded_headers = new HashSet<>(HOP_BY_HOP_HEADERS);
+        if(headers.get(HTTPHeaders.CONNECTION) != null)
+            for(String name : headers.get(HTTPHeaders.CONNECTION).split(","))
+                excluded_headers.add(name.trim().toLowerCase());
+        String host = headers.get(HTTPHeaders.HOST);
+        String forwarded_for = headers.get(HTTPHeaders.X_FORWARDED_FOR);
+        for(int i = 0; i < headers.size(); i++){
+            int id = headers.getId(i);
+            if(id == HTTPHeaders.X_FORWARDED_FOR || id == HTTPHeaders.CONTENT_LENGTH || (trace != null && id == HTTPHeaders.TRACEPARENT))
+                continue;
+            String name = headers.getName(i);
+            if(excluded_headers.contains(name.toLowerCase()))
+                continue;
+            head.append(HTTPResponse.CRLF).append(name).append(": ").append(headers.getValue(i));
+        }
+        if(host == null)
+            head.append(HTTPResponse.CRLF).append("Host: ").append(upstream.getAddress());
+        else
+            head.append(HTTPResponse.CRLF).append("X-Forwarded-Host: ").append(host);
+        String client_address = ((InetSocketAddress) client.getRemoteSocketAddress()).getAddress().getHostAddress();
+        head.append(HTTPResponse.CRLF).append("X-Forwarded-For: ").append(forwarded_for == null ? client_address : forwarded_for + ", " + client_address);
+        head.append(HTTPResponse.CRLF).append("X-Forwarded-Proto: http");
+        if(trace != null)
+            head.append(HTTPResponse.CRLF).append("traceparent: ").append(trace.getTraceparent());
+        if(content_length > 0 || !method.equals("GET") && !method.equals("HEAD"))
+            head.append(HTTPResponse.CRLF).append("Content-Length: ").append(content_length);
+        head.append(HTTPResponse.CRLF).append("Connection: keep-alive");
+        head.append(HTTPResponse.CONTENT_CRLF);
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Read the status line and headers of an upstream server's response. Interim (1xx) responses are skipped.
+     * @param input The input stream of the upstream connection.
+     * @return The status line followed by the header lines.
+     * @throws IOException If the upstream server closed the connection or sent an invalid response.
+     */
+    private ArrayList<String> readResponseHead(InputStream input) throws IOException {
+        while(true){
+            ArrayList<String> head = new ArrayList<>();
+            String line;
+            while((line = readLine(input)) != null && !line.isEmpty())
+                head.add(line);
+            if(line == null)
+                throw new EOFException("The upstream server closed the connection.");
+            if(head.isEmpty() || !head.get(0).startsWith("HTTP/1.") || head.get(0).length() < 12)
+                throw new IOException("Invalid response status line from the upstream server.");
+            //101 (Switching Protocols) isn't an interim response, but upgrades are not forwarded anyway.
+            if(head.get(0).charAt(9) != '1')
+                return head;
+        }
+    }
+
+    /**
+     * Write an upstream server's response to the client, streaming its content as it's read. An invalid response
+     * head (status code, header or Content-Length) is answered with a 502 (Bad Gateway) response instead.
+     * @param response_head The status line and headers of the response.
+     * @param input The input stream of the upstream connection.
+     * @param dos The DataOutputStream of the client's socket.
+     * @param is_head_request A boolean denoting if the request's method is HEAD (the response has no content).
+     * @param is_chunking_allowed A boolean denoting if the client accepts chunked content (an HTTP/1.1 client).
+     * @return A boolean denoting if the upstream connection can be reused for another request.
+     * @throws IOException If the response can't be read from the upstream server or written to the client.
+     */
+    private boolean relayResponse(ArrayList<String> response_head, InputStream input, DataOutputStream dos, boolean is_head_request,
+            boolean is_chunking_allowed) throws IOException {
+        String status_line = response_head.get(0);
+        int status_code;
+        try {
+            status_code = Integer.parseInt(status_line.substring(9, 12));
+        } catch (NumberFormatException ex) {
+            return rejectResponse(dos, "Invalid response status line from the upstream server.");
+        }
+        boolean is_closed = status_line.startsWith("HTTP/1.0");
+        boolean is_chunked = false;
+        boolean has_transfer_encoding = false;
+        long content_length = -1;
+        StringBuilder head = new StringBuilder(512).append(status_line);
+        for(int i = 1; i < response_head.size(); i++){
+            String line = response_head.get(i);
+            int colon = line.indexOf(':');
+            if(colon <= 0)
+                return rejectResponse(dos, "Invalid response header from the upstream server.");
+            String name = line.substring(0, colon).trim().toLowerCase();
+            String value = line.substring(colon + 1).trim();
+            if(name.equals("connection")){
+                is_closed = value.toLowerCase().contains("close") || (is_closed && !value.toLowerCase().contains("keep-alive"));
+                continue;
+            }
+            if(name.equals("content-length")){
+                try {
+                    content_length = Long.parseLong(value);
+                } catch (NumberFormatException ex) {
+                    content_length = -1;
+                }
+                if(content_length < 0)
+                    return rejectResponse(dos, "Invalid Content-Length from the upstream server: " + value);
+            }
+            //Chunked content is relayed as is, so its Transfer-Encoding header is kept.
+            if(name.equals("transfer-encoding")){
+                is_chunked = value.toLowerCase().endsWith("chunked");
+                has_transfer_encoding = true;
+            }
+            else if(HOP_BY_HOP_HEADERS.contains(name))
+                continue;
+            head.append(HTTPResponse.CRLF).append(line);
+        }
+        boolean has_content = !is_head_request && status_code != 204 && status_code != 304;
+        //Content without a length ends when the upstream server closes the connection. It's relayed to an HTTP/1.1
+        //client with the chunked transfer coding, so that a response cut off by an upstream error (which doesn't end
+        //with the last chunk) can be told apart from a complete one.
+        boolean is_rechunked = has_content && is_chunking_allowed && content_length < 0 && !has_transfer_encoding;
+        if(is_rechunked)
+            head.append(HTTPResponse.CRLF).append("Transfer-Encoding: chunked");
+        head.append(HTTPResponse.CRLF).append("Connection: Closed");
+        head.append(HTTPResponse.CONTENT_CRLF);
+        dos.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        byte[] buffer = new byte[this.configuration.getBuffer_size()];
+        //Responses without content.
+        if(!has_content){
+            dos.flush();
+            return !is_closed;
+        }
+        if(is_chunked){
+            this.relayChunkedContent(input, dos, buffer);
+            return !is_closed;
+        }
+        if(content_length >= 0){
+            copy(input, dos, content_length, buffer);
+            return !is_closed;
+        }
+        if(is_rechunked){
+            int bytes;
+            while((bytes = input.read(buffer)) != -1)
+                if(bytes > 0)
+                    ChunkedEncoding.writeChunk(dos, buffer, 0, bytes);
+            dos.write(ChunkedEncoding.LAST_CHUNK);
+            dos.flush();
+            return false;
+        }
+        copy(input, dos, Long.MAX_VALUE, buffer);
+        return false;
+    }
+
+    /**
+     * Answer the client with a 502 (Bad Gateway) response, as the upstream server's response can't be relayed.
+     * @param dos The DataOutputStream of the client's socket.
+     * @param reason The reason the upstream server's response is invalid.
+     * @return false, as the upstream connection can't be reused.
+     * @throws IOException If the response can't be written to the client.
+     */
+    private static boolean rejectResponse(DataOutputStream dos, String reason) throws IOException {
+        System.err.println(reason);
+        HTTPResponse.writeStatusResponse(dos, 502, "");
+        return false;
+    }
+
+    /**
+     * Relay chunked content as is, parsing the chunk sizes to find the end of the content.
+     * @param input The input stream of the upstream connection.
+     * @param output The client's output stream.
+     * @param buffer The buffer used to copy the chunks.
+     * @throws IOException If the content is invalid, or can't be read or written.
+     */
+    private void relayChunkedContent(InputStream input, OutputStream output, byte[] buffer) throws IOException {
+        while(true){
+            String size_line = readLine(input);
+            if(size_line == null)
+                throw new EOFException("The upstream server closed the connection in the middle of the content.");
+            output.write((size_line + HTTPResponse.CRLF).getBytes(StandardCharsets.ISO_8859_1));
+            int extension = size_line.indexOf(';');
+            long size;
+            try {
+                size = Long.parseLong((extension == -1 ? size_line : size_line.substring(0, extension)).trim(), 16);
+            } catch (NumberFormatException ex) {
+                throw new IOException("Invalid chunk size from the upstream server: " + size_line);
+            }
+            if(size == 0){
+                //The last chunk is followed by optional trailer headers and an empty line.
+                String trailer;
+                do {
+                    trailer = readLine(input);
+                    if(trailer == null)
+                        throw new EOFException("The upstream server closed the connection in the middle of the content.");
+                    output.write((trailer + HTTPResponse.CRLF).getBytes(StandardCharsets.ISO_8859_1));
+                } while(!trailer.isEmpty());
+                output.flush();
+                return;
+            }
+            copy(input, output, size, buffer);
+            //Each chunk's data is followed by a CRLF.
+            if(!"".equals(readLine(input)))
+                throw new IOException("Invalid chunk from the upstream server.");
+            output.write(HTTPResponse.CRLF.getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    /**
+     * Copy a number of bytes from an input stream to an output stream.
+     * @param input The input stream.
+     * @param output The output stream.
+     * @param length The number of bytes to copy, or Long.MAX_VALUE to copy until the end of the input stream.
+     * @param buffer The buffer used to copy the bytes.
+     * @throws IOException If the input stream ends before the number of bytes is copied, or on read or write errors.
+     */
+    private static void copy(InputStream input, OutputStream output, long length, byte[] buffer) throws IOException {
+        long remaining = length;
+        while(remaining > 0){
+            int bytes = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if(bytes == -1){
+                if(length == Long.MAX_VALUE)
+                    break;
+                throw new EOFException("The upstream server closed the connection in the middle of the content.");
+            }
+            output.write(buffer, 0, bytes);
+            remaining -= bytes;
+        }
+        output.flush();
+    }
+
+    /**
+     * Read a line terminated by LF (or CRLF) from an input stream.
+     * @param input The input stream.
+     * @return The line without its terminator, or null if the stream ended before the line did.
+     * @throws IOException If the line is too long or can't be read.
+     */
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while((b = input.read()) != -1){
+            if(b == '\n'){
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+            if(line.size() >= MAX_LINE_LENGTH)
+                throw new IOException("Line too long in the upstream server's response.");
+            line.write(b);
+        }
+        return null;
+    }
+
+    /**
+     * Check the health of every upstream server by requesting the health check path on a new connection.
+     * An upstream server is healthy if it responds with a status code lower than 500.
+     */
+    private void checkUpstreamServers() {
+        for(UpstreamServer upstream : this.upstream_servers.values()){
+            boolean is_healthy;
+            try(Socket socket = new Socket()){
+                socket.connect(new InetSocketAddress(upstream.getHost(), upstream.getPort()), this.configuration.getProxy_connect_timeout());
+                socket.setSoTimeout(this.configuration.getProxy_read_timeout());
+                String request = "GET " + this.configuration.getProxy_health_check_path() + " HTTP/1.1" + HTTPResponse.CRLF
+                        + "Host: " + upstream.getAddress() + HTTPResponse.CRLF + "Connection: close" + HTTPResponse.CONTENT_CRLF;
+                socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+                InputStream input = socket.getInputStream();
+                String status_line = readLine(input);
+                is_healthy = status_line != null && status_line.startsWith("HTTP/1.") && status_line.length() >= 12
+                        && Integer.parseInt(status_line.substring(9, 12)) < 500;
+                //Read the rest of the response, so that the upstream server isn't interrupted while writing it.
+                copy(input, OutputStream.nullOutputStream(), Long.MAX_VALUE, new byte[1024]);
+            } catch (Exception ex) {
+                is_healthy = false;
+            }
+            if(is_healthy != upstream.isIs_healthy())
+                System.out.println("Upstream server " + upstream.getAddress() + " is " + (is_healthy ? "healthy." : "unhealthy."));
+            upstream.setIs_healthy(is_healthy);
+        }
+    }
+
+    /**
+     * Check if a configuration has the same proxy routes and settings as the one this reverse proxy was built from.
+     * @param other A configuration.
+     * @return A boolean denoting if the reverse proxy can be kept for the other configuration.
+     */
+    private boolean hasSameSettings(HTTPServerConfiguration other) {
+        return this.configuration.getProxy_routes().equals(other.getProxy_routes())
+                && this.configuration.getProxy_balancing().equals(other.getProxy_balancing())
+                && this.configuration.getProxy_connect_timeout() == other.getProxy_connect_timeout()
+                && this.configuration.getProxy_read_timeout() == other.getProxy_read_timeout()
+                && this.configuration.getProxy_max_idle_connections() == other.getProxy_max_idle_connections()
+                && this.configuration.getProxy_health_check_interval() == other.getProxy_health_check_interval()
+                && this.configuration.getProxy_health_check_path().equals(other.getProxy_health_check_path())
+                && this.configuration.getBuffer_size() == other.getBuffer_size();
+    }
+
+    /**
+     * Close the reverse proxy: stop the health checks and close the idle upstream connections.
+     */
+    public void close() {
+        if(this.health_checker != null)
+            this.health_checker.shutdownNow();
+        for(UpstreamServer upstream : this.upstream_servers.values())
+            upstream.close();
+    }
+}
@@ -0,0 +1,214 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A broadcast hub for Server-Sent Events (text/event-stream).<br>
+ * Subscribers are parked on the event loop once their response headers are sent, so they don't keep a thread each.
+ * Events published to a channel are batched: every flush interval, the pending events of a channel are encoded once
+ * as a single chunk, and the same bytes are queued to all of the channel's subscribers. Idle channels get a heartbeat
+ * comment, which keeps intermediaries from timing out and detects disconnected subscribers.
+ * @author Hodaifa98
+ */
+public class SSEHub {
+
+    /**
+     * A channel of events and its subscribers.
+     */
+    private static final class EventChannel {
+        private final Set<EventLoop.Connection> subscribers = ConcurrentHashMap.newKeySet();
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private final AtomicLong last_event_id = new AtomicLong();
+        private volatile long last_flush = System.currentTimeMillis();
+    }
+
+    //The heartbeat comment sent to idle channels.
+    private static final byte[] HEARTBEAT = ChunkedEncoding.encodeChunk(":\n\n".getBytes(StandardCharsets.UTF_8));
+
+    //The hub, created on the first subscription or publication.
+    private static SSEHub instance;
+
+    //The channels by name, and the thread flushing their pending events.
+    private final ConcurrentHashMap<String, EventChannel> channels = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    private SSEHub() {
+        this.flusher = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "sse-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher.schedule(this::flush, HTTPServerInformation.getConfiguration().getSse_flush_interval(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return The Server-Sent Events hub.
+     */
+    public static synchronized SSEHub getInstance() {
+        if(instance == null)
+            instance = new SSEHub();
+        return instance;
+    }
+
+    /**
+     * Get the channel an event stream path is routed to by the configuration (sse_route./PATH=CHANNEL).
+     * @param request The client's HTTP request.
+     * @return The name of the channel, or null if the requested path isn't an event stream.
+     */
+    public static String getChannel(HTTPRequest request) {
+        return HTTPServerInformation.getConfiguration().getSse_routes().get(request.getRequested_resource());
+    }
+
+    /**
+     * @param channel The name of a channel.
+     * @return The number of subscribers of the channel.
+     */
+    public int getSubscriber_count(String channel) {
+        EventChannel event_channel = this.channels.get(channel);
+        return event_channel != null ? event_channel.subscribers.size() : 0;
+    }
+
+    /**
+     * Handle a request to an event stream path: a GET request subscribes the client to the channel,
+     * and a POST request from the server's host publishes its content to the channel.
+     * @param request The client's HTTP request.
+     * @param channel The name of the channel the path is routed to.
+     * @param s The client's socket.
+     * @param dos The DataOutputStream of the client's socket.
+     * @return A boolean denoting if the connection was handed over to the event loop, and must not be closed.
+     * @throws IOException If the response can't be written.
+     */
+    public boolean handle(HTTPRequest request, String channel, Socket s, DataOutputStream dos) throws IOException {
+        if(request.getHttp_method() == HTTP_Method.POST){
+            //Events can only be published from the server's host (the applications running next to the server).
+            if(!s.getInetAddress().isLoopbackAddress()){
+                HTTPResponse.writeStatusResponse(dos, 403, "");
+                return false;
+            }
+            HashMap<String, String> parameters = request.extractGETParameters();
+            String event = parameters != null ? parameters.get("event") : null;
+            this.publish(channel, event, request.getRequest_content() != null ? request.getRequest_content() : "");
+            HTTPResponse.writeStatusResponse(dos, 202, "");
+            return false;
+        }
+        if(request.getHttp_method() != HTTP_Method.GET){
+            HTTPResponse.writeStatusResponse(dos, 405, HTTPResponse.CRLF + "Allow: GET, POST");
+            return false;
+        }
+        SocketChannel socket_channel = s.getChannel();
+        if(socket_channel == null){
+            HTTPResponse.writeStatusResponse(dos, 500, "");
+            return false;
+        }
+        this.subscribe(channel, socket_channel, dos);
+        return true;
+    }
+
+    /**
+     * Subscribe a client to a channel: send the event stream's response headers, then park the connection
+     * on the event loop.
+     * @param channel The name of the channel.
+     * @param socket_channel The client's socket channel.
+     * @param dos The DataOutputStream of the client's socket.
+     * @throws IOException If the response headers can't be written.
+     */
+    public void subscribe(String channel, SocketChannel socket_channel, DataOutputStream dos) throws IOException {
+        HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+        String response_headers = HTTPServerInformation.SUPPORTED_HTTP_VERSION + " 200 " + configuration.getHttp_status().get(200);
+        response_headers += HTTPResponse.CRLF + "Date: " + HTTPResponse.getCurrentDatePerHTTP();
+        response_headers += HTTPResponse.CRLF + "Server: " + configuration.getServer_name();
+        response_headers += HTTPResponse.CRLF + "Content-Type: text/event-stream; charset=utf-8";
+        response_headers += HTTPResponse.CRLF + "Cache-Control: no-cache";
+        response_headers += HTTPResponse.CRLF + "Transfer-Encoding: chunked";
+        response_headers += HTTPResponse.CONTENT_CRLF;
+        dos.write(response_headers.getBytes(StandardCharsets.UTF_8));
+        //Tell the client how long to wait before reconnecting.
+        dos.write(ChunkedEncoding.encodeChunk(("retry: " + configuration.getSse_retry() + "\n\n").getBytes(StandardCharsets.UTF_8)));
+        dos.flush();
+        EventChannel event_channel = this.channels.computeIfAbsent(channel, (name) -> new EventChannel());
+        EventLoop.Connection connection = EventLoop.getInstance().register(socket_channel, new EventLoop.ConnectionListener() {
+            @Override
+            public void onRead(EventLoop.Connection connection, ByteBuffer data) {
+                //Subscribers don't send anything after their request.
+            }
+
+            @Override
+            public void onClose(EventLoop.Connection connection) {
+                event_channel.subscribers.remove(connection);
+            }
+        }, configuration.getSse_max_queued_bytes());
+        event_channel.subscribers.add(connection);
+        //The connection may have been closed before it was added.
+        if(connection.isIs_closed())
+            event_channel.subscribers.remove(connection);
+    }
+
+    /**
+     * Publish an event to a channel. The event is sent to the channel's subscribers with the next flush.
+     * @param channel The name of the channel.
+     * @param event The type of the event, or null for the default type ("message").
+     * @param data The data of the event. Every line is sent as a separate data field.
+     * @return The id of the event.
+     */
+    public long publish(String channel, String event, String data) {
+        EventChannel event_channel = this.channels.computeIfAbsent(channel, (name) -> new EventChannel());
+        long id = event_channel.last_event_id.incrementAndGet();
+        StringBuilder encoded = new StringBuilder("id: ").append(id).append('\n');
+        if(event != null && !event.isBlank())
+            encoded.append("event: ").append(event.replaceAll("[\r\n]", "")).append('\n');
+        for(String line : data.split("\r\n|\r|\n", -1))
+            encoded.append("data: ").append(line).append('\n');
+        encoded.append('\n');
+        byte[] bytes = encoded.toString().getBytes(StandardCharsets.UTF_8);
+        synchronized(event_channel.pending){
+            event_channel.pending.write(bytes, 0, bytes.length);
+        }
+        return id;
+    }
+
+    /**
+     * Send the pending events of every channel to its subscribers, as a single chunk encoded once,
+     * or a heartbeat to the channels idle for longer than the heartbeat interval. Then schedule the next flush.
+     */
+    private void flush() {
+        HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+        try {
+            long now = System.currentTimeMillis();
+            long heartbeat_interval = configuration.getSse_heartbeat_interval();
+            for(EventChannel event_channel : this.channels.values()){
+                byte[] events;
+                synchronized(event_channel.pending){
+                    events = event_channel.pending.size() > 0 ? event_channel.pending.toByteArray() : null;
+                    event_channel.pending.reset();
+                }
+                byte[] chunk = events != null ? ChunkedEncoding.encodeChunk(events)
+                        : (heartbeat_interval > 0 && now - event_channel.last_flush >= heartbeat_interval ? HEARTBEAT : null);
+                if(chunk == null)
+                    continue;
+                event_channel.last_flush = now;
+                ByteBuffer shared = ByteBuffer.wrap(chunk).asReadOnlyBuffer();
+                for(EventLoop.Connection subscriber : event_channel.subscribers)
+                    subscriber.send(shared.duplicate());
+            }
+        } catch (Exception ex) {
+            System.err.println(ex.getMessage());
+        } finally {
+            this.flusher.schedule(this::flush, configuration.getSse_flush_interval(), TimeUnit.MILLISECONDS);
+        }
+    }
+}
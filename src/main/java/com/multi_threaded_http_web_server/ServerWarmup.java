@@ -0,0 +1,165 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The server's startup warm-up, and its readiness.<br>
+ * When the server starts, the static files of every virtual host are preloaded in its static resource cache, then synthetic requests are
+ * optionally driven through HTTPRequest and HTTPResponse so that the request handling code is compiled by the JIT
+ * before the first clients arrive. The server is reported ready on the readiness path once the warm-up is done, and
+ * not ready anymore once it's stopping, so that a load balancer only sends it requests in between.<br>
+ * With warmup.exit, the server exits once warmed up, after a request through its socket: this is the training run
+ * recording the classes loaded at startup in an AppCDS archive (see the fast-startup Maven profile).
+ * @author Hodaifa98
+ */
+public final class ServerWarmup {
+
+    //The maximum number of public files requested by the synthetic requests.
+    private static final int MAX_WARMUP_RESOURCES = 16;
+
+    //A boolean denoting if the server is ready to handle requests, and the thread warming it up.
+    private static volatile boolean is_ready = false;
+    private static volatile Thread warmup_thread;
+
+    //Private empty constructor to prevent this class from being instantiated.
+    private ServerWarmup(){}
+
+    /**
+     * @return A boolean denoting if the server is warmed up, and not stopping.
+     */
+    public static boolean isReady() {
+        return is_ready;
+    }
+
+    /**
+     * Report the server as not ready anymore, when it's stopping. A warm-up still in progress won't report it ready.
+     */
+    public static void stop() {
+        warmup_thread = null;
+        is_ready = false;
+    }
+
+    /**
+     * Start the warm-up in a background thread, so that the server can answer its readiness path meanwhile.
+     * The server is reported ready when the warm-up is done.
+     * @param port The port number the server is listening on.
+     */
+    public static void start(int port) {
+        is_ready = false;
+        Thread warmup = new Thread(() -> {
+            try {
+                warmUp(HTTPServerInformation.getConfiguration());
+            } catch (Exception ex) {
+                System.err.println(ex.getMessage());
+            }
+            if(warmup_thread == Thread.currentThread()){
+                is_ready = true;
+                System.out.println("Ready.");
+                if(HTTPServerInformation.getConfiguration().isWarmup_exit()){
+                    requestThroughSocket(port);
+                    //The shutdown hook stops the server.
+                    System.exit(0);
+                }
+            }
+        }, "warm-up");
+        warmup.setDaemon(true);
+        warmup_thread = warmup;
+        warmup.start();
+    }
+
+    /**
+     * Preload the static files, and drive the configured number of rounds of synthetic requests through the
+     * request handling code.
+     * @param configuration The server's configuration.
+     */
+    private static void warmUp(HTTPServerConfiguration configuration) {
+        long start = System.nanoTime();
+        int preloaded = 0;
+        if(configuration.isStatic_cache_preload())
+            for(VirtualHost host : configuration.getVirtual_hosts())
+                //A bundled host is already in memory.
+                if(host.getBundle() == null)
+                    preloaded += host.getStatic_cache().preload(host, configuration);
+        //The synthetic requests cover the index page, a missing resource and some of the small public files,
+        //of the default host, with and without compression, and with an ETag.
+        List<String> resources = new ArrayList<>(Arrays.asList("/", "/warm-up-missing-resource.html"));
+        Path root = Paths.get(configuration.getPublic_directory());
+        try(Stream<Path> walk = Files.walk(root)){
+            walk.filter(Files::isRegularFile)
+                    .filter((file) -> file.toFile().length() <= configuration.getStatic_cache_max_file_size())
+                    .map((file) -> "/" + root.relativize(file).toString().replace(File.separatorChar, '/'))
+                    .filter((resource) -> configuration.getForbidden_directories().stream().noneMatch(resource::contains))
+                    .limit(MAX_WARMUP_RESOURCES)
+                    .forEach(resources::add);
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+        }
+        DataOutputStream sink = new DataOutputStream(OutputStream.nullOutputStream());
+        for(int i = 0; i < configuration.getWarmup_requests(); i++){
+            for(String resource : resources){
+                warmUpRequest("GET " + resource + " HTTP/1.1", "Accept-Encoding: gzip, deflate", sink);
+                warmUpRequest("HEAD " + resource + " HTTP/1.1", "Accept: */*", sink);
+                warmUpRequest("GET " + resource + "?warm_up=" + i + " HTTP/1.1", "If-None-Match: \"0-0\"", sink);
+            }
+        }
+        System.out.println("Warmed up in " + (System.nanoTime() - start) / 1000000 + " ms: " + preloaded
+                + " file(s) preloaded, " + configuration.getWarmup_requests() * resources.size() * 3 + " synthetic request(s).");
+    }
+
+    //Handle a synthetic request, discarding its response.
+    private static void warmUpRequest(String request_line, String header, DataOutputStream sink) {
+        try {
+            ArrayList<String> headers = new ArrayList<>(Arrays.asList("Host: localhost", header));
+            new HTTPResponse(new HTTPRequest(request_line, headers)).writeHTTPResponse(sink);
+        } catch (Exception ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    //Send a request to the server through its socket, so that the connection handling code is loaded too.
+    private static void requestThroughSocket(int port) {
+        try(Socket s = new Socket(InetAddress.getLoopbackAddress(), port)){
+            s.getOutputStream().write(("GET / " + HTTPServerInformation.SUPPORTED_HTTP_VERSION + HTTPResponse.CRLF
+                    + "Host: localhost" + HTTPResponse.CRLF + "Accept-Encoding: gzip" + HTTPResponse.CONTENT_CRLF).getBytes(StandardCharsets.ISO_8859_1));
+            InputStream input = s.getInputStream();
+            while(input.read() != -1);
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * Check if a request is for the readiness path.
+     * @param request The client's HTTPRequest.
+     * @return A boolean denoting if the request is for the readiness path.
+     */
+    public static boolean isReadinessRequest(HTTPRequest request) {
+        String readiness_path = HTTPServerInformation.getConfiguration().getReadiness_path();
+        return !readiness_path.isEmpty() && readiness_path.equals(request.getRequested_resource());
+    }
+
+    /**
+     * Write the readiness of the server: 200 (OK) once it's warmed up, otherwise 503 (Service Unavailable).
+     * @param dos The DataOutputStream of the client's socket.
+     * @throws IOException If the response can't be written.
+     */
+    public static void writeReadiness(DataOutputStream dos) throws IOException {
+        HTTPResponse.writeStatusResponse(dos, is_ready ? 200 : 503, HTTPResponse.CRLF + "Cache-Control: no-store");
+    }
+}
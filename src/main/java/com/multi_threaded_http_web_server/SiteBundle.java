@@ -0,0 +1,401 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A precompiled bundle of a public directory: a single file holding every servable file, with its response headers
+ * and gzip variant computed once, when the bundle is built.<br>
+ * The bundle is memory-mapped, and a request is served with a lookup in its hash index and a single gathered write
+ * of the response's head and of slices of the mapping, without any call to the filesystem. It's meant for immutable
+ * deploys: the files of the public directory aren't read anymore, so the bundle must be built again when they change.
+ * The files of the forbidden directories and of unsupported MEME types aren't bundled, and a directory is bundled as
+ * its index page.<br>
+ * The format of a bundle is (big-endian):<br>
+ * a header: the magic number, the version, the number of entries and of index slots,<br>
+ * the entries (64 bytes each): the hash of the path, the offset and length of the path, of the content, of the
+ * gzip variant (0 if none), of the headers, of the gzip variant's headers and of the ETag,<br>
+ * the hash index: the entry number + 1 of every slot (0 if empty), with linear probing,<br>
+ * the paths (UTF-16), and the blobs (contents, gzip variants and headers), each aligned on 64 bytes.
+ * @author Hodaifa98
+ */
+public final class SiteBundle {
+
+    //The header of a bundle.
+    private static final int MAGIC = 0x48424e44;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    //The size of an entry, and the offsets of its fields.
+    private static final int ENTRY_SIZE = 64;
+    private static final int PATH_HASH = 0;
+    private static final int PATH = 8;
+    private static final int CONTENT = 16;
+    private static final int GZIP = 24;
+    private static final int HEADERS = 32;
+    private static final int GZIP_HEADERS = 40;
+    private static final int ETAG = 48;
+
+    //The alignment of the blobs, in bytes.
+    private static final int ALIGNMENT = 64;
+
+    //The mapped bundle, and its index.
+    private final MappedByteBuffer buffer;
+    private final int entry_count;
+    private final int slot_mask;
+    private final int slots_offset;
+
+    //The path of the bundle.
+    private final Path path;
+
+    private SiteBundle(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+            throw new IOException("Not a bundle (or of another version): " + path);
+        this.entry_count = buffer.getInt(8);
+        int slot_count = buffer.getInt(12);
+        //The index must hold every entry and an empty slot, and fit in the bundle (computed in long, as a corrupted
+        //count could overflow).
+        long slots_offset = HEADER_SIZE + (long) this.entry_count * ENTRY_SIZE;
+        if(this.entry_count < 0 || Integer.bitCount(slot_count) != 1 || slot_count <= this.entry_count
+                || slots_offset + 4L * slot_count > buffer.capacity())
+            throw new IOException("Corrupted bundle: " + path);
+        this.slots_offset = (int) slots_offset;
+        this.slot_mask = slot_count - 1;
+        //Every slot must be empty or name an entry, and one must be empty, so that a lookup's probing ends.
+        int empty_slots = 0;
+        for(int slot = 0; slot < slot_count; slot++){
+            int value = buffer.getInt(this.slots_offset + 4 * slot);
+            if(value < 0 || value > this.entry_count)
+                throw new IOException("Corrupted bundle: " + path);
+            if(value == 0)
+                empty_slots++;
+        }
+        if(empty_slots == 0)
+            throw new IOException("Corrupted bundle: " + path);
+        //Every blob of every entry must be in the bundle.
+        for(int entry = 0; entry < this.entry_count; entry++)
+            for(int field = PATH; field <= ETAG; field += 8)
+                if(this.getOffset(entry, field) < 0 || this.getLength(entry, field) < 0
+                        || (long) this.getOffset(entry, field) + this.getLength(entry, field) > buffer.capacity())
+                    throw new IOException("Corrupted bundle: " + path);
+    }
+
+    /**
+     * Open a bundle, building it from a public directory first if it doesn't exist.
+     * @param bundle The path of the bundle.
+     * @param public_directory The public directory the bundle is built from.
+     * @param forbidden_directories The forbidden directories, whose files aren't bundled.
+     * @param index_page The name of the directories' index page.
+     * @return The mapped SiteBundle.
+     * @throws IOException If the bundle can't be built or mapped, or is invalid.
+     */
+    public static SiteBundle open(Path bundle, String public_directory, List<String> forbidden_directories, String index_page) throws IOException {
+        if(!Files.exists(bundle))
+            build(Paths.get(public_directory), forbidden_directories, index_page, bundle);
+        try(FileChannel channel = FileChannel.open(bundle, StandardOpenOption.READ)){
+            if(channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Bundle larger than 2 GB: " + bundle);
+            //The mapping stays valid once the channel is closed.
+            return new SiteBundle(bundle, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Build the bundle of a public directory. The bundle is written to a temporary file, then moved in place, so that
+     * a server mapping the previous bundle keeps serving it.
+     * @param root The public directory.
+     * @param forbidden_directories The forbidden directories, whose files aren't bundled.
+     * @param index_page The name of the directories' index page.
+     * @param bundle The path of the bundle.
+     * @return The number of paths in the bundle (with the directories).
+     * @throws IOException If a file can't be read, or the bundle can't be written.
+     */
+    public static int build(Path root, List<String> forbidden_directories, String index_page, Path bundle) throws IOException {
+        //The bundled paths and their files. A directory with an index page is bundled as its index page.
+        LinkedHashMap<String, Path> paths = new LinkedHashMap<>();
+        List<Path> files;
+        try(Stream<Path> walk = Files.walk(root)){
+            files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        for(Path file : files){
+            String resource = "/" + root.relativize(file).toString().replace(File.separatorChar, '/');
+            if(forbidden_directories.stream().anyMatch(resource::contains) || file.toAbsolutePath().equals(bundle.toAbsolutePath())
+                    || MEME_TYPES.getMEMETypeFromResource(resource).equals("UNSOPPORTED"))
+                continue;
+            paths.put(resource, file);
+            if(file.getFileName().toString().equals(index_page)){
+                //A directory without its trailing slash is redirected to it, so it isn't bundled.
+                paths.put(resource.substring(0, resource.length() - index_page.length()), file);
+            }
+        }
+        List<String> resources = new ArrayList<>(paths.keySet());
+        int slot_count = Integer.highestOneBit(Math.max(1, resources.size() * 2 - 1)) << 1;
+        int paths_offset = HEADER_SIZE + resources.size() * ENTRY_SIZE + 4 * slot_count;
+        int paths_length = resources.stream().mapToInt((resource) -> 2 * resource.length()).sum();
+        ByteBuffer index = ByteBuffer.allocate(paths_offset + paths_length);
+        index.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, resources.size()).putInt(12, slot_count);
+        Path temporary = bundle.resolveSibling(bundle.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)){
+            //The blobs of a file bundled under several paths are written once.
+            Map<Path, int[]> blobs = new LinkedHashMap<>();
+            long end = align(paths_offset + paths_length);
+            int path_offset = paths_offset;
+            for(int entry = 0; entry < resources.size(); entry++){
+                String resource = resources.get(entry);
+                int[] blob = blobs.get(paths.get(resource));
+                if(blob == null){
+                    blob = new int[10];
+                    end = writeBlobs(channel, paths.get(resource), resource, end, blob);
+                    blobs.put(paths.get(resource), blob);
+                }
+                int position = HEADER_SIZE + entry * ENTRY_SIZE;
+                index.putLong(position + PATH_HASH, hash(resource));
+                index.putInt(position + PATH, path_offset).putInt(position + PATH + 4, 2 * resource.length());
+                for(int field = 0; field < 5; field++)
+                    index.putInt(position + CONTENT + 8 * field, blob[2 * field]).putInt(position + CONTENT + 8 * field + 4, blob[2 * field + 1]);
+                for(int i = 0; i < resource.length(); i++)
+                    index.putChar(path_offset + 2 * i, resource.charAt(i));
+                path_offset += 2 * resource.length();
+                //The entry's slot in the hash index.
+                int slot = (int) hash(resource) & (slot_count - 1);
+                while(index.getInt(HEADER_SIZE + resources.size() * ENTRY_SIZE + 4 * slot) != 0)
+                    slot = (slot + 1) & (slot_count - 1);
+                index.putInt(HEADER_SIZE + resources.size() * ENTRY_SIZE + 4 * slot, entry + 1);
+            }
+            channel.write(index, 0);
+        }
+        Files.move(temporary, bundle, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return resources.size();
+    }
+
+    //Write a file's content, gzip variant, headers and ETag at the end of the bundle, and store their offsets and
+    //lengths in the blob array. Return the new end of the bundle.
+    private static long writeBlobs(FileChannel channel, Path file, String resource, long end, int[] blob) throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        String meme_type = MEME_TYPES.getMEMETypeFromResource(resource);
+        byte[] gzip_content = StaticResourceCache.isCompressible(meme_type) ? StaticResourceCache.compress(content) : null;
+        //The compressed variant is only kept if it saves at least an eighth of the content.
+        if(gzip_content != null && gzip_content.length > content.length - content.length / 8)
+            gzip_content = null;
+        //The ETag depends on the content only, so that it survives a rebuild.
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        String etag = "\"" + Long.toHexString(content.length) + "-" + Long.toHexString(crc.getValue()) + "\"";
+        String vary = gzip_content != null ? HTTPResponse.CRLF + "Vary: Accept-Encoding" : "";
+        byte[][] blobs = {
+            content,
+            gzip_content != null ? gzip_content : new byte[0],
+            getHeaders(etag, vary, content.length, meme_type),
+            gzip_content != null ? getHeaders(etag.substring(0, etag.length() - 1) + "-gzip\"", vary + HTTPResponse.CRLF
+                    + "Content-Encoding: gzip", gzip_content.length, meme_type) : new byte[0],
+            etag.getBytes(StandardCharsets.ISO_8859_1)
+        };
+        for(int i = 0; i < blobs.length; i++){
+            if(end + blobs[i].length > Integer.MAX_VALUE)
+                throw new IOException("Bundle larger than 2 GB, at: " + resource);
+            blob[2 * i] = (int) end;
+            blob[2 * i + 1] = blobs[i].length;
+            ByteBuffer data = ByteBuffer.wrap(blobs[i]);
+            while(data.hasRemaining())
+                channel.write(data, end + data.position());
+            end = align(end + blobs[i].length);
+        }
+        return end;
+    }
+
+    //The precomputed headers of a file, ending with the empty line before the content.
+    private static byte[] getHeaders(String etag, String vary, int content_length, String meme_type) {
+        return (HTTPResponse.CRLF + "ETag: " + etag + vary + HTTPResponse.CRLF + "Content-Length: " + content_length
+                + HTTPResponse.CRLF + "Content-Type: " + meme_type + HTTPResponse.CONTENT_CRLF).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    //Align an offset on the blobs' alignment.
+    private static long align(long offset) {
+        return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    //The 64-bit FNV-1a hash of a path's characters.
+    private static long hash(String path) {
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < path.length(); i++){
+            hash ^= path.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Find a path in the bundle.
+     * @param resource The requested resource, such as /index.html or /.
+     * @return The number of the path's entry, or -1 if it isn't bundled.
+     */
+    public int find(String resource) {
+        long hash = hash(resource);
+        for(int slot = (int) hash & this.slot_mask; ; slot = (slot + 1) & this.slot_mask){
+            int entry = this.buffer.getInt(this.slots_offset + 4 * slot) - 1;
+            if(entry < 0)
+                return -1;
+            if(this.buffer.getLong(HEADER_SIZE + entry * ENTRY_SIZE + PATH_HASH) == hash && this.matches(entry, resource))
+                return entry;
+        }
+    }
+
+    //Compare an entry's path with a resource.
+    private boolean matches(int entry, String resource) {
+        int offset = this.getOffset(entry, PATH);
+        if(this.getLength(entry, PATH) != 2 * resource.length())
+            return false;
+        for(int i = 0; i < resource.length(); i++)
+            if(this.buffer.getChar(offset + 2 * i) != resource.charAt(i))
+                return false;
+        return true;
+    }
+
+    private int getOffset(int entry, int field) {
+        return this.buffer.getInt(HEADER_SIZE + entry * ENTRY_SIZE + field);
+    }
+
+    private int getLength(int entry, int field) {
+        return this.buffer.getInt(HEADER_SIZE + entry * ENTRY_SIZE + field + 4);
+    }
+
+    /**
+     * @param entry The number of an entry.
+     * @return A boolean denoting if the entry has a gzip variant.
+     */
+    public boolean hasGzip(int entry) {
+        return this.getLength(entry, GZIP) > 0;
+    }
+
+    /**
+     * Get the ETag of an entry's content, or of its gzip variant.
+     * @param entry The number of an entry.
+     * @param is_gzip A boolean denoting if the gzip variant is sent.
+     * @return The quoted entity tag.
+     */
+    public String getEtag(int entry, boolean is_gzip) {
+        byte[] etag = new byte[this.getLength(entry, ETAG)];
+        this.buffer.get(this.getOffset(entry, ETAG), etag);
+        String tag = new String(etag, StandardCharsets.ISO_8859_1);
+        return is_gzip ? tag.substring(0, tag.length() - 1) + "-gzip\"" : tag;
+    }
+
+    /**
+     * Get the length of an entry's content, or of its gzip variant.
+     * @param entry The number of an entry.
+     * @param is_gzip A boolean denoting if the gzip variant is sent.
+     * @return The length in bytes.
+     */
+    public int getContent_length(int entry, boolean is_gzip) {
+        return this.getLength(entry, is_gzip ? GZIP : CONTENT);
+    }
+
+    /**
+     * Write a response from the bundle: its head (the status line and the headers that vary per request, without the
+     * empty line), followed by the entry's precomputed headers and its content. With a socket channel, the slices of
+     * the mapping are sent with a single gathered write, without being copied to the heap.
+     * @param dos The DataOutputStream of the client's socket.
+     * @param channel The client's socket channel, or null to write to the DataOutputStream.
+     * @param head The response's head.
+     * @param entry The number of the entry.
+     * @param is_gzip A boolean denoting if the gzip variant is sent.
+     * @param has_content A boolean denoting if the content is sent (false for HEAD requests).
+     * @return The number of bytes written.
+     * @throws IOException If the response can't be written.
+     */
+    public long write(DataOutputStream dos, SocketChannel channel, byte[] head, int entry, boolean is_gzip, boolean has_content) throws IOException {
+        int headers = is_gzip ? GZIP_HEADERS : HEADERS;
+        int content = is_gzip ? GZIP : CONTENT;
+        ByteBuffer[] response = {
+            ByteBuffer.wrap(head),
+            this.buffer.slice(this.getOffset(entry, headers), this.getLength(entry, headers)),
+            this.buffer.slice(this.getOffset(entry, content), has_content ? this.getLength(entry, content) : 0)
+        };
+        long length = head.length + response[1].remaining() + response[2].remaining();
+        if(channel != null && channel.isBlocking()){
+            dos.flush();
+            long written = 0;
+            while(written < length)
+                written += channel.write(response);
+            return length;
+        }
+        byte[] chunk = new byte[8192];
+        for(ByteBuffer part : response){
+            while(part.hasRemaining()){
+                int size = Math.min(chunk.length, part.remaining());
+                part.get(chunk, 0, size);
+                dos.write(chunk, 0, size);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @return The path of the bundle.
+     */
+    public Path getPath() {
+        return this.path;
+    }
+
+    /**
+     * @return The number of paths in the bundle (with the directories).
+     */
+    public int getEntry_count() {
+        return this.entry_count;
+    }
+
+    /**
+     * @return The size of the bundle in bytes.
+     */
+    public int getSize() {
+        return this.buffer.capacity();
+    }
+
+    /**
+     * Build the bundle of a public directory, for a deploy.<br>
+     * Usage: java -cp target/classes com.multi_threaded_http_web_server.SiteBundle PUBLIC_DIRECTORY BUNDLE_FILE
+     * [FORBIDDEN_DIRECTORIES (comma separated)] [INDEX_PAGE]
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        if(args.length < 2){
+            System.err.println("Usage: SiteBundle PUBLIC_DIRECTORY BUNDLE_FILE [FORBIDDEN_DIRECTORIES] [INDEX_PAGE]");
+            System.exit(1);
+        }
+        List<String> forbidden_directories = args.length > 2
+                ? Stream.of(args[2].split(",")).filter((directory) -> !directory.isBlank()).map(String::trim).collect(Collectors.toList())
+                : HTTPServerInformation.getFORBIDDEN_DIRECTORIES();
+        try {
+            long start = System.nanoTime();
+            int count = build(Paths.get(args[0]), forbidden_directories, args.length > 3 ? args[3] : HTTPServerInformation.INDEX_PAGE, Paths.get(args[1]));
+            System.out.println("Bundled " + count + " path(s) in " + (System.nanoTime() - start) / 1000000 + " ms: "
+                    + args[1] + " (" + Files.size(Paths.get(args[1])) + " bytes).");
+        } catch (Exception ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+}
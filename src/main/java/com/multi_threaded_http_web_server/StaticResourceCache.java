@@ -0,0 +1,281 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An in-memory cache of the server's small static files, with their MEME type, ETag and
+ * compressed variant computed once when they're loaded.<br>
+ * Files are loaded on their first request, or preloaded when the server starts. A cached file is only served while
+ * its size and modification time are unchanged, otherwise it's loaded again. The cache is limited to a number of
+ * bytes: once it's full, other files are served from the disk.<br>
+ * Every virtual host has its own cache and budget, so that a busy site can't evict the files of the others.
+ * @author Hodaifa98
+ */
+public class StaticResourceCache {
+
+    /**
+     * A cached file.
+     */
+    public static final class Resource {
+        private final byte[] content;
+        private final byte[] gzip_content;
+        private final String meme_type;
+        private final String etag;
+        private final long last_modified;
+
+        private Resource(byte[] content, byte[] gzip_content, String meme_type, String etag, long last_modified){
+            this.content = content;
+            this.gzip_content = gzip_content;
+            this.meme_type = meme_type;
+            this.etag = etag;
+            this.last_modified = last_modified;
+        }
+
+        /**
+         * @return The content of the file.
+         */
+        public byte[] getContent() {
+            return this.content;
+        }
+
+        /**
+         * @return The gzip compressed content of the file, or null if the file isn't worth compressing.
+         */
+        public byte[] getGzip_content() {
+            return this.gzip_content;
+        }
+
+        /**
+         * @return The MEME type of the file.
+         */
+        public String getMeme_type() {
+            return this.meme_type;
+        }
+
+        /**
+         * Get the ETag of the file's content, or of its compressed content.
+         * @param is_gzip A boolean denoting if the compressed content is sent.
+         * @return The quoted entity tag.
+         */
+        public String getEtag(boolean is_gzip) {
+            return is_gzip ? this.etag.substring(0, this.etag.length() - 1) + "-gzip\"" : this.etag;
+        }
+
+        private long getSize(){
+            return this.content.length + (this.gzip_content != null ? this.gzip_content.length : 0);
+        }
+    }
+
+    //The caches of the virtual hosts, keyed by the hosts' names.
+    private static final ConcurrentHashMap<String, StaticResourceCache> HOST_CACHES = new ConcurrentHashMap<>();
+
+    //The cached files, keyed by their path.
+    private final ConcurrentHashMap<String, Resource> entries = new ConcurrentHashMap<>();
+
+    //The public directory the files were cached from.
+    private volatile String public_directory;
+
+    //The size of the cached files, and the statistics of the cache.
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Get the cache of a virtual host, creating it on its first use.
+     * @param name The host's name.
+     * @return The host's StaticResourceCache.
+     */
+    public static StaticResourceCache forHost(String name) {
+        return HOST_CACHES.computeIfAbsent(name, (host) -> new StaticResourceCache());
+    }
+
+    /**
+     * Remove the caches of the virtual hosts that aren't configured anymore, once the configuration is reloaded.
+     * @param names The names of the configured hosts.
+     */
+    public static void retainHosts(Collection<String> names) {
+        HOST_CACHES.keySet().retainAll(names);
+    }
+
+    /**
+     * @return The number of cached files.
+     */
+    public int getEntry_count() {
+        return this.entries.size();
+    }
+
+    /**
+     * @return The size of the cached files (and their compressed variants) in bytes.
+     */
+    public long getSize() {
+        return this.size.get();
+    }
+
+    /**
+     * @return The number of requests served from the cache.
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return The number of requests whose file had to be loaded.
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return A map of the paths of the cached files and their sizes in bytes (with their compressed variant).
+     */
+    public Map<String, Long> getEntries() {
+        TreeMap<String, Long> entries = new TreeMap<>();
+        this.entries.forEach((path, resource) -> entries.put(path, resource.getSize()));
+        return entries;
+    }
+
+    /**
+     * Remove every file from the cache.
+     */
+    public void clear() {
+        this.entries.clear();
+        this.size.set(0);
+    }
+
+    /**
+     * Get a file from the cache, loading it if it isn't cached yet or if it changed since it was loaded.
+     * @param path The path of the file.
+     * @param host The virtual host the cache belongs to.
+     * @param configuration The server's configuration.
+     * @return The cached file, or null if the file doesn't exist, isn't cacheable (too large, or the cache is full),
+     * or if the cache is disabled.
+     */
+    public Resource get(String path, VirtualHost host, HTTPServerConfiguration configuration) {
+        if(!configuration.isStatic_cache_enabled())
+            return null;
+        //The cached files of another public directory won't be requested anymore.
+        if(!host.getPublic_directory().equals(this.public_directory)){
+            synchronized(this){
+                if(!host.getPublic_directory().equals(this.public_directory)){
+                    this.clear();
+                    this.public_directory = host.getPublic_directory();
+                }
+            }
+        }
+        File file = new File(path);
+        long last_modified = file.lastModified();
+        long length = file.length();
+        Resource resource = this.entries.get(path);
+        if(resource != null && resource.last_modified == last_modified && resource.content.length == length){
+            this.hits.incrementAndGet();
+            return resource;
+        }
+        this.misses.incrementAndGet();
+        if(resource != null)
+            this.remove(path, resource);
+        //A file that can't fit in the cache isn't read (nor compressed) just to be discarded: it's served from disk.
+        if(!file.isFile() || length > configuration.getStatic_cache_max_file_size()
+                || this.size.get() + length > host.getStatic_cache_max_bytes())
+            return null;
+        return this.load(path, file, host.getStatic_cache_max_bytes());
+    }
+
+    /**
+     * Preload the smallest files of the public directory (except the forbidden directories), until the cache is full.
+     * @param host The virtual host the cache belongs to.
+     * @param configuration The server's configuration.
+     * @return The number of files in the cache.
+     */
+    public int preload(VirtualHost host, HTTPServerConfiguration configuration) {
+        if(!configuration.isStatic_cache_enabled())
+            return 0;
+        Path root = Paths.get(host.getPublic_directory());
+        List<Path> files;
+        try(Stream<Path> walk = Files.walk(root)){
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            return this.entries.size();
+        }
+        files.sort(Comparator.comparingLong((Path file) -> file.toFile().length()));
+        for(Path file : files){
+            if(file.toFile().length() > configuration.getStatic_cache_max_file_size()
+                    || this.size.get() + file.toFile().length() > host.getStatic_cache_max_bytes())
+                break;
+            //Only the files that can be requested are preloaded.
+            String resource = "/" + root.relativize(file).toString().replace(File.separatorChar, '/');
+            if(host.getForbidden_directories().stream().anyMatch(resource::contains)
+                    || MEME_TYPES.getMEMETypeFromResource(resource).equals("UNSOPPORTED"))
+                continue;
+            this.get(host.getPublic_directory() + resource, host, configuration);
+        }
+        return this.entries.size();
+    }
+
+    //Read a file and compute its ETag and compressed variant, and cache it if there is room for it.
+    private Resource load(String path, File file, int max_bytes) {
+        try {
+            long last_modified = file.lastModified();
+            byte[] content = Files.readAllBytes(file.toPath());
+            String meme_type = MEME_TYPES.getMEMETypeFromResource(path);
+            byte[] gzip_content = isCompressible(meme_type) ? compress(content) : null;
+            //The compressed variant is only kept if it saves at least an eighth of the content.
+            if(gzip_content != null && gzip_content.length > content.length - content.length / 8)
+                gzip_content = null;
+            String etag = "\"" + Long.toHexString(content.length) + "-" + Long.toHexString(last_modified) + "\"";
+            Resource resource = new Resource(content, gzip_content, meme_type, etag, last_modified);
+            //A file modified while it was read will be loaded again on its next request.
+            if(file.lastModified() != last_modified || file.length() != content.length)
+                return null;
+            if(this.size.addAndGet(resource.getSize()) > max_bytes){
+                this.size.addAndGet(-resource.getSize());
+                return null;
+            }
+            Resource previous = this.entries.put(path, resource);
+            if(previous != null)
+                this.size.addAndGet(-previous.getSize());
+            return resource;
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            return null;
+        }
+    }
+
+    //Remove a file from the cache, if it's still the cached one.
+    private void remove(String path, Resource resource) {
+        if(this.entries.remove(path, resource))
+            this.size.addAndGet(-resource.getSize());
+    }
+
+    //Check if the content of a MEME type is worth compressing (text formats).
+    static boolean isCompressible(String meme_type) {
+        return meme_type.startsWith("text/") || meme_type.endsWith("json") || meme_type.endsWith("xml");
+    }
+
+    //Compress a content with gzip.
+    static byte[] compress(byte[] content) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 2 + 64);
+        try(GZIPOutputStream gzip = new GZIPOutputStream(compressed)){
+            gzip.write(content);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,231 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An upstream HTTP/1.1 server the reverse proxy forwards requests to.<br>
+ * Keeps a pool of idle keep-alive connections to the upstream server, the number of requests in progress
+ * (for least-connections balancing), and the upstream server's health.
+ * @author Hodaifa98
+ */
+public class UpstreamServer {
+
+    /**
+     * A connection to an upstream server.
+     */
+    public static final class Connection {
+        private final Socket socket;
+        private final InputStream input;
+        private final OutputStream output;
+        private final boolean is_reused;
+
+        private Connection(Socket socket, boolean is_reused) throws IOException {
+            this.socket = socket;
+            this.input = new BufferedInputStream(socket.getInputStream());
+            this.output = new BufferedOutputStream(socket.getOutputStream());
+            this.is_reused = is_reused;
+        }
+
+        //A connection taken back from the pool keeps its streams, since they may have buffered data.
+        private Connection(Connection pooled) {
+            this.socket = pooled.socket;
+            this.input = pooled.input;
+            this.output = pooled.output;
+            this.is_reused = true;
+        }
+
+        /**
+         * @return The buffered input stream of the connection.
+         */
+        public InputStream getInput() {
+            return this.input;
+        }
+
+        /**
+         * @return The buffered output stream of the connection.
+         */
+        public OutputStream getOutput() {
+            return this.output;
+        }
+
+        /**
+         * @return A boolean denoting if the connection was taken from the idle pool rather than opened for this request.
+         */
+        public boolean isIs_reused() {
+            return this.is_reused;
+        }
+
+        /**
+         * Close the connection, ignoring any error.
+         */
+        public void close() {
+            try {
+                this.socket.close();
+            } catch (IOException ex) {}
+        }
+    }
+
+    //The upstream server's host and port.
+    private final String host;
+    private final int port;
+
+    //The idle connections, the most recently used first.
+    private final ConcurrentLinkedDeque<Connection> idle_connections = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idle_count = new AtomicInteger();
+    private final int max_idle_connections;
+
+    //The number of requests in progress, and the health of the upstream server.
+    private final AtomicInteger active_requests = new AtomicInteger();
+    private volatile boolean is_healthy = true;
+    private volatile boolean is_closed = false;
+
+    /**
+     * The UpstreamServer class's main constructor.
+     * @param url The URL of the upstream server, in the form of http://host:port.
+     * @param max_idle_connections The maximum number of idle connections kept in the pool.
+     */
+    public UpstreamServer(String url, int max_idle_connections) {
+        URI uri = URI.create(url);
+        this.host = uri.getHost();
+        this.port = uri.getPort() == -1 ? 80 : uri.getPort();
+        this.max_idle_connections = max_idle_connections;
+    }
+
+    /**
+     * @return The upstream server's host name.
+     */
+    public String getHost() {
+        return this.host;
+    }
+
+    /**
+     * @return The upstream server's port number.
+     */
+    public int getPort() {
+        return this.port;
+    }
+
+    /**
+     * @return The upstream server's address, in the form of host:port.
+     */
+    public String getAddress() {
+        return this.host + ":" + this.port;
+    }
+
+    /**
+     * @return The number of requests in progress on the upstream server.
+     */
+    public int getActive_requests() {
+        return this.active_requests.get();
+    }
+
+    /**
+     * @return The number of idle connections in the pool.
+     */
+    public int getIdle_connections() {
+        return this.idle_count.get();
+    }
+
+    /**
+     * @return A boolean denoting if the upstream server passed its last health check.
+     */
+    public boolean isIs_healthy() {
+        return this.is_healthy;
+    }
+
+    /**
+     * Set the health of the upstream server. An unhealthy server's idle connections are closed.
+     * @param is_healthy A boolean denoting if the upstream server is healthy.
+     */
+    public void setIs_healthy(boolean is_healthy) {
+        this.is_healthy = is_healthy;
+        if(!is_healthy)
+            this.closeIdleConnections();
+    }
+
+    /**
+     * Get a connection to the upstream server: an idle connection from the pool if there is one,
+     * otherwise a new connection. The request is counted as in progress until release() is called.
+     * @param connect_timeout The timeout in milliseconds of opening a new connection.
+     * @param read_timeout The timeout in milliseconds of reads on the connection.
+     * @param allow_idle_connection A boolean denoting if an idle connection can be used, or if a new one is required.
+     * @return A connection to the upstream server.
+     * @throws IOException If a new connection can't be opened.
+     */
+    public Connection acquire(int connect_timeout, int read_timeout, boolean allow_idle_connection) throws IOException {
+        this.active_requests.incrementAndGet();
+        try {
+            Connection pooled;
+            while(allow_idle_connection && (pooled = this.idle_connections.pollFirst()) != null){
+                this.idle_count.decrementAndGet();
+                if(!pooled.socket.isClosed()){
+                    pooled.socket.setSoTimeout(read_timeout);
+                    return new Connection(pooled);
+                }
+            }
+            Socket socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                //The host name is resolved on every new connection, so that DNS changes are followed.
+                socket.connect(new InetSocketAddress(this.host, this.port), connect_timeout);
+                socket.setSoTimeout(read_timeout);
+                return new Connection(socket, false);
+            } catch (IOException ex) {
+                socket.close();
+                throw ex;
+            }
+        } catch (IOException ex) {
+            this.active_requests.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    /**
+     * Release a connection acquired for a request. A reusable connection is kept in the idle pool
+     * (unless the pool is full), otherwise it's closed.
+     * @param connection The connection to release.
+     * @param is_reusable A boolean denoting if the connection can be used for another request.
+     */
+    public void release(Connection connection, boolean is_reusable) {
+        this.active_requests.decrementAndGet();
+        boolean is_poolable = is_reusable && !this.is_closed && this.is_healthy;
+        if(is_poolable && this.idle_count.incrementAndGet() <= this.max_idle_connections){
+            this.idle_connections.offerFirst(connection);
+            //The pool may have been closed in the meantime.
+            if(this.is_closed)
+                this.closeIdleConnections();
+            return;
+        }
+        if(is_poolable)
+            this.idle_count.decrementAndGet();
+        connection.close();
+    }
+
+    /**
+     * Close the connection pool. Connections released afterwards are closed instead of being pooled.
+     */
+    public void close() {
+        this.is_closed = true;
+        this.closeIdleConnections();
+    }
+
+    //Close and remove all the idle connections.
+    private void closeIdleConnections() {
+        Connection idle;
+        while((idle = this.idle_connections.pollFirst()) != null){
+            this.idle_count.decrementAndGet();
+            idle.close();
+        }
+    }
+}
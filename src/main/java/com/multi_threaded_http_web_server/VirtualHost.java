@@ -0,0 +1,139 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A site served by the server: its public directory (or its bundle), error pages, forbidden directories and static
+ * files cache.<br>
+ * The default host serves the requests whose Host header doesn't match any configured virtual host, from the
+ * server's public_directory. The other hosts are configured with the vhost.NAME.* keys, and are matched by the
+ * configuration's host lookup tables (see HTTPServerConfiguration.getVirtual_host()).
+ * @author Hodaifa98
+ */
+public final class VirtualHost {
+
+    /**
+     * The name of the default host.
+     */
+    public static final String DEFAULT_NAME = "default";
+
+    //The host's name, and the host names it serves (such as "example.com" or "*.example.com").
+    private final String name;
+    private final List<String> host_names;
+
+    //The host's files.
+    private final String public_directory;
+    private final Map<Integer, String> error_pages;
+    private final ErrorPages loaded_error_pages;
+    private final List<String> forbidden_directories;
+
+    //The host's bundle, or null if it's served from its public directory.
+    private final SiteBundle bundle;
+
+    //The host's static files cache, and its maximum size in bytes.
+    private final StaticResourceCache static_cache;
+    private final int static_cache_max_bytes;
+
+    /**
+     * Create a virtual host.
+     * @param name The host's name.
+     * @param host_names The host names it serves, lowercase.
+     * @param public_directory The host's public directory.
+     * @param error_pages The paths of the host's error pages, keyed by status code.
+     * @param loaded_error_pages The host's error pages, loaded for every error status code.
+     * @param forbidden_directories The host's forbidden directories.
+     * @param bundle The host's mapped bundle, or null if it's served from its public directory.
+     * @param static_cache_max_bytes The maximum size in bytes of the host's static files cache.
+     */
+    VirtualHost(String name, List<String> host_names, String public_directory, Map<Integer, String> error_pages,
+            ErrorPages loaded_error_pages, List<String> forbidden_directories, SiteBundle bundle, int static_cache_max_bytes) {
+        this.name = name;
+        this.host_names = host_names;
+        this.public_directory = public_directory;
+        this.error_pages = error_pages;
+        this.loaded_error_pages = loaded_error_pages;
+        this.forbidden_directories = forbidden_directories;
+        this.bundle = bundle;
+        this.static_cache_max_bytes = static_cache_max_bytes;
+        //A host keeps its cache when the configuration is reloaded.
+        this.static_cache = StaticResourceCache.forHost(name);
+    }
+
+    /**
+     * @return A boolean denoting if this host is the default host.
+     */
+    public boolean isIs_default() {
+        return this.name.equals(DEFAULT_NAME);
+    }
+
+
+    //Getters.
+
+    /**
+     * @return The host's name.
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return The host names the host serves (empty for the default host).
+     */
+    public List<String> getHost_names() {
+        return this.host_names;
+    }
+
+    /**
+     * @return The host's public directory.
+     */
+    public String getPublic_directory() {
+        return this.public_directory;
+    }
+
+    /**
+     * @return The paths of the host's error pages, keyed by status code.
+     */
+    public Map<Integer, String> getError_pages() {
+        return this.error_pages;
+    }
+
+    /**
+     * Get the host's error page of a status code, loaded when the configuration was.
+     * @param code An integer denoting a HTTP status code.
+     * @return The encoded ErrorPages.Page, or null if the status code isn't an error.
+     */
+    public ErrorPages.Page getError_page(int code) {
+        return this.loaded_error_pages.get(code);
+    }
+
+    /**
+     * @return The host's forbidden directories.
+     */
+    public List<String> getForbidden_directories() {
+        return this.forbidden_directories;
+    }
+
+    /**
+     * @return The host's mapped bundle, or null if the host is served from its public directory.
+     */
+    public SiteBundle getBundle() {
+        return this.bundle;
+    }
+
+    /**
+     * @return The host's static files cache.
+     */
+    public StaticResourceCache getStatic_cache() {
+        return this.static_cache;
+    }
+
+    /**
+     * @return The maximum size in bytes of the host's static files cache.
+     */
+    public int getStatic_cache_max_bytes() {
+        return this.static_cache_max_bytes;
+    }
+}
@@ -0,0 +1,362 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.ByteArrayOutputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A WebSocket connection (<b>RFC 6455</b>) held by the event loop after its handshake.<br>
+ * Decodes the frames received from the client (masked, possibly fragmented), answers pings and close frames,
+ * and passes complete messages to the WebSocket hub. Frames sent to the client are queued on the event loop's
+ * outbound queue of the connection, so a client not reading fast enough is disconnected instead of blocking
+ * the server.
+ * @author Hodaifa98
+ */
+public class WebSocketConnection implements EventLoop.ConnectionListener {
+
+    /**
+     * The opcodes of the WebSocket frames.
+     */
+    public static final int OPCODE_CONTINUATION = 0x0, OPCODE_TEXT = 0x1, OPCODE_BINARY = 0x2,
+            OPCODE_CLOSE = 0x8, OPCODE_PING = 0x9, OPCODE_PONG = 0xA;
+
+    /**
+     * The status codes of the close frames.
+     */
+    public static final int CLOSE_NORMAL = 1000, CLOSE_GOING_AWAY = 1001, CLOSE_PROTOCOL_ERROR = 1002,
+            CLOSE_INVALID_DATA = 1007, CLOSE_MESSAGE_TOO_BIG = 1009;
+
+    //The hub, the channel the connection belongs to, and its connection on the event loop.
+    private final WebSocketHub hub;
+    private final String channel;
+    private final int max_message_size;
+    private volatile EventLoop.Connection connection;
+
+    //The largest frame header: 2 bytes, an 8 bytes length and a 4 bytes mask.
+    private static final int MAX_HEADER_LENGTH = 14;
+
+    //The partial frame received and not decoded yet, and the fragments of the message being received.
+    private ByteBuffer inbound = ByteBuffer.allocate(1024);
+    private ByteArrayOutputStream fragments;
+    private int fragmented_opcode;
+
+    //The time the last frame was received, and a boolean denoting if a close frame was sent.
+    private volatile long last_received = System.currentTimeMillis();
+    private volatile boolean is_close_sent = false;
+
+    /**
+     * The WebSocketConnection class's main constructor.
+     * @param hub The hub the connection's messages are passed to.
+     * @param channel The name of the channel the connection belongs to.
+     * @param max_message_size The maximum size in bytes of a message received from the client.
+     */
+    WebSocketConnection(WebSocketHub hub, String channel, int max_message_size) {
+        this.hub = hub;
+        this.channel = channel;
+        this.max_message_size = max_message_size;
+    }
+
+    //Attach the connection on the event loop, once the connection is registered.
+    void setConnection(EventLoop.Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * @return The name of the channel the connection belongs to.
+     */
+    public String getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * @return The address of the client.
+     */
+    public InetAddress getRemote_address() {
+        return this.connection.getRemote_address();
+    }
+
+    /**
+     * @return The number of bytes queued and not sent to the client yet.
+     */
+    public long getQueued_bytes() {
+        return this.connection.getQueued_bytes();
+    }
+
+    /**
+     * @return The time in milliseconds the last frame was received from the client.
+     */
+    public long getLast_received() {
+        return this.last_received;
+    }
+
+    /**
+     * @return A boolean denoting if the connection is closed, or closing.
+     */
+    public boolean isIs_closed() {
+        return this.is_close_sent || this.connection.isIs_closed();
+    }
+
+    /**
+     * Send a text message to the client.
+     * @param text The message.
+     * @return A boolean denoting if the message was queued.
+     */
+    public boolean sendText(String text) {
+        return this.sendFrame(encodeFrame(OPCODE_TEXT, text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Send an encoded frame to the client. A frame shared between connections must be sent as frame.duplicate().
+     * @param frame The frame, encoded with encodeFrame().
+     * @return A boolean denoting if the frame was queued: false if the connection is closed, or if the client
+     * isn't reading fast enough, in which case the connection is closed.
+     */
+    public boolean sendFrame(ByteBuffer frame) {
+        return !this.is_close_sent && this.connection.send(frame);
+    }
+
+    /**
+     * Send a close frame to the client, and close the connection once it's sent.
+     * @param code The status code of the closing.
+     * @param reason The reason of the closing, or an empty string.
+     */
+    public void close(int code, String reason) {
+        if(this.is_close_sent)
+            return;
+        byte[] encoded_reason = reason.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[2 + Math.min(encoded_reason.length, 123)];
+        payload[0] = (byte) (code >> 8);
+        payload[1] = (byte) code;
+        System.arraycopy(encoded_reason, 0, payload, 2, payload.length - 2);
+        this.connection.send(encodeFrame(OPCODE_CLOSE, payload));
+        this.is_close_sent = true;
+        this.connection.close();
+    }
+
+    /**
+     * Encode a frame sent by the server (unmasked), with its payload's length in the shortest form.
+     * @param opcode The opcode of the frame.
+     * @param payload The payload of the frame.
+     * @return A read-only buffer containing the frame.
+     */
+    public static ByteBuffer encodeFrame(int opcode, byte[] payload) {
+        int header_length = payload.length <= 125 ? 2 : (payload.length <= 0xFFFF ? 4 : 10);
+        ByteBuffer frame = ByteBuffer.allocate(header_length + payload.length);
+        //The FIN bit is set: messages sent by the server are never fragmented.
+        frame.put((byte) (0x80 | opcode));
+        if(payload.length <= 125)
+            frame.put((byte) payload.length);
+        else if(payload.length <= 0xFFFF){
+            frame.put((byte) 126);
+            frame.putShort((short) payload.length);
+        }
+        else{
+            frame.put((byte) 127);
+            frame.putLong(payload.length);
+        }
+        frame.put(payload);
+        frame.flip();
+        return frame.asReadOnlyBuffer();
+    }
+
+    /**
+     * Called by the event loop's thread with the data received from the client: decode the complete frames,
+     * and keep the trailing partial frame until more data is received.
+     */
+    @Override
+    public void onRead(EventLoop.Connection connection, ByteBuffer data) {
+        //The event loop may read from the connection before register() returned.
+        this.connection = connection;
+        this.last_received = System.currentTimeMillis();
+        //Complete the partial frame kept from the previous reads first, taking only the bytes it needs.
+        while(this.inbound.position() > 0 && data.hasRemaining() && !this.is_close_sent){
+            this.inbound.flip();
+            long frame_length = getFrameLength(this.inbound);
+            this.inbound.compact();
+            //Each frame is limited to the maximum message size (with the largest header).
+            if(frame_length > this.max_message_size + MAX_HEADER_LENGTH){
+                this.close(CLOSE_MESSAGE_TOO_BIG, "Message too big");
+                return;
+            }
+            int needed = (int) (frame_length == -1 ? MAX_HEADER_LENGTH : frame_length) - this.inbound.position();
+            this.bufferPartialFrame(data, Math.min(Math.max(needed, 0), data.remaining()));
+            this.inbound.flip();
+            try {
+                while(!this.is_close_sent && this.decodeFrame(this.inbound));
+            } finally {
+                this.inbound.compact();
+            }
+        }
+        if(this.inbound.position() > 0 || this.is_close_sent)
+            return;
+        //Then decode the frames directly from the received data, and keep the trailing partial frame.
+        while(!this.is_close_sent && this.decodeFrame(data));
+        if(!this.is_close_sent && data.hasRemaining())
+            this.bufferPartialFrame(data, data.remaining());
+    }
+
+    //Copy a number of bytes of the received data to the partial frame's buffer, growing it as needed.
+    private void bufferPartialFrame(ByteBuffer data, int length) {
+        if(this.inbound.remaining() < length){
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(this.inbound.position() + length,
+                    Math.min(this.inbound.capacity() * 2, this.max_message_size + MAX_HEADER_LENGTH)));
+            this.inbound.flip();
+            grown.put(this.inbound);
+            this.inbound = grown;
+        }
+        ByteBuffer bytes = data.duplicate();
+        bytes.limit(bytes.position() + length);
+        this.inbound.put(bytes);
+        data.position(data.position() + length);
+    }
+
+    /**
+     * Get the length of the frame at the start of the received data, from its header.
+     * @param buffer The received data.
+     * @return The length in bytes of the frame (header, mask and payload), or -1 if its header isn't complete.
+     */
+    private static long getFrameLength(ByteBuffer buffer) {
+        int start = buffer.position();
+        if(buffer.remaining() < 2)
+            return -1;
+        long length = buffer.get(start + 1) & 0x7F;
+        if(length == 126)
+            return buffer.remaining() < 4 ? -1 : 4 + 4 + (buffer.getShort(start + 2) & 0xFFFF);
+        if(length == 127){
+            if(buffer.remaining() < 10)
+                return -1;
+            length = buffer.getLong(start + 2);
+            return length < 0 ? Long.MAX_VALUE : 10 + 4 + length;
+        }
+        return 2 + 4 + length;
+    }
+
+    /**
+     * Decode a frame from the received data, if it's complete.
+     * @param buffer The received data, starting with the frame.
+     * @return A boolean denoting if a frame was decoded.
+     */
+    private boolean decodeFrame(ByteBuffer buffer) {
+        int start = buffer.position();
+        if(buffer.remaining() < 2)
+            return false;
+        int first = buffer.get(start) & 0xFF;
+        int second = buffer.get(start + 1) & 0xFF;
+        boolean is_final = (first & 0x80) != 0;
+        int opcode = first & 0x0F;
+        long length = second & 0x7F;
+        int header_length = 2;
+        //The reserved bits must be unset (no extension is negotiated), and the client's frames must be masked.
+        if((first & 0x70) != 0 || (second & 0x80) == 0){
+            this.close(CLOSE_PROTOCOL_ERROR, "Invalid frame");
+            return false;
+        }
+        if(length == 126){
+            if(buffer.remaining() < 4)
+                return false;
+            length = buffer.getShort(start + 2) & 0xFFFF;
+            header_length = 4;
+        }
+        else if(length == 127){
+            if(buffer.remaining() < 10)
+                return false;
+            length = buffer.getLong(start + 2);
+            header_length = 10;
+        }
+        if(length < 0 || length > this.max_message_size){
+            this.close(CLOSE_MESSAGE_TOO_BIG, "Message too big");
+            return false;
+        }
+        if(buffer.remaining() < header_length + 4 + length)
+            return false;
+        //Unmask the payload.
+        int mask_position = start + header_length;
+        byte[] payload = new byte[(int) length];
+        for(int i = 0; i < payload.length; i++)
+            payload[i] = (byte) (buffer.get(mask_position + 4 + i) ^ buffer.get(mask_position + (i & 3)));
+        buffer.position(mask_position + 4 + payload.length);
+        this.handleFrame(is_final, opcode, payload);
+        return true;
+    }
+
+    //Handle a decoded frame: answer the control frames, and reassemble the fragmented messages.
+    private void handleFrame(boolean is_final, int opcode, byte[] payload) {
+        if(opcode >= OPCODE_CLOSE){
+            //Control frames can't be fragmented, and their payload is limited to 125 bytes.
+            if(!is_final || payload.length > 125){
+                this.close(CLOSE_PROTOCOL_ERROR, "Invalid control frame");
+                return;
+            }
+            switch(opcode){
+                case OPCODE_CLOSE:
+                    int code = payload.length >= 2 ? ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF) : CLOSE_NORMAL;
+                    this.close(code, "");
+                    break;
+                case OPCODE_PING:
+                    this.sendFrame(encodeFrame(OPCODE_PONG, payload));
+                    break;
+                case OPCODE_PONG:
+                    break;
+                default:
+                    this.close(CLOSE_PROTOCOL_ERROR, "Unknown opcode");
+            }
+            return;
+        }
+        if(opcode == OPCODE_CONTINUATION){
+            if(this.fragments == null){
+                this.close(CLOSE_PROTOCOL_ERROR, "Unexpected continuation frame");
+                return;
+            }
+            if(this.fragments.size() + payload.length > this.max_message_size){
+                this.close(CLOSE_MESSAGE_TOO_BIG, "Message too big");
+                return;
+            }
+            this.fragments.write(payload, 0, payload.length);
+            if(is_final){
+                byte[] message = this.fragments.toByteArray();
+                this.fragments = null;
+                this.handleMessage(this.fragmented_opcode, message);
+            }
+            return;
+        }
+        if((opcode != OPCODE_TEXT && opcode != OPCODE_BINARY) || this.fragments != null){
+            this.close(CLOSE_PROTOCOL_ERROR, "Unexpected frame");
+            return;
+        }
+        if(is_final)
+            this.handleMessage(opcode, payload);
+        else{
+            this.fragmented_opcode = opcode;
+            this.fragments = new ByteArrayOutputStream();
+            this.fragments.write(payload, 0, payload.length);
+        }
+    }
+
+    //Pass a complete message to the hub. Text messages must be valid UTF-8.
+    private void handleMessage(int opcode, byte[] message) {
+        if(opcode == OPCODE_TEXT){
+            try {
+                StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT).decode(ByteBuffer.wrap(message));
+            } catch (CharacterCodingException ex) {
+                this.close(CLOSE_INVALID_DATA, "Invalid UTF-8");
+                return;
+            }
+        }
+        this.hub.onMessage(this, opcode == OPCODE_TEXT, message);
+    }
+
+    /**
+     * Called by the event loop's thread once the connection is closed.
+     */
+    @Override
+    public void onClose(EventLoop.Connection connection) {
+        this.is_close_sent = true;
+        this.hub.onClose(this);
+    }
+}
@@ -0,0 +1,251 @@
+package com.multi_threaded_http_web_server;
+
+
+//Imports.
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The WebSocket hub: upgrades the requests to WebSocket paths, and holds the WebSocket connections by channel.<br>
+ * Connections are held by the event loop, so they don't keep a thread each. A message broadcast to a channel is
+ * encoded once as a frame, and the same bytes are queued to every connection of the channel. The messages received
+ * from a client are passed to the channel's message listener, or broadcast to the channel if it has none.
+ * Connections are pinged periodically, and closed if nothing was received from them for two ping intervals.
+ * @author Hodaifa98
+ */
+public class WebSocketHub {
+
+    /**
+     * Receives the messages sent by the clients of a channel.
+     */
+    public interface MessageListener {
+        /**
+         * Called by the event loop's thread with a complete message, which must be handled without blocking.
+         * @param connection The connection the message was received from.
+         * @param is_text A boolean denoting if the message is text (UTF-8), or binary.
+         * @param message The message.
+         */
+        void onMessage(WebSocketConnection connection, boolean is_text, byte[] message);
+    }
+
+    //The GUID appended to the client's key to compute the Sec-WebSocket-Accept header (RFC 6455, section 1.3).
+    private static final String HANDSHAKE_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    //The hub, created on the first upgrade.
+    private static WebSocketHub instance;
+
+    //The connections and the message listeners, by channel.
+    private final ConcurrentHashMap<String, Set<WebSocketConnection>> channels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, MessageListener> listeners = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService pinger;
+
+    private WebSocketHub() {
+        this.pinger = Executors.newSingleThreadScheduledExecutor((r) -> {
+            Thread t = new Thread(r, "websocket-pinger");
+            t.setDaemon(true);
+            return t;
+        });
+        this.pinger.schedule(this::ping, Math.max(1000, HTTPServerInformation.getConfiguration().getWebsocket_ping_interval()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return The WebSocket hub.
+     */
+    public static synchronized WebSocketHub getInstance() {
+        if(instance == null)
+            instance = new WebSocketHub();
+        return instance;
+    }
+
+    /**
+     * Get the channel a WebSocket path is routed to by the configuration (websocket_route./PATH=CHANNEL).
+     * @param request The client's HTTP request.
+     * @return The name of the channel, or null if the requested path isn't a WebSocket path.
+     */
+    public static String getChannel(HTTPRequest request) {
+        return HTTPServerInformation.getConfiguration().getWebsocket_routes().get(request.getRequested_resource());
+    }
+
+    /**
+     * @param channel The name of a channel.
+     * @return The number of connections of the channel.
+     */
+    public int getConnection_count(String channel) {
+        Set<WebSocketConnection> connections = this.channels.get(channel);
+        return connections != null ? connections.size() : 0;
+    }
+
+    /**
+     * Set the listener of the messages received on a channel, replacing the default broadcast to the channel.
+     * @param channel The name of the channel.
+     * @param listener The message listener, or null to restore the default broadcast.
+     */
+    public void setMessageListener(String channel, MessageListener listener) {
+        if(listener == null)
+            this.listeners.remove(channel);
+        else
+            this.listeners.put(channel, listener);
+    }
+
+    /**
+     * Handle a request to a WebSocket path: validate the opening handshake, answer it with a
+     * 101 (Switching Protocols) response, and hand the connection over to the event loop.
+     * @param request The client's HTTP request.
+     * @param channel The name of the channel the path is routed to.
+     * @param s The client's socket.
+     * @param dos The DataOutputStream of the client's socket.
+     * @return A boolean denoting if the connection was handed over to the event loop, and must not be closed.
+     * @throws IOException If the response can't be written.
+     */
+    public boolean handle(HTTPRequest request, String channel, Socket s, DataOutputStream dos) throws IOException {
+        String upgrade = request.getRequest_header(HTTPHeaders.UPGRADE);
+        String connection = request.getRequest_header(HTTPHeaders.CONNECTION);
+        String key = request.getRequest_header(HTTPHeaders.SEC_WEBSOCKET_KEY);
+        if(request.getHttp_method() != HTTP_Method.GET || upgrade == null || !upgrade.equalsIgnoreCase("websocket")){
+            HTTPResponse.writeStatusResponse(dos, 426, HTTPResponse.CRLF + "Upgrade: websocket");
+            return false;
+        }
+        if(connection == null || !connection.toLowerCase().contains("upgrade") || !isValidKey(key)
+                || !"HTTP/1.1".equals(request.getHttp_version())){
+            HTTPResponse.writeStatusResponse(dos, 400, "");
+            return false;
+        }
+        if(!"13".equals(request.getRequest_header(HTTPHeaders.SEC_WEBSOCKET_VERSION))){
+            HTTPResponse.writeStatusResponse(dos, 426, HTTPResponse.CRLF + "Sec-WebSocket-Version: 13");
+            return false;
+        }
+        SocketChannel socket_channel = s.getChannel();
+        if(socket_channel == null){
+            HTTPResponse.writeStatusResponse(dos, 500, "");
+            return false;
+        }
+        HTTPServerConfiguration configuration = HTTPServerInformation.getConfiguration();
+        String response_headers = HTTPServerInformation.SUPPORTED_HTTP_VERSION + " 101 " + configuration.getHttp_status().get(101);
+        response_headers += HTTPResponse.CRLF + "Date: " + HTTPResponse.getCurrentDatePerHTTP();
+        response_headers += HTTPResponse.CRLF + "Server: " + configuration.getServer_name();
+        response_headers += HTTPResponse.CRLF + "Upgrade: websocket";
+        response_headers += HTTPResponse.CRLF + "Connection: Upgrade";
+        response_headers += HTTPResponse.CRLF + "Sec-WebSocket-Accept: " + getAcceptKey(key.trim());
+        response_headers += HTTPResponse.CONTENT_CRLF;
+        dos.write(response_headers.getBytes(StandardCharsets.ISO_8859_1));
+        dos.flush();
+        //Register the connection on the event loop, then add it to its channel.
+        WebSocketConnection websocket = new WebSocketConnection(this, channel, configuration.getWebsocket_max_message_size());
+        websocket.setConnection(EventLoop.getInstance().register(socket_channel, websocket, configuration.getWebsocket_max_queued_bytes()));
+        Set<WebSocketConnection> connections = this.channels.computeIfAbsent(channel, (name) -> ConcurrentHashMap.newKeySet());
+        connections.add(websocket);
+        //The connection may have been closed before it was added.
+        if(websocket.isIs_closed())
+            connections.remove(websocket);
+        return true;
+    }
+
+    /**
+     * Broadcast a text message to every connection of a channel. The message is encoded once.
+     * @param channel The name of the channel.
+     * @param text The message.
+     * @return The number of connections the message was queued to.
+     */
+    public int broadcast(String channel, String text) {
+        return this.broadcast(channel, true, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Broadcast a message to every connection of a channel. The message is encoded once, and the same frame is
+     * queued to every connection; connections not reading fast enough are closed instead of being waited for.
+     * @param channel The name of the channel.
+     * @param is_text A boolean denoting if the message is text (UTF-8), or binary.
+     * @param message The message.
+     * @return The number of connections the message was queued to.
+     */
+    public int broadcast(String channel, boolean is_text, byte[] message) {
+        Set<WebSocketConnection> connections = this.channels.get(channel);
+        if(connections == null)
+            return 0;
+        ByteBuffer frame = WebSocketConnection.encodeFrame(is_text ? WebSocketConnection.OPCODE_TEXT : WebSocketConnection.OPCODE_BINARY, message);
+        int sent = 0;
+        for(WebSocketConnection connection : connections)
+            if(connection.sendFrame(frame.duplicate()))
+                sent++;
+        return sent;
+    }
+
+    //Pass a message received from a client to the channel's listener, or broadcast it to the channel.
+    void onMessage(WebSocketConnection connection, boolean is_text, byte[] message) {
+        MessageListener listener = this.listeners.get(connection.getChannel());
+        try {
+            if(listener != null)
+                listener.onMessage(connection, is_text, message);
+            else
+                this.broadcast(connection.getChannel(), is_text, message);
+        } catch (Exception ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    //Remove a closed connection from its channel.
+    void onClose(WebSocketConnection connection) {
+        Set<WebSocketConnection> connections = this.channels.get(connection.getChannel());
+        if(connections != null)
+            connections.remove(connection);
+    }
+
+    /**
+     * Ping every connection (with a single shared frame), close the ones nothing was received from for two ping
+     * intervals, then schedule the next ping.
+     */
+    private void ping() {
+        int ping_interval = HTTPServerInformation.getConfiguration().getWebsocket_ping_interval();
+        try {
+            if(ping_interval > 0){
+                long now = System.currentTimeMillis();
+                ByteBuffer frame = WebSocketConnection.encodeFrame(WebSocketConnection.OPCODE_PING, new byte[0]);
+                for(Set<WebSocketConnection> connections : this.channels.values()){
+                    for(WebSocketConnection connection : connections){
+                        if(now - connection.getLast_received() > 2L * ping_interval)
+                            connection.close(WebSocketConnection.CLOSE_GOING_AWAY, "Ping timeout");
+                        else
+                            connection.sendFrame(frame.duplicate());
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            System.err.println(ex.getMessage());
+        } finally {
+            this.pinger.schedule(this::ping, Math.max(1000, ping_interval), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    //A valid Sec-WebSocket-Key is 16 bytes encoded in base64.
+    private static boolean isValidKey(String key) {
+        if(key == null)
+            return false;
+        try {
+            return Base64.getDecoder().decode(key.trim()).length == 16;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    //Compute the Sec-WebSocket-Accept header: the base64 encoded SHA-1 hash of the key and the GUID.
+    private static String getAcceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return Base64.getEncoder().encodeToString(sha1.digest((key + HANDSHAKE_GUID).getBytes(StandardCharsets.ISO_8859_1)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}